@@ -0,0 +1,153 @@
+package net.nixill.commands.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.objects.CommandReader;
+import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IGuild;
+import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.handle.obj.IUser;
+
+/**
+ * Measures how {@link CommandReader#handle} turns away messages that aren't
+ * commands, which is what it does with almost every message a bot sees. Run
+ * with <code>-prof gc</code>: every benchmark here should show a
+ * <code>gc.alloc.rate.norm</code> of (about) 0 B/op, as none of these paths
+ * may allocate.
+ * <p>
+ * Discord objects are stood in for by proxies that answer from a fixed table,
+ * so nothing here talks to Discord.
+ * 
+ * @author Nixill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+  /** The reader, with the default <code>!</code> prefix. */
+  private CommandReader        reader;
+  /** An ordinary chat message. */
+  private MessageReceivedEvent chatter;
+  /** A chat message that starts with whitespace. */
+  private MessageReceivedEvent indented;
+  /** A command sent by another bot. */
+  private MessageReceivedEvent fromBot;
+  
+  /**
+   * The commands the reader knows.
+   */
+  public static class Commands {
+    @BotCommand(name = "ping", usage = "ping")
+    public String ping(IMessage msg) {
+      return "pong";
+    }
+  }
+  
+  @Setup
+  public void setup() {
+    IUser us = stub(IUser.class, "getLongID", 42L, "isBot", true);
+    IUser person = stub(IUser.class, "getLongID", 7L);
+    IUser otherBot = stub(IUser.class, "getLongID", 8L, "isBot", true);
+    IGuild guild = stub(IGuild.class, "getLongID", 100L);
+    IChannel channel = stub(IChannel.class, "getLongID", 100L, "getGuild", guild);
+    IDiscordClient client = stub(IDiscordClient.class, "getOurUser", us, "isReady", true);
+    
+    reader = new CommandReader(client, false);
+    reader.register(new Commands());
+    
+    chatter = event("hello there, how is everyone doing today?", person, channel, client);
+    indented = event("   > quoting someone else", person, channel, client);
+    fromBot = event("!ping", otherBot, channel, client);
+  }
+  
+  @Benchmark
+  public void rejectChatter() {
+    reader.handle(chatter);
+  }
+  
+  @Benchmark
+  public void rejectIndented() {
+    reader.handle(indented);
+  }
+  
+  @Benchmark
+  public void rejectBot() {
+    reader.handle(fromBot);
+  }
+  
+  /**
+   * Creates a message event.
+   * 
+   * @param content
+   *          The message's text.
+   * @param author
+   *          Who sent it.
+   * @param channel
+   *          Where it was sent.
+   * @param client
+   *          The client it was received by.
+   * @return The event.
+   */
+  private static MessageReceivedEvent event(String content, IUser author, IChannel channel, IDiscordClient client) {
+    IMessage msg = stub(IMessage.class, "getContent", content, "getAuthor", author, "getChannel", channel,
+        "getGuild", channel.getGuild(), "getClient", client);
+    return new MessageReceivedEvent(msg);
+  }
+  
+  /**
+   * Creates a stand-in for a Discord object, whose methods return fixed
+   * answers by name. Methods without an answer return <code>false</code>, 0,
+   * or <code>null</code>, except for user mentions, which are built from the
+   * user's ID once, here.
+   * 
+   * @param type
+   *          The interface to stand in for.
+   * @param answers
+   *          Pairs of method names and what they return.
+   * @return The stand-in.
+   */
+  private static <T> T stub(Class<T> type, Object... answers) {
+    Map<String, Object> table = new HashMap<>();
+    for (int i = 0; i < answers.length; i += 2) {
+      table.put((String) answers[i], answers[i + 1]);
+    }
+    Object id = table.get("getLongID");
+    String nick = "<@!" + id + ">";
+    String plain = "<@" + id + ">";
+    
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, meth, args) -> {
+      String name = meth.getName();
+      Object answer = table.get(name);
+      if (answer != null) return answer;
+      if (name.equals("mention")) return (args == null || (Boolean) args[0]) ? nick : plain;
+      if (name.equals("equals")) return proxy == args[0];
+      if (name.equals("hashCode")) return System.identityHashCode(proxy);
+      if (name.equals("toString")) return type.getSimpleName() + id;
+      Class<?> ret = meth.getReturnType();
+      if (ret == Boolean.TYPE) return false;
+      if (ret == Long.TYPE) return 0L;
+      if (ret == Integer.TYPE) return 0;
+      return null;
+    }));
+  }
+}
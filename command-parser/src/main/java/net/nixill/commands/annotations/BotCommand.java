@@ -8,6 +8,8 @@ import java.lang.annotation.Target;
 
 import com.vdurmont.emoji.Emoji;
 
+import net.nixill.commands.enums.CommandPriority;
+import net.nixill.commands.enums.CooldownScope;
 import net.nixill.commands.enums.MentionSetting;
 import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.handle.obj.IChannel;
@@ -217,4 +219,99 @@ public @interface BotCommand {
    * @return The selected required permission.
    */
   Permissions requiredPerm() default Permissions.SEND_MESSAGES;
+  
+  /**
+   * The most runs of this command that may be in progress at once. Further
+   * uses of the command wait (see {@link #maxQueued()}) or, if too many are
+   * already waiting, are turned away with the CommandReader's busy reply. Use
+   * this for expensive commands, so they can't take every thread away from
+   * cheap ones.
+   * <p>
+   * If the command is in a {@link #bulkhead()}, this sets the limit for the
+   * whole bulkhead, and can be left at 0 if another command in it sets the
+   * limit.
+   * <p>
+   * This is an optional value, defaulting to 0 (no limit).
+   * 
+   * @return The most runs in progress at once.
+   */
+  int maxConcurrent() default 0;
+  
+  /**
+   * The most uses of this command that may wait for a run to finish, once
+   * {@link #maxConcurrent()} runs are in progress. While commands are kept in
+   * order (see
+   * {@link net.nixill.commands.objects.CommandReader#setOrdering}), a waiting
+   * use also holds back the commands sent after it in the same channel (or by
+   * the same user), so they still run in order.
+   * <p>
+   * This is an optional value, defaulting to 0 (uses past the limit are turned
+   * away immediately).
+   * 
+   * @return The most uses waiting at once.
+   */
+  int maxQueued() default 0;
+  
+  /**
+   * The name of a bulkhead to put this command in. All the commands in a
+   * bulkhead share a single {@link #maxConcurrent()} limit and queue, set by
+   * whichever of them gives a non-zero <code>maxConcurrent</code> (if more
+   * than one does, they must agree).
+   * <p>
+   * This is an optional value, defaulting to an empty string (if the command
+   * has a limit, it has a bulkhead to itself).
+   * 
+   * @return The bulkhead's name.
+   */
+  String bulkhead() default "";
+  
+  /**
+   * How long, in milliseconds, before the command can be used again after it's
+   * used. Uses during the cooldown are ignored (or answered with the
+   * CommandReader's cooldown reply, if it has one) before their parameters are
+   * even read.
+   * <p>
+   * This is an optional value, defaulting to 0 (no cooldown).
+   * 
+   * @see #cooldownScope()
+   * @return The cooldown, in milliseconds.
+   */
+  long cooldown() default 0L;
+  
+  /**
+   * Who the command's {@link #cooldown()} applies to.
+   * <p>
+   * This is an optional value, defaulting to <code>USER</code> (each user has
+   * their own cooldown).
+   * 
+   * @see CooldownScope
+   * @return The cooldown scope.
+   */
+  CooldownScope cooldownScope() default CooldownScope.USER;
+  
+  /**
+   * How important the command is to run when the bot is under load. When too
+   * many commands are waiting, the least important ones are answered with a
+   * busy reaction instead of being run.
+   * <p>
+   * This is an optional value, defaulting to <code>NORMAL</code>.
+   * 
+   * @see CommandPriority
+   * @return The command's priority.
+   */
+  CommandPriority priority() default CommandPriority.NORMAL;
+  
+  /**
+   * How long, in milliseconds, the command method may run before it's given
+   * up on. Once time runs out, the CommandReader's timeout reply is sent, the
+   * thread running the command is interrupted, and anything the method returns
+   * afterwards is ignored. The method should stop soon after it's interrupted,
+   * as it keeps its thread until it does.
+   * <p>
+   * This is an optional value, defaulting to -1 (use the CommandReader's
+   * default timeout). 0 means the command has no time limit.
+   * 
+   * @return The timeout, in milliseconds.
+   */
+  long timeout() default -1L;
 }
@@ -7,6 +7,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
 
+import net.nixill.commands.objects.ArgumentDeserializer;
+import net.nixill.commands.objects.CommandReader;
+import net.nixill.commands.objects.ParameterSpec;
+import net.nixill.commands.objects.TokenCursor;
+import sx.blah.discord.handle.obj.IMessage;
+
 /**
  * Marks the annotated method as a deserializer.
  * <p>
@@ -15,12 +21,25 @@ import java.util.ArrayList;
  * <li>Be a public method.</li>
  * <li>Return an object type that you wish to use as a parameter in command
  * methods.</li>
- * <li>Take an {@link ArrayList}<code>&lt;String&gt;</code> and <code>int</code>
- * as its parameters (in that order).</li>
- * <li>Remove strings from the ArrayList to represent the single-word pieces of
+ * <li>Take a {@link TokenCursor} and <code>int</code> as its parameters (in
+ * that order).</li>
+ * <li>Take strings from the TokenCursor to represent the single-word pieces of
  * the parameter.</li>
  * <li>Respect the int as how many strings to take, if possible.</li>
+ * <li>Optionally take an {@link IMessage}, a {@link Restrict}, a
+ * {@link ParameterSpec}, or a <code>boolean</code> as further parameters, in
+ * any order.</li>
  * </ul>
+ * <p>
+ * Annotated methods are adapted into an {@link ArgumentDeserializer} when
+ * they're registered. Deserializers can also be registered without an
+ * annotated method through
+ * {@link CommandReader#registerDeserializer(Class, ArgumentDeserializer)}.
+ * <p>
+ * Older deserializers that take an {@link ArrayList}<code>&lt;String&gt;</code>
+ * instead of a TokenCursor, and remove strings from the front of it, are still
+ * supported. However, they're given a copy of all the remaining words each
+ * time they run, so they're slower on long inputs.
  * 
  * @author Nixill
  */
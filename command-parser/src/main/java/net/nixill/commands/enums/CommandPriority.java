@@ -0,0 +1,18 @@
+package net.nixill.commands.enums;
+
+/**
+ * How important a command is to run when the bot is under load.
+ * 
+ * @author Nixill
+ */
+public enum CommandPriority {
+  /**
+   * The command is shed once pressure is <code>ELEVATED</code>. Use this for
+   * commands that are nice to have, such as help pages.
+   */
+  LOW,
+  /** The command is shed once pressure is <code>CRITICAL</code>. */
+  NORMAL,
+  /** The command is never shed. */
+  HIGH;
+}
@@ -0,0 +1,20 @@
+package net.nixill.commands.enums;
+
+/**
+ * Who a command's cooldown applies to.
+ * 
+ * @author Nixill
+ */
+public enum CooldownScope {
+  /** Each user has their own cooldown for the command. */
+  USER,
+  /** Each channel has its own cooldown for the command. */
+  CHANNEL,
+  /**
+   * Each guild has its own cooldown for the command. Each direct message
+   * channel counts as its own guild.
+   */
+  GUILD,
+  /** Everyone shares a single cooldown for the command. */
+  GLOBAL;
+}
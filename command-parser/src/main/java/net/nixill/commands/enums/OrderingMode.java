@@ -0,0 +1,22 @@
+package net.nixill.commands.enums;
+
+/**
+ * Which commands a CommandReader runs one at a time, in the order they were
+ * sent. Commands that don't share an order can run at the same time.
+ * 
+ * @author Nixill
+ */
+public enum OrderingMode {
+  /**
+   * Commands sent in the same channel run in order. Commands in different
+   * channels can run at the same time.
+   */
+  CHANNEL,
+  /**
+   * Commands sent by the same user run in order, wherever they were sent.
+   * Commands by different users can run at the same time.
+   */
+  USER,
+  /** Commands don't run in any particular order. */
+  NONE;
+}
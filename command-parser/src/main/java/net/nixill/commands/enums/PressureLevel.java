@@ -0,0 +1,22 @@
+package net.nixill.commands.enums;
+
+/**
+ * How heavily loaded a CommandReader is, judged by how many commands are
+ * waiting to run. Under pressure, low-priority commands and replies are shed.
+ * 
+ * @author Nixill
+ */
+public enum PressureLevel {
+  /** Commands are running normally. */
+  NORMAL,
+  /**
+   * Enough commands are waiting that <code>LOW</code> priority commands, and
+   * usage and error replies, are answered with a busy reaction instead.
+   */
+  ELEVATED,
+  /**
+   * So many commands are waiting that <code>NORMAL</code> priority commands
+   * are shed too. Only <code>HIGH</code> priority commands still run.
+   */
+  CRITICAL;
+}
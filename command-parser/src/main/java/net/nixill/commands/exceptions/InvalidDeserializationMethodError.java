@@ -2,14 +2,17 @@ package net.nixill.commands.exceptions;
 
 import java.util.ArrayList;
 
+import net.nixill.commands.objects.TokenCursor;
+
 /**
  * Thrown when a plugin attempts to register an invalid deserialization method.
  * This error generally shouldn't be thrown by bot code.
  * <p>
  * This error can be thrown if:
  * <ul>
- * <li>The method does not take an {@link ArrayList}<code>&lt;String&gt;</code>
- * as its first argument, and an <code>int</code> as its second argument.</li>
+ * <li>The method does not take a {@link TokenCursor} (or an
+ * {@link ArrayList}<code>&lt;String&gt;</code>) as its first argument, and an
+ * <code>int</code> as its second argument.</li>
  * <li>The method returns void.</li>
  * </ul>
  * <p>
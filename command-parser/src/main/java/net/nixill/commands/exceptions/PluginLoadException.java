@@ -0,0 +1,36 @@
+package net.nixill.commands.exceptions;
+
+/**
+ * Thrown when a plugin jar can't be read, or the command classes in it can't
+ * be loaded or created.
+ * <p>
+ * When this is thrown while reloading plugins, none of the plugins are
+ * swapped in, and the commands already in use stay as they were.
+ * 
+ * @author Nixill
+ */
+public class PluginLoadException extends RuntimeException {
+  private static final long serialVersionUID = 4127730967516583614L;
+  
+  /**
+   * Constructs a PluginLoadException with the given message.
+   * 
+   * @param message
+   *          The message to show.
+   */
+  public PluginLoadException(String message) {
+    super(message);
+  }
+  
+  /**
+   * Constructs a PluginLoadException with the given message and cause.
+   * 
+   * @param message
+   *          The message to show.
+   * @param cause
+   *          The error that stopped the plugin from loading.
+   */
+  public PluginLoadException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,40 @@
+package net.nixill.commands.objects;
+
+import net.nixill.commands.annotations.Deserializer;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * Converts the words input by a user into an object accepted by a command
+ * method.
+ * <p>
+ * Deserializers can be registered directly with
+ * {@link CommandReader#registerDeserializer(Class, ArgumentDeserializer)}, and
+ * methods annotated with <code>@</code>{@link Deserializer} are adapted into
+ * one when registered. Either way, the deserializer for each command parameter
+ * is looked up once, when the command is registered, and called directly from
+ * then on.
+ * 
+ * @param <T>
+ *          The type of object produced.
+ * @author Nixill
+ */
+@FunctionalInterface
+public interface ArgumentDeserializer<T> {
+  /**
+   * Deserializes part of an input string. Removes the portion of input that was
+   * deserialized.
+   * 
+   * @param values
+   *          The remaining values. Values used for deserialization should be
+   *          taken from the cursor.
+   * @param howMany
+   *          How many values should be taken, if it makes sense to take
+   *          multiple values.
+   * @param msg
+   *          The message that triggered the command.
+   * @param param
+   *          The command parameter being deserialized.
+   * @return The deserialized object.
+   */
+  T deserialize(TokenCursor values, int howMany, IMessage msg, ParameterSpec param);
+}
@@ -0,0 +1,140 @@
+package net.nixill.commands.objects;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits how many runs of a command (or of a named group of commands) can be
+ * in progress at once, so that expensive commands can't take every thread away
+ * from cheap ones. Runs past the limit wait in a bounded queue, and runs past
+ * that are turned away.
+ * <p>
+ * A single counter holds the number of runs in progress plus the number
+ * waiting. Whoever raises it while it's under the limit may start right away;
+ * anyone else joins the queue. A run that finishes while others are waiting
+ * hands its place straight to the first of them.
+ * <p>
+ * A bulkhead with a limit of 0 has no limit. The limits of a named bulkhead
+ * are set by whichever of its commands gives them, which may not be the first
+ * to be registered, so they're only meant to change while commands are being
+ * registered.
+ * 
+ * @author Nixill
+ */
+final class Bulkhead {
+  /** The result of {@link #tryAcquire}: the task may start now. */
+  static final int START  = 0;
+  /** The result of {@link #tryAcquire}: the task was queued. */
+  static final int QUEUED = 1;
+  /** The result of {@link #tryAcquire}: the bulkhead is full. */
+  static final int FULL   = 2;
+  
+  /** The name of the bulkhead. */
+  final String                                  name;
+  /** The most tasks that may be in progress at once, or 0 for no limit. */
+  private volatile int                          limit;
+  /** The most tasks that may wait. */
+  private volatile int                          queueLimit;
+  /** The tasks waiting. */
+  private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+  /** The number of tasks in progress plus the number waiting. */
+  private final AtomicInteger                   count   = new AtomicInteger();
+  
+  /**
+   * Creates a bulkhead.
+   * 
+   * @param name
+   *          The name of the bulkhead.
+   * @param limit
+   *          The most tasks that may be in progress at once, or 0 for no
+   *          limit.
+   * @param queueLimit
+   *          The most tasks that may wait.
+   */
+  Bulkhead(String name, int limit, int queueLimit) {
+    this.name = name;
+    setLimits(limit, queueLimit);
+  }
+  
+  /**
+   * Get the most tasks that may be in progress at once.
+   * 
+   * @return The limit, or 0 for no limit.
+   */
+  int getLimit() {
+    return limit;
+  }
+  
+  /**
+   * Get the most tasks that may wait.
+   * 
+   * @return The limit.
+   */
+  int getQueueLimit() {
+    return queueLimit;
+  }
+  
+  /**
+   * Changes the limits of the bulkhead.
+   * 
+   * @param newLimit
+   *          The most tasks that may be in progress at once, or 0 for no
+   *          limit.
+   * @param newQueueLimit
+   *          The most tasks that may wait.
+   */
+  void setLimits(int newLimit, int newQueueLimit) {
+    queueLimit = newQueueLimit;
+    limit = newLimit;
+  }
+  
+  /**
+   * Get the limit that's actually applied.
+   * 
+   * @return The limit, with "no limit" as the largest possible int.
+   */
+  private int effectiveLimit() {
+    int lim = limit;
+    return (lim == 0) ? Integer.MAX_VALUE : lim;
+  }
+  
+  /**
+   * Tries to get a place for a task.
+   * 
+   * @param task
+   *          The task, which is queued if there's no room for it to start.
+   * @return {@link #START} if the task may start now, {@link #QUEUED} if it
+   *         was queued (and will be returned by a later {@link #release()}),
+   *         or {@link #FULL} if there's no room.
+   */
+  int tryAcquire(Runnable task) {
+    int lim = effectiveLimit();
+    int max = (lim == Integer.MAX_VALUE) ? lim : lim + queueLimit;
+    for (;;) {
+      int now = count.get();
+      if (now >= max) return FULL;
+      if (count.compareAndSet(now, now + 1)) {
+        if (now < lim) return START;
+        waiting.add(task);
+        return QUEUED;
+      }
+    }
+  }
+  
+  /**
+   * Gives up a task's place, when it finishes or is dropped. If any tasks are
+   * waiting, the first of them takes the place.
+   * 
+   * @return The waiting task that should now start, or <code>null</code> if
+   *         none were waiting.
+   */
+  Runnable release() {
+    if (count.getAndDecrement() <= effectiveLimit()) return null;
+    Runnable next;
+    // A waiting task is counted before it's added, so it may not be visible
+    // quite yet.
+    while ((next = waiting.poll()) == null)
+      Thread.yield();
+    return next;
+  }
+}
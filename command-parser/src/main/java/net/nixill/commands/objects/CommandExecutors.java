@@ -0,0 +1,164 @@
+package net.nixill.commands.objects;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factories for the {@link Executor}s that a {@link CommandReader} can run
+ * commands on. Commands are recognized on Discord4J's dispatcher thread, and
+ * then handed to the reader's executor to be parsed, run, and replied to, so
+ * that a slow command doesn't hold up events for everyone else.
+ * 
+ * @author Nixill
+ */
+public final class CommandExecutors {
+  /** The number of commands the default executor will queue up. */
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  /**
+   * The number of commands a reader runs at once on an executor that starts a
+   * thread for every command, such as {@link #newVirtual()}.
+   */
+  public static final int THREAD_PER_TASK_RUNNING = 1000;
+  
+  /** Counts executors made, for naming their threads. */
+  private static final AtomicInteger poolCount = new AtomicInteger();
+  
+  private CommandExecutors() {}
+  
+  /**
+   * Creates the executor a <code>CommandReader</code> uses by default: a
+   * bounded pool with twice as many threads as there are processors, and room
+   * for {@link #DEFAULT_QUEUE_SIZE} waiting commands.
+   * 
+   * @return The executor.
+   */
+  public static ExecutorService newDefault() {
+    return newBounded(defaultThreadCount(), DEFAULT_QUEUE_SIZE);
+  }
+  
+  /**
+   * Get the number of threads in the default executor.
+   * 
+   * @return Twice the number of processors, or 2 if that's more.
+   */
+  static int defaultThreadCount() {
+    return Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+  }
+  
+  /**
+   * Get the number of commands a reader should run at once on an executor: the
+   * most threads a {@link ThreadPoolExecutor} may have,
+   * {@link #THREAD_PER_TASK_RUNNING} for executors that start a thread for
+   * every command (as virtual thread executors do, since their threads are
+   * cheap and commands mostly wait on Discord), and otherwise the number of
+   * threads in the default executor.
+   * 
+   * @param executor
+   *          The executor.
+   * @return The number of commands to run at once.
+   */
+  static int runningLimitFor(Executor executor) {
+    if (executor instanceof ThreadPoolExecutor) return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+    if (executor.getClass().getName().equals("java.util.concurrent.ThreadPerTaskExecutor")) {
+      return THREAD_PER_TASK_RUNNING;
+    }
+    return defaultThreadCount();
+  }
+  
+  /**
+   * Creates a bounded pool of daemon threads. Idle threads are stopped after a
+   * minute. Commands submitted while the queue is full are rejected (and
+   * counted in the reader's {@link ExecutorMetrics}) rather than run.
+   * 
+   * @param threads
+   *          The most threads to run commands on at once.
+   * @param queueSize
+   *          The most commands that can wait for a thread.
+   * @return The executor.
+   */
+  public static ExecutorService newBounded(int threads, int queueSize) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), daemonThreads("commands-" + poolCount.incrementAndGet()));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+  
+  /**
+   * Creates an executor that starts a new virtual thread for every command.
+   * Virtual threads are only available on Java 21 and later.
+   * 
+   * @return The executor.
+   * @throws UnsupportedOperationException
+   *           If virtual threads aren't available.
+   */
+  public static ExecutorService newVirtual() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later.", ex);
+    }
+  }
+  
+  /**
+   * Creates an executor that uses virtual threads if they're available, and
+   * otherwise the same pool as {@link #newDefault()}.
+   * 
+   * @return The executor.
+   */
+  public static ExecutorService newVirtualIfAvailable() {
+    try {
+      return newVirtual();
+    } catch (UnsupportedOperationException ex) {
+      return newDefault();
+    }
+  }
+  
+  /**
+   * Gets an executor that runs commands immediately, on the dispatcher
+   * thread. This is how commands were run before executors were supported.
+   * 
+   * @return The executor.
+   */
+  public static Executor direct() {
+    return DirectExecutor.INSTANCE;
+  }
+  
+  /**
+   * Makes a thread factory for daemon threads with numbered names.
+   * 
+   * @param name
+   *          The start of each thread's name.
+   * @return The thread factory.
+   */
+  private static ThreadFactory daemonThreads(final String name) {
+    return new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = new Thread(r, name + "-" + count.incrementAndGet());
+        th.setDaemon(true);
+        return th;
+      }
+    };
+  }
+  
+  /**
+   * An executor that runs everything on the calling thread.
+   */
+  private enum DirectExecutor implements Executor {
+    INSTANCE;
+    
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  }
+}
@@ -20,7 +20,6 @@ class CommandHelp {
   private String            usage;
   private String            description;
   private ReplyTarget       willReplyIn;
-  private String            prefix;
   private MentionSetting    mentions;
   private Permissions       perm;
   private EmbedFieldObject  embed = null;
@@ -40,15 +39,13 @@ class CommandHelp {
    *          The description of the command.
    * @param willReplyIn
    *          Where the bot will reply to the command.
-   * @param prefix
-   *          The required prefix for the command.
    * @param mentions
-   *          Whether or not the command requires mentions.
+   *          The command's own mention setting.
    * @param perm
    *          What permission the command uses.
    */
   CommandHelp(String name, ArrayList<String> aliases, CommandSource source, String usage, String description,
-      ReplyTarget willReplyIn, String prefix, MentionSetting mentions, Permissions perm) {
+      ReplyTarget willReplyIn, MentionSetting mentions, Permissions perm) {
     this.name = name;
     this.aliases = aliases;
     this.source = source;
@@ -56,7 +53,6 @@ class CommandHelp {
     this.description = description;
     this.willReplyIn = willReplyIn;
     this.mentions = mentions;
-    this.prefix = prefix;
     this.perm = perm;
     
     updateEmbed();
@@ -73,7 +69,7 @@ class CommandHelp {
   
   /**
    * Returns the <i>length</i> of the {@link EmbedFieldObject} containing help
-   * with the command.
+   * with the command, not counting the prefix or mention in its title.
    * 
    * @return The length.
    */
@@ -81,20 +77,41 @@ class CommandHelp {
     return embed.name.length() + embed.value.length();
   }
   
+  /**
+   * Returns the command's own mention setting, which may be
+   * <code>DEFAULT</code>.
+   * 
+   * @return The mention setting.
+   */
+  MentionSetting getMentionSetting() {
+    return mentions;
+  }
+  
+  /**
+   * Returns the title of the help with the command, as the command is used
+   * through a particular reader. The title isn't part of the embed, since
+   * readers sharing the command may have different prefixes and bots.
+   * 
+   * @param prefix
+   *          The reader's prefix.
+   * @param mention
+   *          The bot's mention, or <code>null</code> if the command doesn't
+   *          need one.
+   * @return The title.
+   */
+  String getTitle(String prefix, String mention) {
+    String title = "**" + prefix + embed.name + "**";
+    if (mention != null) title = mention + " " + title;
+    return title;
+  }
+  
   /**
    * Updates the EmbedFieldObject with values.
    */
   private void updateEmbed() {
-    String emName = "";
+    String emName = name;
     String emValue = "";
     
-    if (mentions == MentionSetting.PREFIX) {
-      emName = CommandReader.getClient().getOurUser().mention() + " ";
-    }
-    
-    emName += "**" + prefix;
-    emName += name + "**";
-    
     emValue += "**__Usage:__** " + usage;
     emValue += "\n\n";
     if (!description.isEmpty()) {
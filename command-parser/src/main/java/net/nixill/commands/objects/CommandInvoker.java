@@ -0,0 +1,118 @@
+package net.nixill.commands.objects;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Calls a command method with its full argument list (the message, the reply
+ * channel for void methods, and the deserialized parameters). Exceptions and
+ * errors thrown by the command method itself are thrown as-is, rather than
+ * wrapped.
+ * 
+ * @author Nixill
+ */
+abstract class CommandInvoker {
+  /**
+   * Runs the command method.
+   * 
+   * @param args
+   *          The arguments to pass, exactly as many as the method takes.
+   * @return The value returned by the method (<code>null</code> for void
+   *         methods).
+   * @throws Exception
+   *           Any exception thrown by the method. Errors thrown by the method
+   *           are thrown too.
+   */
+  abstract Object invoke(Object[] args) throws Exception;
+  
+  /**
+   * Creates an invoker that uses a {@link MethodHandle} bound to the object,
+   * which the JIT can inline far better than {@link Method#invoke}. If the
+   * method can't be turned into a handle, a reflective invoker is returned
+   * instead.
+   * 
+   * @param meth
+   *          The command method.
+   * @param obj
+   *          The object to fire it from (<code>null</code> if static).
+   * @return The invoker.
+   */
+  static CommandInvoker forHandle(Method meth, Object obj) {
+    try {
+      MethodHandle handle = MethodHandles.lookup().unreflect(meth);
+      if (obj != null) handle = handle.bindTo(obj);
+      handle = handle.asSpreader(Object[].class, meth.getParameterCount())
+          .asType(MethodType.methodType(Object.class, Object[].class));
+      return new ForHandle(handle);
+    } catch (IllegalAccessException ex) {
+      return forReflection(meth, obj);
+    }
+  }
+  
+  /**
+   * Creates an invoker that uses plain reflection ({@link Method#invoke}).
+   * 
+   * @param meth
+   *          The command method.
+   * @param obj
+   *          The object to fire it from (<code>null</code> if static).
+   * @return The invoker.
+   */
+  static CommandInvoker forReflection(Method meth, Object obj) {
+    return new ForReflection(meth, obj);
+  }
+  
+  /**
+   * An invoker backed by a method handle.
+   */
+  private static final class ForHandle extends CommandInvoker {
+    /** The handle, taking an Object[] and returning an Object. */
+    private final MethodHandle handle;
+    
+    private ForHandle(MethodHandle handle) {
+      this.handle = handle;
+    }
+    
+    @Override
+    Object invoke(Object[] args) throws Exception {
+      try {
+        return (Object) handle.invokeExact(args);
+      } catch (Exception | Error ex) {
+        throw ex;
+      } catch (Throwable th) {
+        throw new UndeclaredThrowableException(th);
+      }
+    }
+  }
+  
+  /**
+   * An invoker backed by reflection.
+   */
+  private static final class ForReflection extends CommandInvoker {
+    /** The command method. */
+    private final Method meth;
+    /** The object to fire it from. */
+    private final Object obj;
+    
+    private ForReflection(Method meth, Object obj) {
+      this.meth = meth;
+      this.obj = obj;
+    }
+    
+    @Override
+    Object invoke(Object[] args) throws Exception {
+      try {
+        return meth.invoke(obj, args);
+      } catch (InvocationTargetException ex) {
+        Throwable th = ex.getCause();
+        if (th instanceof Exception) throw (Exception) th;
+        if (th instanceof Error) throw (Error) th;
+        throw new UndeclaredThrowableException(th);
+      }
+    }
+  }
+}
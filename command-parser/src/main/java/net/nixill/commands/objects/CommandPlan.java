@@ -0,0 +1,190 @@
+package net.nixill.commands.objects;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.annotations.Combine;
+import net.nixill.commands.annotations.OptParam;
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.exceptions.InvalidCommandMethodError;
+import net.nixill.commands.exceptions.InvalidRestrictionError;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * Everything the {@link CommandReader} needs to know to run a registered
+ * command, worked out once at registration. Running a command only walks the
+ * flat array of {@link Slot}s instead of re-reading the method's annotations
+ * and parameters.
+ * 
+ * @author Nixill
+ */
+final class CommandPlan {
+  /** The command method. */
+  final Method        meth;
+  /** The object to fire it from (<code>null</code> if static). */
+  final Object        obj;
+  /** The method's annotation. */
+  final BotCommand    cmd;
+  /** The command's name, in lowercase. */
+  final String        name;
+  /** The declared return type of the method. */
+  final Class<?>      returnType;
+  /** Whether the method returns void (and takes the reply channel). */
+  final boolean       isVoid;
+  /** The user-supplied parameters, in order. */
+  final Slot[]        slots;
+  /** The index of the first user-supplied parameter in the argument list. */
+  final int           firstSlot;
+  /** The bulkhead limiting the command, or <code>null</code> if unlimited. */
+  final Bulkhead      bulkhead;
+  /**
+   * When the command's cooldowns end, or <code>null</code> if it has no
+   * cooldown.
+   */
+  final CooldownTable cooldowns;
+  /**
+   * How many uses of the command have been handed over to be run and haven't
+   * finished yet.
+   */
+  final AtomicInteger inFlight = new AtomicInteger();
+  
+  /** The invoker that runs the method through a method handle. */
+  final CommandInvoker handleInvoker;
+  /** The invoker that runs the method through reflection. */
+  final CommandInvoker reflectiveInvoker;
+  
+  /**
+   * A single user-supplied parameter of a command method.
+   */
+  static final class Slot {
+    /** The parameter as passed to its deserializer. */
+    final ParameterSpec           spec;
+    /** The deserializer for the parameter's type. */
+    final ArgumentDeserializer<?> deserializer;
+    /** How many single-word values the deserializer may take. */
+    final int                     howMany;
+    /**
+     * The default value, or <code>null</code> if the parameter is required.
+     */
+    final String                  defaultValue;
+    
+    /**
+     * Creates a slot from a method parameter.
+     * 
+     * @param par
+     *          The parameter.
+     * @param deserializer
+     *          The resolved deserializer for its type.
+     * @throws InvalidRestrictionError
+     *           If the parameter's restriction isn't valid for its type.
+     */
+    Slot(Parameter par, ArgumentDeserializer<?> deserializer) {
+      Class<?> type = par.getType();
+      Restrict rest = par.getAnnotation(Restrict.class);
+      this.spec = new ParameterSpec(type, rest);
+      this.deserializer = deserializer;
+      
+      // The built-in deserializers read their restrictions here, so that a
+      // bad condition or regex stops the command from being registered.
+      if (rest != null && Deserializers.isBuiltIn(deserializer)) {
+        NumericCondition.compile(type, rest);
+        PatternCache.SHARED.compile(type, rest);
+      }
+      
+      Combine comb = par.getAnnotation(Combine.class);
+      if (comb != null)
+        howMany = comb.value();
+      else if (type.isArray())
+        howMany = Integer.MAX_VALUE;
+      else
+        howMany = 1;
+      
+      OptParam opt = par.getAnnotation(OptParam.class);
+      defaultValue = (opt == null) ? null : opt.value();
+    }
+  }
+  
+  /**
+   * Compiles a command method into a plan.
+   * 
+   * @param cmd
+   *          The method's annotation.
+   * @param meth
+   *          The method itself.
+   * @param obj
+   *          The object to fire it from.
+   * @param deserializers
+   *          The registered deserializers.
+   * @param bulkhead
+   *          The bulkhead limiting the command, or <code>null</code> if
+   *          unlimited.
+   * @throws InvalidCommandMethodError
+   *           If the method's parameters or return type aren't valid.
+   * @throws InvalidRestrictionError
+   *           If a parameter's restriction isn't valid for its type.
+   */
+  CommandPlan(BotCommand cmd, Method meth, Object obj, Map<Class<?>, ArgumentDeserializer<?>> deserializers,
+      Bulkhead bulkhead) {
+    this.cmd = cmd;
+    this.name = cmd.name().toLowerCase();
+    this.meth = meth;
+    this.obj = obj;
+    this.bulkhead = bulkhead;
+    
+    if (cmd.cooldown() < 0) throw new InvalidCommandMethodError("Command cooldowns can't be negative.");
+    cooldowns = (cmd.cooldown() == 0) ? null : new CooldownTable(cmd.cooldown());
+    if (cmd.timeout() < -1) throw new InvalidCommandMethodError("Command timeouts can't be negative.");
+    
+    // Ensure the first parameter is correct - an IMessage.
+    Parameter[] params = meth.getParameters();
+    
+    if (params.length < 1) throw new InvalidCommandMethodError(
+        "Command methods must have at least one parameter (sx.blah.discord.handle.obj.IMessage).");
+    if (!params[0].getType().isAssignableFrom(IMessage.class)) throw new InvalidCommandMethodError(
+        "The first parameter of command methods must be sx.blah.discord.handle.obj.IMessage.");
+    
+    // Ensure the return type is correct, and if void, that the second parameter
+    // is an IChannel.
+    returnType = meth.getReturnType();
+    isVoid = returnType.equals(Void.TYPE);
+    int first = 1;
+    if (isVoid) {
+      if (params.length < 2) throw new InvalidCommandMethodError(
+          "Void command methods must have at least two parameters (second must be sx.blah.discord.handle.obj.IChannel).");
+      if (!params[1].getType().isAssignableFrom(IChannel.class)) throw new InvalidCommandMethodError(
+          "The second parameter of void command methods must be sx.blah.discord.handle.obj.IChannel.");
+      first = 2;
+    }
+    firstSlot = first;
+    
+    // Ensure the remaining types are deserializable.
+    slots = new Slot[params.length - first];
+    for (int i = 0; i < slots.length; i++) {
+      Parameter par = params[i + first];
+      slots[i] = new Slot(par, Deserializers.resolve(par.getType(), deserializers));
+    }
+    
+    handleInvoker = CommandInvoker.forHandle(meth, obj);
+    reflectiveInvoker = CommandInvoker.forReflection(meth, obj);
+  }
+  
+  /**
+   * Checks whether the command runs code loaded by a class loader, either in
+   * its own method or in the deserializers it was built with.
+   * 
+   * @param loader
+   *          The class loader.
+   * @return Whether it does.
+   */
+  boolean isLoadedBy(ClassLoader loader) {
+    if (meth.getDeclaringClass().getClassLoader() == loader) return true;
+    for (Slot slot : slots) {
+      if (Deserializers.isLoadedBy(slot.deserializer, loader)) return true;
+    }
+    return false;
+  }
+}
@@ -1,40 +1,44 @@
 package net.nixill.commands.objects;
 
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.vdurmont.emoji.Emoji;
+import com.vdurmont.emoji.EmojiManager;
 
 import net.nixill.commands.annotations.BotCommand;
-import net.nixill.commands.annotations.Combine;
-import net.nixill.commands.annotations.Deserializer;
-import net.nixill.commands.annotations.OptParam;
-import net.nixill.commands.annotations.Restrict;
-import net.nixill.commands.annotations.Serializer;
+import net.nixill.commands.enums.CommandPriority;
+import net.nixill.commands.enums.CooldownScope;
 import net.nixill.commands.enums.MentionSetting;
+import net.nixill.commands.enums.OrderingMode;
+import net.nixill.commands.enums.PressureLevel;
 import net.nixill.commands.exceptions.DeserializationException;
-import net.nixill.commands.exceptions.InvalidCommandMethodError;
-import net.nixill.commands.exceptions.InvalidDeserializationMethodError;
-import net.nixill.commands.exceptions.InvalidSerializationMethodError;
 import net.nixill.commands.exceptions.NameAlreadyTakenError;
-import net.nixill.commands.exceptions.SerializationException;
 import sx.blah.discord.api.ClientBuilder;
 import sx.blah.discord.api.IDiscordClient;
+import sx.blah.discord.api.IShard;
 import sx.blah.discord.api.events.EventSubscriber;
 import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.handle.impl.events.ReadyEvent;
+import sx.blah.discord.handle.impl.events.guild.GuildUpdateEvent;
+import sx.blah.discord.handle.impl.events.guild.channel.ChannelDeleteEvent;
+import sx.blah.discord.handle.impl.events.guild.channel.ChannelUpdateEvent;
 import sx.blah.discord.handle.impl.events.guild.channel.message.MessageReceivedEvent;
+import sx.blah.discord.handle.impl.events.guild.member.UserRoleUpdateEvent;
+import sx.blah.discord.handle.impl.events.guild.role.RoleDeleteEvent;
+import sx.blah.discord.handle.impl.events.guild.role.RoleUpdateEvent;
+import sx.blah.discord.handle.impl.events.shard.ReconnectSuccessEvent;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IEmoji;
+import sx.blah.discord.handle.obj.IGuild;
 import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.handle.obj.IUser;
 
 /**
  * The main class for command interpretation. A CommandReader provides all the
@@ -52,65 +56,120 @@ import sx.blah.discord.handle.obj.IMessage;
  * message listener, and register the bot class' deserializers, serializers, and
  * commands to the CommandReader. It will then return the CommandReader for
  * further registration. The client object can be obtained through the
- * {@link #getClient()} method.
+ * {@link #getDiscordClient()} method.
  * <p>
  * Otherwise, if you instantiate the IDiscordClient yourself, you can supply it
  * to the CommandReader using the {@link #Constructor}.
+ * <p>
+ * The commands themselves are kept in a {@link CommandRegistry}, which can be
+ * built once and shared by several readers - one for each bot in the process,
+ * or for each shard of a bot (see {@link #setupShards}).
+ * <p>
+ * Messages are checked for commands on Discord4J's dispatcher thread, but the
+ * commands themselves are run on an executor (see {@link #setExecutor}), so a
+ * slow command doesn't delay other events.
  * 
  * @author Nixill
  */
 public class CommandReader {
-  /** The discord client */
-  private static IDiscordClient     client;
-  
-  /** The registered deserializers. */
-  private HashMap<Class<?>, Method> deserializers;
-  /** The objects for the registered deserializers. */
-  private HashMap<Class<?>, Object> deserializerObjects;
+  /** The client of the most recently created reader. */
+  private static volatile IDiscordClient lastClient;
   
-  /** The registered serializers. */
-  private HashMap<Class<?>, Method> serializers;
-  /** The objects for the registered serializers. */
-  private HashMap<Class<?>, Object> serializerObjects;
+  /** The discord client */
+  private final IDiscordClient      client;
   
-  /** The commands registered to guilds. */
-  private HashMap<String, Method>   serverCommands;
-  /** The objects for the registered commands. */
-  private HashMap<String, Object>   serverCommandObjects;
+  /** The shard to read commands from, or null for all of them. */
+  private final IShard              shard;
   
-  /** The commands registered to direct messages. */
-  private HashMap<String, Method>   dmCommands;
-  /** The objects for the registered DM commands. */
-  private HashMap<String, Object>   dmCommandObjects;
+  /** The commands, as registered by the bot. */
+  private volatile CommandRegistry  registry;
   
-  /** The objects to register upon ready (list only exists before ready). */
-  private ArrayList<Object>         delayedRegistration;
+  /**
+   * Recognizes commands in messages, and holds the commands (with the default
+   * help system's added); rebuilt when the commands change.
+   */
+  private volatile CommandRecognizer recognizer;
   
   /** The default Help system object, if it's used. */
   private HelpCommand               helpCommand;
   
   /** The prefix for all commands. */
-  private String                    prefix;
+  private volatile String           prefix;
   
   /** The default mention-requirement setting for all commands. */
   private MentionSetting            requireMention;
   
-  /** Whether the default help system is enabled for this reader. */
-  private boolean                   useDefaultHelp;
+  /** The channels of commands that reply in another channel, by ID. */
+  private volatile LongMap<IChannel> otherChannels;
+  
+  /** The guilds' general channels, by a hash of the guild's ID. */
+  private final AtomicReferenceArray<IChannel> generalChannels;
+  
+  /** Settings that guilds use in place of the reader's own. */
+  private volatile GuildSettingsStore guildStore;
+  
+  /** Whether commands are run through reflection instead of method handles. */
+  private boolean                   reflectiveInvocation;
+  
+  /** Whether messages sent by bots (including this one) are ignored. */
+  private boolean                   ignoringBots;
+  
+  /** Runs commands once they've been recognized. */
+  private volatile Executor         executor;
+  
+  /** Statistics about the commands given to the executor. */
+  private final ExecutorMetrics     metrics;
+  
+  /** Shares the executor fairly between guilds. */
+  private final FairExecutor        fairExecutor;
+  
+  /** Keeps commands in order on top of the fair executor. */
+  private final KeyedSerialExecutor serialExecutor;
+  
+  /** Which commands are run in the order they were sent. */
+  private volatile OrderingMode     ordering;
+  
+  /** The reply to commands turned away by their bulkhead. */
+  private volatile String           busyReply;
+  
+  /** The reply to commands used during their cooldown. */
+  private volatile String           cooldownReply;
+  
+  /** How many waiting commands make the pressure elevated. */
+  private volatile int              elevatedMark;
+  
+  /** How many waiting commands make the pressure critical. */
+  private volatile int              criticalMark;
+  
+  /** The reaction to commands shed under pressure. */
+  private volatile Emoji            busyReaction;
+  
+  /** How long commands may run by default, in milliseconds, or 0 for ever. */
+  private volatile long             defaultTimeout;
+  
+  /** The reply to commands that run out of time. */
+  private volatile String           timeoutReply;
   
   {
-    serverCommands = new HashMap<>();
-    dmCommands = new HashMap<>();
-    deserializers = new HashMap<>();
-    serializers = new HashMap<>();
-    
-    serverCommandObjects = new HashMap<>();
-    dmCommandObjects = new HashMap<>();
-    deserializerObjects = new HashMap<>();
-    serializerObjects = new HashMap<>();
-    
     prefix = "!";
     requireMention = MentionSetting.NO;
+    otherChannels = LongMap.empty();
+    generalChannels = new AtomicReferenceArray<>(1024);
+    guildStore = new MemoryGuildSettingsStore();
+    reflectiveInvocation = Boolean.getBoolean("net.nixill.commands.reflectiveInvocation");
+    ignoringBots = true;
+    executor = CommandExecutors.newDefault();
+    metrics = new ExecutorMetrics();
+    fairExecutor = new FairExecutor(executor, CommandExecutors.defaultThreadCount(), 100);
+    serialExecutor = new KeyedSerialExecutor(fairExecutor);
+    ordering = OrderingMode.CHANNEL;
+    busyReply = "That command is busy right now. Try again in a moment.";
+    cooldownReply = "";
+    elevatedMark = 100;
+    criticalMark = 500;
+    busyReaction = EmojiManager.getForAlias("hourglass_flowing_sand");
+    defaultTimeout = 0L;
+    timeoutReply = "That command took too long, so it was stopped.";
   }
   
   /**
@@ -135,10 +194,7 @@ public class CommandReader {
    * @return The CommandReader itself, for additional registrations.
    */
   public static CommandReader setup(Class<?> botClass, String token, boolean useDefHelp) {
-    client = new ClientBuilder().withRecommendedShardCount().withToken(token).login();
-    CommandReader reader = new CommandReader(useDefHelp).register(botClass);
-    client.getDispatcher().registerListener(reader);
-    return reader;
+    return setup(CommandRegistry.builder().register(botClass).build(), token, useDefHelp);
   }
   
   /**
@@ -164,38 +220,125 @@ public class CommandReader {
    * @return The CommandReader itself, for additional registrations.
    */
   public static CommandReader setup(Object bot, String token, boolean useDefHelp) {
-    client = new ClientBuilder().withRecommendedShardCount().withToken(token).login();
-    CommandReader reader = new CommandReader(useDefHelp).register(bot);
-    client.getDispatcher().registerListener(reader);
+    return setup(CommandRegistry.builder().register(bot).build(), token, useDefHelp);
+  }
+  
+  /**
+   * Sets up a bot with commands that are already registered. This creates an
+   * IDiscordClient with the recommended shard count and the provided token,
+   * logs it in, and registers a new CommandReader using the registry as a
+   * message listener for it.
+   * <p>
+   * This can be called once for each bot, with the same registry, to run
+   * several bots with the same commands.
+   * 
+   * @param registry
+   *          The commands to use.
+   * @param token
+   *          The token to log in.
+   * @param useDefHelp
+   *          Whether or not to use the built-in help system.
+   * @return The CommandReader.
+   */
+  public static CommandReader setup(CommandRegistry registry, String token, boolean useDefHelp) {
+    IDiscordClient cli = new ClientBuilder().withRecommendedShardCount().withToken(token).login();
+    CommandReader reader = new CommandReader(cli, registry, useDefHelp);
+    cli.getDispatcher().registerListener(reader);
     return reader;
   }
   
   /**
-   * Creates a new CommandReader with an existing client.
+   * Sets up a bot with a separate CommandReader for each of its shards. This
+   * creates an IDiscordClient with the recommended shard count and the
+   * provided token, logs it in, and registers a CommandReader for each shard
+   * as a message listener for it. The readers share the registry, but each has
+   * its own executor and settings.
    * 
+   * @param registry
+   *          The commands to use.
+   * @param token
+   *          The token to log in.
    * @param useDefHelp
    *          Whether or not to use the built-in help system.
+   * @return The CommandReaders, one for each shard.
    */
-  private CommandReader(boolean useDefHelp) {
-    this(client, useDefHelp);
+  public static List<CommandReader> setupShards(CommandRegistry registry, String token, boolean useDefHelp) {
+    IDiscordClient cli = new ClientBuilder().withRecommendedShardCount().withToken(token).login();
+    List<CommandReader> readers = new ArrayList<>();
+    for (IShard shard : cli.getShards()) {
+      CommandReader reader = new CommandReader(shard, registry, useDefHelp);
+      cli.getDispatcher().registerListener(reader);
+      readers.add(reader);
+    }
+    return readers;
   }
   
   /**
-   * Creates a new CommandReader. This should be used for manual setup - for
+   * Creates a new CommandReader with just the built-in deserializers and
+   * serializers registered. This should be used for manual setup - for
    * automatic/default setup, use {@link #setup}.
    * 
    * @param cli
+   *          The client to read commands for.
    * @param useDefHelp
+   *          Whether or not to use the built-in help system.
    */
   public CommandReader(IDiscordClient cli, boolean useDefHelp) {
+    this(cli, CommandRegistry.builder().build(), useDefHelp);
+  }
+  
+  /**
+   * Creates a new CommandReader for a client, using commands that are already
+   * registered. The reader still needs to be registered as a listener with the
+   * client's dispatcher.
+   * 
+   * @param cli
+   *          The client to read commands for.
+   * @param registry
+   *          The commands to use. These may be shared with other readers.
+   * @param useDefHelp
+   *          Whether or not to use the built-in help system.
+   */
+  public CommandReader(IDiscordClient cli, CommandRegistry registry, boolean useDefHelp) {
+    this(cli, null, registry, useDefHelp);
+  }
+  
+  /**
+   * Creates a new CommandReader for a single shard of a client, using commands
+   * that are already registered. Messages from the client's other shards are
+   * ignored, so each shard can have its own reader. The reader still needs to
+   * be registered as a listener with the client's dispatcher.
+   * 
+   * @param shard
+   *          The shard to read commands for.
+   * @param registry
+   *          The commands to use. These may be shared with other readers.
+   * @param useDefHelp
+   *          Whether or not to use the built-in help system.
+   */
+  public CommandReader(IShard shard, CommandRegistry registry, boolean useDefHelp) {
+    this(shard.getClient(), shard, registry, useDefHelp);
+  }
+  
+  /**
+   * Creates a new CommandReader.
+   * 
+   * @param cli
+   *          The client to read commands for.
+   * @param shard
+   *          The shard to read commands for, or <code>null</code> for all of
+   *          them.
+   * @param registry
+   *          The commands to use.
+   * @param useDefHelp
+   *          Whether or not to use the built-in help system.
+   */
+  private CommandReader(IDiscordClient cli, IShard shard, CommandRegistry registry, boolean useDefHelp) {
     client = cli;
-    useDefaultHelp = useDefHelp;
-    if (useDefaultHelp && cli.isReady()) {
-      helpCommand = new HelpCommand(this);
-      register(helpCommand);
-    }
-    register(DefaultMethods.class);
-    if (!cli.isReady()) delayedRegistration = new ArrayList<>();
+    this.shard = shard;
+    lastClient = cli;
+    if (useDefHelp) helpCommand = new HelpCommand(this);
+    setRegistry(registry);
   }
   
   /**
@@ -207,17 +350,148 @@ public class CommandReader {
    */
   @EventSubscriber
   public void onReady(ReadyEvent event) {
-    if (useDefaultHelp) {
-      helpCommand = new HelpCommand(this);
-      register(helpCommand);
-    }
-    for (Object obj : delayedRegistration) {
-      if (obj instanceof Class)
-        register((Class<?>) obj);
-      else
-        register(obj);
-    }
-    delayedRegistration = null;
+    // The bot's mentions are known now.
+    rebuildRecognizer();
+    PermissionCache.SHARED.invalidateAll();
+  }
+  
+  /**
+   * Fired by Discord4J when a shard reconnects, after which any changes to
+   * permissions it missed are unknown. Should not be called by bot code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onReconnect(ReconnectSuccessEvent event) {
+    PermissionCache.SHARED.invalidateAll();
+  }
+  
+  /**
+   * Fired by Discord4J when a role changes. Should not be called by bot code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onRoleUpdate(RoleUpdateEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+  }
+  
+  /**
+   * Fired by Discord4J when a role is deleted. Should not be called by bot
+   * code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onRoleDelete(RoleDeleteEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+  }
+  
+  /**
+   * Fired by Discord4J when a user's roles change. Should not be called by bot
+   * code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onUserRoleUpdate(UserRoleUpdateEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+  }
+  
+  /**
+   * Fired by Discord4J when a channel (including its permission overwrites)
+   * changes. Should not be called by bot code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onChannelUpdate(ChannelUpdateEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+    forgetGeneralChannel(event.getGuild());
+  }
+  
+  /**
+   * Fired by Discord4J when a channel is deleted. Should not be called by bot
+   * code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onChannelDelete(ChannelDeleteEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+    forgetGeneralChannel(event.getGuild());
+  }
+  
+  /**
+   * Fired by Discord4J when a guild (including its owner) changes. Should not
+   * be called by bot code.
+   * 
+   * @param event
+   *          The event.
+   */
+  @EventSubscriber
+  public void onGuildUpdate(GuildUpdateEvent event) {
+    PermissionCache.SHARED.invalidate(event.getGuild());
+  }
+  
+  /**
+   * Get the commands the reader uses, not including the default help system.
+   * 
+   * @return The registry.
+   */
+  public CommandRegistry getRegistry() {
+    return registry;
+  }
+  
+  /**
+   * Set the commands the reader uses. Commands already running finish as they
+   * were; every message after this is read with the new commands. Messages
+   * are never read with a mix of the old and new commands.
+   * 
+   * @param newRegistry
+   *          The new registry to use. It may be shared with other readers.
+   * @throws NameAlreadyTakenError
+   *           If the default help system is used, and the registry already
+   *           has a command called <code>help</code> or <code>helpwith</code>.
+   */
+  public synchronized void setRegistry(CommandRegistry newRegistry) {
+    swapRegistry(newRegistry, withHelp(newRegistry));
+  }
+  
+  /**
+   * Adds the default help system (if it's used) to a registry, which checks
+   * that the reader could use the registry.
+   * 
+   * @param newRegistry
+   *          The registry.
+   * @return The registry with the help system's commands.
+   * @throws NameAlreadyTakenError
+   *           If the default help system is used, and the registry already
+   *           has a command called <code>help</code> or <code>helpwith</code>.
+   */
+  CommandRegistry withHelp(CommandRegistry newRegistry) {
+    if (helpCommand == null) return newRegistry;
+    return newRegistry.toBuilder().register(helpCommand).build();
+  }
+  
+  /**
+   * Set the commands the reader uses, once {@link #withHelp} has checked them.
+   * 
+   * @param newRegistry
+   *          The new registry to use.
+   * @param withHelp
+   *          The same registry, as returned by {@link #withHelp}.
+   */
+  synchronized void swapRegistry(CommandRegistry newRegistry, CommandRegistry withHelp) {
+    registry = newRegistry;
+    if (helpCommand != null) helpCommand.setCommands(withHelp.help);
+    rebuildRecognizer(withHelp);
   }
   
   /**
@@ -226,13 +500,17 @@ public class CommandReader {
    * Using this method registers both static and instance methods. Instance
    * methods will be fired from the supplied instance. To register static
    * methods only, use {@link #register(Class)}.
+   * <p>
+   * This gives the reader a new registry, so if the old one was shared with
+   * other readers, they aren't affected.
    * 
    * @param object
    *          The object from which methods should be registered.
    * @return The CommandReader itself, for chaining.
    */
-  public CommandReader register(Object object) {
-    return register(object.getClass(), object);
+  public synchronized CommandReader register(Object object) {
+    setRegistry(registry.toBuilder().register(object).build());
+    return this;
   }
   
   /**
@@ -245,251 +523,123 @@ public class CommandReader {
    * You should not use both <code>register(Class)</code> and
    * <code>register(Object)</code> on the same class, as it will cause a
    * conflict in command names.
+   * <p>
+   * This gives the reader a new registry, so if the old one was shared with
+   * other readers, they aren't affected.
    * 
    * @param cls
    *          The class from which static methods should be registered.
    * @return The CommandReader itself, for chaining.
    */
-  public CommandReader register(Class<?> cls) {
-    return register(cls, null);
+  public synchronized CommandReader register(Class<?> cls) {
+    setRegistry(registry.toBuilder().register(cls).build());
+    return this;
   }
   
   /**
-   * Performs the actual registration of commands.
+   * Register a deserializer for a type. This replaces any deserializer already
+   * registered for the type, but only for commands registered afterwards.
+   * <p>
+   * This gives the reader a new registry, so if the old one was shared with
+   * other readers, they aren't affected.
    * 
-   * @param cls
-   *          A class to register commands from.
-   * @param object
-   *          The object of that class from which to fire instance methods.
-   *          <code>null</code> for static methods only.
+   * @param type
+   *          The type the deserializer produces.
+   * @param deserializer
+   *          The deserializer.
    * @return The CommandReader itself, for chaining.
    */
-  private CommandReader register(Class<?> cls, Object object) {
-    if (!client.isReady() && delayedRegistration != null) {
-      if (object == null)
-        delayedRegistration.add(cls);
-      else
-        delayedRegistration.add(object);
-      return this;
-    }
-    
-    ArrayList<Method> meths = new ArrayList<>(Arrays.asList(cls.getDeclaredMethods()));
-    
-    for (Method meth : meths) {
-      Deserializer des = meth.getAnnotation(Deserializer.class);
-      Serializer ser = meth.getAnnotation(Serializer.class);
-      int mods = meth.getModifiers();
-      boolean isStatic = Modifier.isStatic(mods);
-      boolean isPublic = Modifier.isPublic(mods);
-      if (des != null && !(object == null && !isStatic) && isPublic) {
-        addDeserializer(meth, object);
-      }
-      if (ser != null && !(object == null && !isStatic) && isPublic) {
-        addSerializer(meth, object);
-      }
-    }
-    
-    for (Method meth : meths) {
-      BotCommand botc = meth.getAnnotation(BotCommand.class);
-      int mods = meth.getModifiers();
-      boolean isStatic = Modifier.isStatic(mods);
-      boolean isPublic = Modifier.isPublic(mods);
-      if (botc != null && !(object == null && !isStatic) && isPublic) {
-        addCommand(botc, meth, object);
-      }
-    }
-    
-    if (helpCommand != null) {
-      helpCommand.repaginate();
-    }
-    
+  public synchronized <T> CommandReader registerDeserializer(Class<T> type,
+      ArgumentDeserializer<? extends T> deserializer) {
+    setRegistry(registry.toBuilder().registerDeserializer(type, deserializer).build());
     return this;
   }
   
   /**
-   * Add a deserializer method.
-   * 
-   * @param meth
-   *          The method to add.
-   * @param obj
-   *          The object to fire it from.
-   */
-  private void addDeserializer(Method meth, Object obj) {
-    Parameter[] params = meth.getParameters();
-    int parCount = params.length;
-    if (parCount < 2) throw new InvalidDeserializationMethodError(
-        "Deserialization methods must have at least two parameters. The first two must be an ArrayList and an int.");
-    if (!params[0].getType().equals(ArrayList.class)) throw new InvalidDeserializationMethodError(
-        "Deserialization methods must have at least two parameters. The first two must be an ArrayList and an int.");
-    if (!params[1].getType().equals(int.class)) throw new InvalidDeserializationMethodError(
-        "Deserialization methods must have at least two parameters. The first two must be an ArrayList and an int.");
-    for (int i = 2; i < meth.getParameterCount(); i++) {
-      Class<?> cls = params[i].getType();
-      if (cls != IMessage.class && cls != Restrict.class && cls != Boolean.class
-          && cls == Boolean.TYPE) { throw new InvalidDeserializationMethodError(
-              "Deserialization methods can only have an IMessage, a Restrict annotation, or a boolean as additional "
-                  + "arguments."); }
-    }
-    Class<?> ret = meth.getReturnType();
-    deserializers.put(ret, meth);
-    if (Modifier.isStatic(meth.getModifiers()))
-      deserializerObjects.put(ret, null);
-    else
-      deserializerObjects.put(ret, obj);
-  }
-  
-  /**
-   * Add a serializer method.
-   * 
-   * @param meth
-   *          The method to add.
-   * @param obj
-   *          The object to fire it from.
-   */
-  private void addSerializer(Method meth, Object obj) {
-    Class<?>[] parTypes = meth.getParameterTypes();
-    int parCount = parTypes.length;
-    if (parCount != 1 && parCount != 2) throw new InvalidSerializationMethodError(
-        "Serialization methods must have exactly one or two parameters - the type you wish to return from command "
-            + "methods, and optionally an IMessage.");
-    Class<?> in = parTypes[0];
-    Class<?> ret = meth.getReturnType();
-    if (!(ret.isAssignableFrom(String.class) || ret.isAssignableFrom(EmbedObject.class)
-        || ret.isAssignableFrom(Emoji.class)
-        || ret.isAssignableFrom(IEmoji.class))) { throw new InvalidDeserializationMethodError(
-            "Serialization methods must return either a String, EmbedObject, Emoji, IEmoji, or void."); }
-    if (parCount == 2 && !parTypes[1].equals(IMessage.class)) throw new InvalidSerializationMethodError(
-        "Serialization methods with two parameters must take the command return type and IMessage, in that order.");
-    serializers.put(in, meth);
-    if (Modifier.isStatic(meth.getModifiers()))
-      serializerObjects.put(in, null);
-    else
-      serializerObjects.put(in, obj);
-  }
-  
-  /**
-   * Add a command method.
-   * 
-   * @param ann
-   *          The method's annotation.
-   * @param meth
-   *          The method itself.
-   * @param obj
-   *          The object to fire it from.
-   */
-  private void addCommand(BotCommand ann, Method meth, Object obj) {
-    // Ensure the first parameter is correct - an IMessage.
-    ArrayList<Parameter> params = new ArrayList<>(Arrays.asList(meth.getParameters()));
-    
-    if (params.size() < 1) throw new InvalidCommandMethodError(
-        "Command methods must have at least one parameter (sx.blah.discord.handle.obj.IMessage).");
-    if (!params.get(0).getType().isAssignableFrom(IMessage.class)) throw new InvalidCommandMethodError(
-        "The first parameter of command methods must be sx.blah.discord.handle.obj.IMessage.");
-    
-    // Ensure the return type is correct, and if void, that the second parameter
-    // is an IChannel.
-    Class<?> returnType = meth.getReturnType();
-    if (returnType.equals(Void.TYPE)) {
-      if (params.size() < 2) throw new InvalidCommandMethodError(
-          "Void command methods must have at least two parameters (second must be sx.blah.discord.handle.obj.IChannel).");
-      if (!params.get(1).getType().isAssignableFrom(IChannel.class)) throw new InvalidCommandMethodError(
-          "The second parameter of void command methods must be sx.blah.discord.handle.obj.IChannel.");
-      params.remove(0);
-      params.remove(0);
-    } else {
-      params.remove(0);
-    }
-    
-    // Ensure the remaining types are deserializable.
-    for (Parameter par : params) {
-      Class<?> cls = par.getType();
-      if (cls.isArray()) {
-        Class<?> clz = cls.getComponentType();
-        if (!(deserializers.containsKey(clz) || clz.isEnum())) throw new InvalidCommandMethodError(
-            "Type " + clz.getName() + " has no String converter (try registering deserializers first).");
-      } else if (!(deserializers.containsKey(cls) || cls.isEnum())) throw new InvalidCommandMethodError(
-          "Type " + cls.getName() + " has no String converter (try registering deserializers first).");
-    }
-    
-    // Make sure the main name isn't already taken.
-    assertNameAvailable(ann.name(), ann.listen());
-    
-    // Add to list(s). It's possible to have different methods handle DM vs
-    // Guild commands.
-    String[] names = (ann.name() + " " + ann.names()).split(" ");
-    if (Modifier.isStatic(meth.getModifiers())) obj = null;
-    ArrayList<String> allowedAliases = new ArrayList<>();
-    for (String name : names) {
-      if (addName(meth, obj, name, ann.listen())) {
-        allowedAliases.add(name.toLowerCase());
-      }
-    }
-    
-    // If using the default help, register this command with the help.
-    if (helpCommand != null) {
-      helpCommand.addCommand(meth, allowedAliases);
-    }
+   * Unregister the bot commands and serializers that were registered from an
+   * object with {@link #register(Object)}. Its deserializers stay registered.
+   * <p>
+   * This gives the reader a new registry, so if the old one was shared with
+   * other readers, they aren't affected.
+   * 
+   * @param object
+   *          The object whose methods should be unregistered.
+   * @return The CommandReader itself, for chaining.
+   */
+  public synchronized CommandReader unregister(Object object) {
+    setRegistry(registry.toBuilder().unregister(object).build());
+    return this;
   }
   
   /**
-   * Asserts that a command name is available and errors otherwise.
+   * Unregister all the bot commands and serializers declared in a class,
+   * whether they're static or were registered from an instance. Its
+   * deserializers stay registered.
+   * <p>
+   * This gives the reader a new registry, so if the old one was shared with
+   * other readers, they aren't affected.
    * 
-   * @param name
-   *          The name to check for.
-   * @param where
-   *          Which list to look in.
-   * @throws InvalidCommandMethodError
-   *           If the name is invalid.
-   * @throws NameAlreadyTakenError
-   *           If the name is already taken.
-   */
-  private void assertNameAvailable(String name, BotCommand.CommandSource where) {
-    name = name.toLowerCase();
-    Matcher mtc = Pattern.compile("[a-z0-9\\-_]+").matcher(name);
-    if (!mtc.matches()) throw new InvalidCommandMethodError("The command name " + name
-        + " is not valid. Names can only contain numbers, letters, underscores, and hyphens.");
-    if (where != BotCommand.CommandSource.DM) {
-      if (serverCommands.containsKey(name))
-        throw new NameAlreadyTakenError("The command name " + name + " is already taken by command "
-            + serverCommands.get(name).getAnnotation(BotCommand.class).name().toLowerCase());
-    }
-    if (where != BotCommand.CommandSource.GUILD) {
-      if (dmCommands.containsKey(name))
-        throw new NameAlreadyTakenError("The command name " + name + " is already taken by command "
-            + dmCommands.get(name).getAnnotation(BotCommand.class).name().toLowerCase());
-    }
+   * @param cls
+   *          The class whose methods should be unregistered.
+   * @return The CommandReader itself, for chaining.
+   */
+  public synchronized CommandReader unregister(Class<?> cls) {
+    setRegistry(registry.toBuilder().unregister(cls).build());
+    return this;
+  }
+  
+  /**
+   * Rebuilds the command recognizer with the current commands, prefixes, and
+   * (if the client is ready) the bot's mentions.
+   */
+  private synchronized void rebuildRecognizer() {
+    rebuildRecognizer(recognizer.registry);
   }
   
   /**
-   * Adds a command to the lists.
+   * Rebuilds the command recognizer with new commands, and the current
+   * prefixes and (if the client is ready) the bot's mentions. Once the client
+   * is ready, this also finds the channels of commands that reply in another
+   * channel, so that they aren't looked up every time.
    * 
-   * @param meth
-   *          The method to add.
-   * @param obj
-   *          The object to fire the method from.
-   * @param name
-   *          The name to add it under.
-   * @param where
-   *          Which list to add it to.
-   * @return Whether or not the command was actually added by that name.
-   */
-  private boolean addName(Method meth, Object obj, String name, BotCommand.CommandSource where) {
-    name = name.toLowerCase();
-    Matcher mtc = Pattern.compile("[a-z0-9\\-_]+").matcher(name);
-    if (!mtc.matches()) return false;
-    if (where != BotCommand.CommandSource.DM) {
-      if (serverCommands.containsKey(name)) return false;
+   * @param commands
+   *          The commands, with the default help system's added.
+   */
+  private synchronized void rebuildRecognizer(CommandRegistry commands) {
+    BitSet guildStarts = guildStore.getPrefixStarts();
+    IUser us = client.getOurUser();
+    if (us == null) {
+      recognizer = new CommandRecognizer(prefix, guildStarts, commands, null, null);
+      return;
     }
-    if (where != BotCommand.CommandSource.GUILD) {
-      if (dmCommands.containsKey(name)) return false;
-      dmCommands.put(name, meth);
-      dmCommandObjects.put(name, obj);
+    recognizer = new CommandRecognizer(prefix, guildStarts, commands, us.mention(true), us.mention(false));
+    
+    LongMap<IChannel> others = LongMap.empty();
+    for (CommandPlan plan : commands.serverCommands.values()) {
+      others = withOtherChannel(others, plan);
     }
-    if (where != BotCommand.CommandSource.DM) {
-      serverCommands.put(name, meth);
-      serverCommandObjects.put(name, obj);
+    for (CommandPlan plan : commands.dmCommands.values()) {
+      others = withOtherChannel(others, plan);
     }
-    return true;
+    otherChannels = others;
+  }
+  
+  /**
+   * Adds a command's reply channel to a map of them, if it replies in another
+   * channel that can be found.
+   * 
+   * @param others
+   *          The map.
+   * @param plan
+   *          The command.
+   * @return The new map.
+   */
+  private LongMap<IChannel> withOtherChannel(LongMap<IChannel> others, CommandPlan plan) {
+    if (plan.cmd.reply() != BotCommand.ReplyTarget.OTHER) return others;
+    long id = plan.cmd.replyOther();
+    if (others.get(id) != null) return others;
+    IChannel channel = client.getChannelByID(id);
+    return (channel == null) ? others : others.with(id, channel);
   }
   
   /**
@@ -502,317 +652,554 @@ public class CommandReader {
   @EventSubscriber
   public void handle(MessageReceivedEvent event) {
     IMessage msg = event.getMessage();
-    String messageTxt = msg.getContent().trim();
-    
-    // See if the message starts with a pre-mention
-    boolean preMention = false;
-    if (messageTxt.startsWith(client.getOurUser().mention(true))) {
-      preMention = true;
-      messageTxt = messageTxt.substring(client.getOurUser().mention(true).length()).trim();
-    } else if (messageTxt.startsWith(client.getOurUser().mention(false))) {
-      preMention = true;
-      messageTxt = messageTxt.substring(client.getOurUser().mention(false).length()).trim();
-    }
-    
-    // See if the command starts with the proper prefix; cancel the event if not
-    if (!messageTxt.startsWith(prefix)) return;
-    messageTxt = messageTxt.substring(prefix.length());
-    
-    // Split the command into its parameters, and make sure some *actually
-    // exist* (at the very least, the name of the command)
-    ArrayList<String> paramStr = new ArrayList<>(Arrays.asList(messageTxt.split(" ")));
-    if (paramStr.isEmpty()) return;
-    
-    // Get objects for the comm
-    Method meth = null;
-    Object obj = null;
-    BotCommand cmd = null;
-    
-    String cmdName = paramStr.get(0).toLowerCase();
+    String messageTxt = msg.getContent();
     
-    if (event.getChannel().isPrivate()) {
-      meth = dmCommands.get(cmdName);
-      obj = dmCommandObjects.get(cmdName);
-    } else {
-      meth = serverCommands.get(cmdName);
-      obj = serverCommandObjects.get(cmdName);
-    }
+    // Throw out anything that obviously isn't a command, as cheaply as
+    // possible - this is what happens to almost every message. Until the
+    // client is ready, the recognizer doesn't know the bot's mentions; it's
+    // rebuilt with them once, on the ReadyEvent.
+    CommandRecognizer rec = recognizer;
+    if (!rec.mayBeCommand(messageTxt)) return;
+    if (shard != null && msg.getShard() != shard) return;
+    if (ignoringBots && msg.getAuthor().isBot()) return;
     
-    paramStr.remove(0);
+    // Guilds' own settings are only looked up for messages that got this far,
+    // and not at all until some guild has them.
+    IChannel channel = event.getChannel();
+    boolean isPrivate = channel.isPrivate();
+    GuildSettings settings = null;
+    GuildSettingsStore guilds = guildStore;
+    if (!isPrivate && !guilds.isEmpty()) settings = guilds.get(channel.getGuild().getLongID());
     
-    // If the command doesn't exist at the given source, return.
-    if (meth == null) return;
+    // Match the mention, prefix, and command name in one go; if they don't
+    // make a command usable here, cancel the event.
+    String guildPrefix = (settings == null) ? null : settings.getPrefix();
+    CommandRecognizer.Match match = rec.recognize(messageTxt, isPrivate, guildPrefix);
+    if (match == null) return;
     
-    // Get the command annotation
-    cmd = meth.getAnnotation(BotCommand.class);
+    CommandPlan plan = match.plan;
+    BotCommand cmd = plan.cmd;
+    if (settings != null && !settings.isCommandEnabled(plan.name)) return;
     
     // Check if a prefix mention is required, and if so, was one supplied?
-    boolean isPreMentionRequired = (cmd.mentions() == MentionSetting.PREFIX)
-        || (cmd.mentions() == MentionSetting.DEFAULT && requireMention == MentionSetting.PREFIX);
-    if (isPreMentionRequired & !preMention) return;
-    
-    // We'll need this later. Like, almost a hundred lines from now.
-    boolean isVoidMethod = false;
-    
-    ArrayList<Parameter> paramTypes = new ArrayList<>(Arrays.asList(meth.getParameters()));
-    paramTypes.remove(0);
-    Class<?> methType = meth.getReturnType();
-    if (methType.equals(Void.TYPE)) {
-      isVoidMethod = true;
-      paramTypes.remove(0);
-    }
-    
-    // Get the target channel to send messages to; we'll need it now to send an
-    // error if the command fails
-    IChannel replyTarget = null;
-    BotCommand.ReplyTarget targ = cmd.reply();
-    switch (targ) {
-      case SOURCE:
-      case REACTION:
-      case NONE: // Use source channel in case of errors.
-        replyTarget = event.getChannel();
-        break;
-      case GENERAL:
-        replyTarget = event.getGuild().getGeneralChannel();
-        if (replyTarget == null) replyTarget = event.getChannel();
-        break;
-      case DM:
-        replyTarget = event.getAuthor().getOrCreatePMChannel();
-        break;
-      case OTHER:
-        replyTarget = client.getChannelByID(cmd.replyOther());
-        if (replyTarget == null) replyTarget = event.getChannel();
-        break;
-    }
-    
-    // Check if the user is permitted to perform this command
-    if (!event.getChannel().getModifiedPermissions(event.getAuthor()).contains(cmd.requiredPerm())) {
-      MessageSender.send(replyTarget,
-          "You can't use this command because you don't have the " + cmd.requiredPerm().toString() + " permission.");
-      return;
-    }
+    MentionSetting mentions = cmd.mentions();
+    if (mentions == MentionSetting.DEFAULT && settings != null) mentions = settings.getMentionSetting();
+    if (mentions == MentionSetting.DEFAULT) mentions = requireMention;
+    if (mentions == MentionSetting.PREFIX & !match.preMention) return;
     
-    // Now make the list for parameters
-    ArrayList<Object> params = new ArrayList<>(paramTypes.size() + 2);
-    
-    // Only check incoming parameters if there are parameters in the command
-    // method.
-    if (!paramTypes.isEmpty()) {
-      // Now start parsing parameters.
-      if (paramTypes.size() > 0) {
-        int maxParam = paramTypes.size() - 1;
-        for (int i = 0; i < maxParam + 1; i++) {
-          Parameter param = paramTypes.get(Math.min(maxParam, i));
-          OptParam opt = param.getAnnotation(OptParam.class);
-          
-          if (paramStr.isEmpty()) {
-            if (opt != null) {
-              paramStr = new ArrayList<>(Arrays.asList(opt.value().split(" ")));
-            } else {
-              String usage = cmd.usage();
-              if (!usage.isEmpty())
-                MessageSender.send(replyTarget, "Usage: " + usage);
-              else
-                MessageSender.send(replyTarget, "Not enough parameters (no usage string provided)");
-              return;
-            }
-          }
-          
-          Combine comb = param.getAnnotation(Combine.class);
-          int howMany = Integer.MAX_VALUE;
-          if (comb != null) {
-            howMany = comb.value();
-          } else {
-            if (!param.getType().isArray()) howMany = 1;
-          }
-          
-          Restrict rest = param.getAnnotation(Restrict.class);
-          
-          try {
-            Object parObj;
-            parObj = deserialize(param.getType(), paramStr, howMany, msg, rest);
-            params.add(parObj);
-          } catch (DeserializationException ex) {
-            MessageSender.send(replyTarget, "Parameter " + (i + 1) + " is invalid: "
-                + ex.getMessage());
-            return;
-          }
-        }
+    // Commands on cooldown are turned away before anything else is done with
+    // them. The cooldown is taken back if the command is turned away below.
+    long cooldownID = 0L;
+    long cooldownAt = 0L;
+    if (plan.cooldowns != null) {
+      cooldownID = cooldownKey(cmd.cooldownScope(), event, channel);
+      cooldownAt = CooldownTable.now();
+      long left = plan.cooldowns.tryAcquire(cooldownID, cooldownAt);
+      if (left > 0) {
+        metrics.onCooldown();
+        String reply = cooldownReply;
+        if (reply != null && !reply.isEmpty())
+          MessageSender.send(channel, String.format(reply, (left + 999999999L) / 1000000000L));
+        return;
       }
     }
     
-    // Add the message, and optionally the channel, to the start of the list.
-    params.add(0, event.getMessage());
-    if (isVoidMethod) params.add(1, replyTarget);
-    
-    // Change it to an array to be compatible with the method.invoke method.
-    Object[] args = params.toArray();
-    
-    // And now run the method!
-    Object retVal = null;
-    try {
-      retVal = meth.invoke(obj, args);
-    } catch (IllegalAccessException | IllegalArgumentException e) {
-      MessageSender.send(replyTarget,
-          "An error occurred because Nix didn't learn how Java Reflection works. .w. Have some details:\n"
-              + e.toString() + "\n" + e.getStackTrace()[0] + "\n" + e.getStackTrace()[1]);
-    } catch (InvocationTargetException e) {
-      Throwable ex = e.getCause();
-      MessageSender.send(replyTarget,
-          "An error occurred. Have some details:\n"
-              + ex.toString() + "\n" + ex.getStackTrace()[0] + "\n" + ex.getStackTrace()[1] + "\n"
-              + ex.getStackTrace()[2] + "\n" + ex.getStackTrace()[3] + "\n" + ex.getStackTrace()[4]);
-    }
-    
-    // Lastly, let's do something with the result.
-    // If it's null or no reply target was specified, we're done with our job,
-    // even if the return type isn't void.
-    if (retVal == null || targ == BotCommand.ReplyTarget.NONE) return;
-    
-    // Serialize the result first.
-    Class<?> retType = retVal.getClass();
-    if (!(retType.isAssignableFrom(String.class) || retType.isAssignableFrom(EmbedObject.class)
-        || retType.isAssignableFrom(IEmoji.class) || retType.isAssignableFrom(Emoji.class))) {
-      retVal = serialize(retVal, methType, msg);
-    }
-    
-    // If it's a string or EmbedObject, we're sending it at the reply target.
-    if (retVal instanceof String) {
-      MessageSender.send(replyTarget, (String) retVal);
+    // When too many commands are already waiting, the less important ones are
+    // shed with a reaction, which is much cheaper than running them.
+    if (isShed(cmd.priority(), getPressure())) {
+      if (plan.cooldowns != null) plan.cooldowns.cancel(cooldownID, cooldownAt);
+      metrics.shed();
+      reactBusy(msg);
       return;
     }
     
-    if (retVal instanceof EmbedObject) {
-      MessageSender.send(replyTarget, (EmbedObject) retVal);
+    // Everything from here on could be slow, so it happens on the executor and
+    // leaves the dispatcher free for other events. Each guild can only have so
+    // many commands waiting, and guilds take turns to run them, so one busy
+    // guild can't crowd out the rest.
+    long group = channel.isPrivate() ? FairExecutor.DM_GROUP : channel.getGuild().getLongID();
+    if (!fairExecutor.tryAdmit(group)) {
+      if (plan.cooldowns != null) plan.cooldowns.cancel(cooldownID, cooldownAt);
+      metrics.dropped(group);
       return;
     }
     
-    // If it's an emoji (custom or standard), we're reacting to the original
-    // message with it.
-    if (retVal instanceof Emoji) {
-      MessageSender.react(event.getMessage(), (Emoji) retVal);
-      return;
-    }
+    // Read the command's parameters straight from the message
+    TokenCursor paramStr = new TokenCursor(messageTxt, match.argsStart, match.end);
+    OrderingMode order = ordering;
+    CommandTask task = new CommandTask(event, rec.registry, plan, paramStr, group, order, cooldownID, cooldownAt);
     
-    if (retVal instanceof IEmoji) {
-      MessageSender.react(event.getMessage(), (IEmoji) retVal);
-      return;
+    // Commands with a concurrency limit may have to wait for a place, or be
+    // turned away if there isn't room to wait. Commands that are kept in order
+    // wait at the front of their lane instead, so that the ones behind them
+    // stay in order.
+    if (plan.bulkhead != null && order == OrderingMode.NONE) {
+      int place = plan.bulkhead.tryAcquire(task);
+      if (place == Bulkhead.FULL) {
+        metrics.busy();
+        task.turnAway();
+        return;
+      }
+      metrics.submitted();
+      if (place == Bulkhead.QUEUED) return;
+      task.state.set(CommandTask.GRANTED);
+    } else {
+      metrics.submitted();
     }
+    submit(task);
   }
   
   /**
-   * Converts a string input by the user to an object accepted by the bot
-   * command.
+   * Checks whether a command should be shed.
    * 
-   * @param cls
-   *          The class to which the string should be converted.
-   * @param values
-   *          The strings (space separated) input by the user.
-   * @param howMany
-   *          Either the value of the <code>@</code>{@link Combine} annotation,
-   *          or <code>Integer.MAX_VALUE</code> for arrays/varargs and 1 for
-   *          anything else.
+   * @param priority
+   *          The command's priority.
+   * @param pressure
+   *          The current pressure.
+   * @return Whether the command should be answered with a busy reaction
+   *         instead of being run.
+   */
+  private static boolean isShed(CommandPriority priority, PressureLevel pressure) {
+    switch (pressure) {
+      case ELEVATED:
+        return priority == CommandPriority.LOW;
+      case CRITICAL:
+        return priority != CommandPriority.HIGH;
+      default:
+        return false;
+    }
+  }
+  
+  /**
+   * Reacts to a message with the busy reaction, if there is one.
+   * 
+   * @param msg
+   *          The message.
+   */
+  private void reactBusy(IMessage msg) {
+    Emoji reaction = busyReaction;
+    if (reaction != null) MessageSender.react(msg, reaction);
+  }
+  
+  /**
+   * Sends a reply that isn't the result of a command, such as a usage message.
+   * Under pressure, these are replaced by the busy reaction.
+   * 
+   * @param target
+   *          The channel to send the reply to.
    * @param msg
-   *          The message that triggered this command.
-   * @param restriction
-   *          The <code>@</code>{@link Restrict} tag passed to the parameter.
-   * @return The object to be sent to the command.
-   */
-  @SuppressWarnings("unchecked")
-  <E> E deserialize(Class<E> cls, ArrayList<String> values, int howMany, IMessage msg, Restrict restriction) {
-    if (cls.isArray() && !deserializers.containsKey(cls)) {
-      return (E) deserializeArray(cls.getComponentType(), values, howMany, msg, restriction);
-    } else if (cls.isEnum() && !deserializers.containsKey(cls)) {
-      String value = values.remove(0);
-      E[] constants = cls.getEnumConstants();
-      for (E constant : constants) {
-        if (constant.toString().toLowerCase().equals(value.toLowerCase())) return constant;
+   *          The message that triggered the command.
+   * @param reply
+   *          The reply.
+   */
+  private void sendMinorReply(ReplyChannel target, IMessage msg, String reply) {
+    if (getPressure() == PressureLevel.NORMAL)
+      MessageSender.send(target.get(), reply);
+    else
+      reactBusy(msg);
+  }
+  
+  /**
+   * Gets the ID a command's cooldown is tracked by.
+   * 
+   * @param scope
+   *          The command's cooldown scope.
+   * @param event
+   *          The event for the message that triggered the command.
+   * @param channel
+   *          The channel it was sent in.
+   * @return The ID.
+   */
+  private static long cooldownKey(CooldownScope scope, MessageReceivedEvent event, IChannel channel) {
+    switch (scope) {
+      case USER:
+        return event.getAuthor().getLongID();
+      case CHANNEL:
+        return channel.getLongID();
+      case GUILD:
+        return channel.isPrivate() ? channel.getLongID() : channel.getGuild().getLongID();
+      default:
+        return 0L;
+    }
+  }
+  
+  /**
+   * Hands a command over to be run, keeping it in order as set by
+   * {@link #setOrdering}.
+   * 
+   * @param task
+   *          The command.
+   */
+  private void submit(CommandTask task) {
+    switch (task.order) {
+      case CHANNEL:
+        serialExecutor.execute(task.event.getChannel().getLongID(), task);
+        break;
+      case USER:
+        serialExecutor.execute(task.event.getAuthor().getLongID(), task);
+        break;
+      case NONE:
+        fairExecutor.execute(task);
+        break;
+    }
+  }
+  
+  /**
+   * A recognized command waiting to be run.
+   */
+  private final class CommandTask implements FairExecutor.Task, KeyedSerialExecutor.Gated {
+    /** The state of a command that hasn't got a place in its bulkhead yet. */
+    static final int PENDING = 0;
+    /** The state of a command waiting for a place at the front of its lane. */
+    static final int PARKED  = 1;
+    /** The state of a command that has a place in its bulkhead, if needed. */
+    static final int GRANTED = 2;
+    /** The state of a command its bulkhead turned away. */
+    static final int BUSY    = 3;
+    
+    /** The event for the message that triggered the command. */
+    private final MessageReceivedEvent event;
+    /** The commands the command was recognized among. */
+    private final CommandRegistry      commands;
+    /** The compiled command. */
+    private final CommandPlan          plan;
+    /** The command's parameters. */
+    private final TokenCursor          params;
+    /** The guild the command was sent in, or 0 for direct messages. */
+    private final long                 group;
+    /** How the command is kept in order with others. */
+    private final OrderingMode         order;
+    /** The ID the command's cooldown was started for, if it has one. */
+    private final long                 cooldownID;
+    /** When the command's cooldown was started, if it has one. */
+    private final long                 cooldownAt;
+    /** When the command was handed over, by {@link System#nanoTime()}. */
+    private final long                 submittedAt;
+    /** Where the command stands with its bulkhead. */
+    private final AtomicInteger        state;
+    /** Resumes the command's lane, once it's parked. */
+    private volatile Runnable          resume;
+    
+    CommandTask(MessageReceivedEvent event, CommandRegistry commands, CommandPlan plan, TokenCursor params,
+        long group, OrderingMode order, long cooldownID, long cooldownAt) {
+      this.event = event;
+      this.commands = commands;
+      this.plan = plan;
+      this.params = params;
+      this.group = group;
+      this.order = order;
+      this.cooldownID = cooldownID;
+      this.cooldownAt = cooldownAt;
+      this.submittedAt = System.nanoTime();
+      this.state = new AtomicInteger((plan.bulkhead == null) ? GRANTED : PENDING);
+      plan.inFlight.incrementAndGet();
+    }
+    
+    @Override
+    public long group() {
+      return group;
+    }
+    
+    @Override
+    public boolean tryStart(Runnable resume) {
+      if (state.get() == GRANTED) return true;
+      // Parked before asking, as the place may be handed over straight away.
+      this.resume = resume;
+      state.set(PARKED);
+      int place = plan.bulkhead.tryAcquire(this);
+      if (place == Bulkhead.QUEUED) return false;
+      if (place == Bulkhead.START) {
+        state.set(GRANTED);
+      } else {
+        metrics.busyWhileQueued();
+        turnAway();
       }
-      throw new DeserializationException(value + " is an invalid choice.");
-    } else {
+      return true;
+    }
+    
+    @Override
+    public void run() {
+      if (state.get() == BUSY) return;
+      metrics.started(submittedAt);
       try {
-        Method meth = deserializers.get(cls);
-        Object obj = deserializerObjects.get(cls);
-        Object[] inputs = new Object[meth.getParameterCount()];
-        Class<?>[] inputTypes = meth.getParameterTypes();
-        inputs[0] = values;
-        inputs[1] = howMany;
-        for (int i = 2; i < inputs.length; i++) {
-          Class<?> clz = inputTypes[i];
-          if (clz == IMessage.class) inputs[i] = msg;
-          if (clz == Restrict.class) inputs[i] = restriction;
-          // Forwards compatibility - the boolean is whether the message was
-          // deleted (true) or created (false).
-          if (clz == Boolean.TYPE || clz == Boolean.class) inputs[i] = Boolean.FALSE;
-        }
-        return (E) meth.invoke(obj, inputs);
-      } catch (IllegalAccessException | IllegalArgumentException ex) {
-        throw new DeserializationException("The deserialization method for type " + cls.getSimpleName() + " failed.");
-      } catch (InvocationTargetException ex) {
-        Throwable th = ex.getCause();
-        if (th instanceof DeserializationException) throw (DeserializationException) th;
-        if (th instanceof Error) throw (Error) th;
-        else throw new DeserializationException(th);
+        CommandReader.this.run(event, commands, plan, params, cooldownID, cooldownAt);
+      } finally {
+        metrics.finished();
+        done();
+      }
+    }
+    
+    @Override
+    public void reject() {
+      metrics.rejected();
+      done();
+    }
+    
+    /**
+     * Gives the command the place in its bulkhead it was waiting for, and lets
+     * it go on: by resuming its lane, or by handing it over to be run.
+     */
+    private void placeGranted() {
+      if (state.compareAndSet(PARKED, GRANTED))
+        resume.run();
+      else if (state.compareAndSet(PENDING, GRANTED)) submit(this);
+    }
+    
+    /**
+     * Turns the command away because its bulkhead is full, taking back its
+     * cooldown.
+     */
+    private void turnAway() {
+      state.set(BUSY);
+      done();
+      if (plan.cooldowns != null) plan.cooldowns.cancel(cooldownID, cooldownAt);
+      String reply = busyReply;
+      if (reply != null && !reply.isEmpty()) MessageSender.send(event.getChannel(), reply);
+    }
+    
+    /**
+     * Marks the command as finished and gives up its places in its guild and
+     * (if it has one) its bulkhead, letting the next waiting command in its
+     * bulkhead (if any) go.
+     */
+    private void done() {
+      plan.inFlight.decrementAndGet();
+      fairExecutor.complete(group);
+      if (plan.bulkhead != null && state.get() == GRANTED) {
+        Runnable next = plan.bulkhead.release();
+        // The next command may have come through another reader sharing the
+        // bulkhead, so it goes back to its own.
+        if (next != null) ((CommandTask) next).placeGranted();
       }
     }
   }
   
   /**
-   * Converts strings input by the user into an array of objects using the
-   * non-array's deserializer.
-   * <p>
-   * Primitive types cannot be deserialized using this method. However, they
-   * have default array deserializers in {@link DefaultMethods}.
+   * Gets the channel a command replies in, which is looked up only when it's
+   * first used.
    * 
-   * @param cls
-   *          The component type of the array to which the string should be
-   *          converted.
-   * @param values
-   *          The strings (space separated) input by the user.
-   * @param howMany
-   *          Either the value of the <code>@</code>{@link Combine} annotation,
-   *          or <code>Integer.MAX_VALUE</code>.
-   * @param msg
-   *          The message that triggered this command.
-   * @param restriction
-   *          The <code>@</code>{@link Restrict} tag passed to the parameter.
-   * @return
-   */
-  @SuppressWarnings("unchecked")
-  <E> E[] deserializeArray(Class<E> cls, ArrayList<String> values, int howMany, IMessage msg, Restrict restriction) {
-    int maxSize = Math.min(values.size(), howMany);
-    E[] array = (E[]) Array.newInstance(cls, maxSize);
-    for (int i = 0; i < maxSize; i++) {
-      array[i] = deserialize(cls, values, 1, msg, restriction);
+   * @param targ
+   *          Where the command replies.
+   * @param cmd
+   *          The command.
+   * @param event
+   *          The event for the message that triggered the command.
+   * @return The reply channel.
+   */
+  private ReplyChannel replyChannel(BotCommand.ReplyTarget targ, BotCommand cmd, MessageReceivedEvent event) {
+    IChannel source = event.getChannel();
+    switch (targ) {
+      case GENERAL:
+        return new ReplyChannel(() -> generalChannel(source));
+      case DM:
+        return new ReplyChannel(() -> DmChannelCache.SHARED.get(event.getAuthor()));
+      case OTHER:
+        return new ReplyChannel(() -> otherChannel(cmd.replyOther(), source));
+      default: // Use source channel in case of errors.
+        return new ReplyChannel(source);
     }
-    return array;
   }
   
   /**
-   * Converts an object returned by a command method to a value that can be sent
-   * by the bot.
+   * Gets the general channel of the guild a message was sent in. Each guild's
+   * is remembered until its channels change.
    * 
-   * @param input
-   *          The object returned by the command method.
-   * @param msg
-   *          The message that triggered the command.
-   * @return The object sent to the user by the bot.
+   * @param source
+   *          The channel the message was sent in.
+   * @return The general channel, or the source channel if there isn't one.
    */
-  Object serialize(Object input, Class<?> type, IMessage msg) {
-    Method meth = serializers.get(type);
-    Object obj = serializerObjects.get(type);
-    if (meth != null) {
-      try {
-        if (meth.getParameterCount() == 2) {
-          return meth.invoke(obj, input, msg);
+  private IChannel generalChannel(IChannel source) {
+    if (source.isPrivate()) return source;
+    IGuild guild = source.getGuild();
+    int slot = LongMap.hash(guild.getLongID()) & (generalChannels.length() - 1);
+    IChannel general = generalChannels.get(slot);
+    if (general != null && general.getGuild().getLongID() == guild.getLongID() && !general.isDeleted())
+      return general;
+    
+    general = guild.getGeneralChannel();
+    if (general == null) return source;
+    generalChannels.set(slot, general);
+    return general;
+  }
+  
+  /**
+   * Forgets a guild's general channel.
+   * 
+   * @param guild
+   *          The guild.
+   */
+  private void forgetGeneralChannel(IGuild guild) {
+    int slot = LongMap.hash(guild.getLongID()) & (generalChannels.length() - 1);
+    IChannel general = generalChannels.get(slot);
+    if (general != null && general.getGuild().getLongID() == guild.getLongID())
+      generalChannels.compareAndSet(slot, general, null);
+  }
+  
+  /**
+   * Gets the channel a command that replies in another channel replies in.
+   * 
+   * @param id
+   *          The channel's ID.
+   * @param source
+   *          The channel the command was used in.
+   * @return The channel, or the source channel if it can't be found.
+   */
+  private IChannel otherChannel(long id, IChannel source) {
+    IChannel other = otherChannels.get(id);
+    if (other == null) other = client.getChannelByID(id);
+    return (other == null) ? source : other;
+  }
+  
+  /**
+   * Runs a recognized command: parses its parameters, calls the command
+   * method, and replies with the result.
+   * 
+   * @param event
+   *          The event for the message that triggered the command.
+   * @param commands
+   *          The commands the command was recognized among.
+   * @param plan
+   *          The compiled command.
+   * @param paramStr
+   *          The command's parameters.
+   * @param cooldownID
+   *          The ID the command's cooldown was started for.
+   * @param cooldownAt
+   *          When the command's cooldown was started.
+   */
+  private void run(MessageReceivedEvent event, CommandRegistry commands, CommandPlan plan, TokenCursor paramStr,
+      long cooldownID, long cooldownAt) {
+    IMessage msg = event.getMessage();
+    BotCommand cmd = plan.cmd;
+    
+    // Get the target channel to send messages to, including errors if the
+    // command fails; it's only looked up once something is sent there.
+    BotCommand.ReplyTarget targ = cmd.reply();
+    ReplyChannel replyTarget = replyChannel(targ, cmd, event);
+    
+    // Check if the user is permitted to perform this command. If they aren't,
+    // their use mustn't put the command on cooldown for those who are.
+    if (!PermissionCache.SHARED.has(event.getChannel(), event.getAuthor(), cmd.requiredPerm())) {
+      if (plan.cooldowns != null) plan.cooldowns.cancel(cooldownID, cooldownAt);
+      sendMinorReply(replyTarget, msg,
+          "You can't use this command because you don't have the " + cmd.requiredPerm().toString() + " permission.");
+      return;
+    }
+    
+    // Now make the list for parameters, starting with the message, and
+    // optionally the channel, which is only looked up once the parameters
+    // have been read.
+    CommandPlan.Slot[] slots = plan.slots;
+    Object[] args = new Object[plan.firstSlot + slots.length];
+    args[0] = msg;
+    
+    // Now start parsing parameters.
+    for (int i = 0; i < slots.length; i++) {
+      CommandPlan.Slot slot = slots[i];
+      
+      if (!paramStr.hasNext()) {
+        if (slot.defaultValue != null) {
+          paramStr = new TokenCursor(slot.defaultValue);
         } else {
-          return meth.invoke(obj, input);
+          String usage = cmd.usage();
+          if (!usage.isEmpty())
+            sendMinorReply(replyTarget, msg, "Usage: " + usage);
+          else
+            sendMinorReply(replyTarget, msg, "Not enough parameters (no usage string provided)");
+          return;
         }
-      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-        throw new SerializationException("The serialization method for type " + type.getSimpleName() + " failed.");
       }
-    } else
-      return input.toString();
+      
+      try {
+        args[plan.firstSlot + i] = slot.deserializer.deserialize(paramStr, slot.howMany, msg, slot.spec);
+      } catch (DeserializationException ex) {
+        sendMinorReply(replyTarget, msg, "Parameter " + (i + 1) + " is invalid: "
+            + ex.getMessage());
+        return;
+      }
+    }
+    if (plan.isVoid) args[1] = replyTarget.get();
+    
+    // And now run the method! If it runs out of time, the timeout has already
+    // been replied to, so whatever it returns or throws afterwards is ignored.
+    long limit = (cmd.timeout() < 0) ? defaultTimeout : cmd.timeout();
+    CommandTimeout timeout = (limit == 0) ? null
+        : CommandTimeout.start(limit, replyTarget, timeoutReply, executor, metrics);
+    Object retVal = null;
+    Exception error = null;
+    try {
+      CommandInvoker invoker = reflectiveInvocation ? plan.reflectiveInvoker : plan.handleInvoker;
+      retVal = invoker.invoke(args);
+    } catch (Exception ex) {
+      error = ex;
+    } catch (Error err) {
+      // Errors aren't the command's to report, but its timeout still stops.
+      if (timeout != null) timeout.finish();
+      throw err;
+    }
+    if (timeout != null && !timeout.finish()) return;
+    
+    if (error instanceof IllegalAccessException || error instanceof WrongMethodTypeException) {
+      MessageSender.send(replyTarget.get(),
+          "An error occurred because Nix didn't learn how Java Reflection works. .w. Have some details:\n"
+              + describe(error, 2));
+    } else if (error != null) {
+      MessageSender.send(replyTarget.get(), "An error occurred. Have some details:\n" + describe(error, 5));
+    }
+    
+    // Lastly, let's do something with the result.
+    // If it's null or no reply target was specified, we're done with our job,
+    // even if the return type isn't void.
+    if (retVal == null || targ == BotCommand.ReplyTarget.NONE) return;
+    
+    // Serialize the result first.
+    Class<?> retType = retVal.getClass();
+    if (!(retType.isAssignableFrom(String.class) || retType.isAssignableFrom(EmbedObject.class)
+        || retType.isAssignableFrom(IEmoji.class) || retType.isAssignableFrom(Emoji.class))) {
+      retVal = commands.serialize(retVal, plan.returnType, msg);
+    }
+    
+    // If it's a string or EmbedObject, we're sending it at the reply target.
+    if (retVal instanceof String) {
+      MessageSender.send(replyTarget.get(), (String) retVal);
+      return;
+    }
+    
+    if (retVal instanceof EmbedObject) {
+      MessageSender.send(replyTarget.get(), (EmbedObject) retVal);
+      return;
+    }
+    
+    // If it's an emoji (custom or standard), we're reacting to the original
+    // message with it.
+    if (retVal instanceof Emoji) {
+      MessageSender.react(event.getMessage(), (Emoji) retVal);
+      return;
+    }
+    
+    if (retVal instanceof IEmoji) {
+      MessageSender.react(event.getMessage(), (IEmoji) retVal);
+      return;
+    }
+  }
+  
+  /**
+   * Describes an exception for an error reply: what it is, followed by the top
+   * of its stack trace.
+   * 
+   * @param error
+   *          The exception.
+   * @param frames
+   *          How many stack frames to include at most.
+   * @return The description.
+   */
+  private static String describe(Exception error, int frames) {
+    StringBuilder out = new StringBuilder(error.toString());
+    StackTraceElement[] trace = error.getStackTrace();
+    for (int i = 0; i < frames && i < trace.length; i++) {
+      out.append('\n').append(trace[i]);
+    }
+    return out.toString();
   }
   
   /**
@@ -840,6 +1227,24 @@ public class CommandReader {
     return cmdMentionSetting;
   }
   
+  /**
+   * Get the command's mention setting as used in a guild. This is the mention
+   * setting of the command itself, unless the command uses
+   * <code>DEFAULT</code>, in which case it inherits from the guild's settings,
+   * or from the <code>CommandReader</code> if the guild doesn't have one.
+   * 
+   * @param guild
+   *          The guild, or <code>null</code> for direct messages.
+   * @param cmdMentionSetting
+   *          The command's mention setting.
+   * @return The command's mention setting in that guild.
+   */
+  public MentionSetting getMentionSetting(IGuild guild, MentionSetting cmdMentionSetting) {
+    if (cmdMentionSetting == MentionSetting.DEFAULT && guild != null)
+      cmdMentionSetting = getGuildSettings(guild.getLongID()).getMentionSetting();
+    return getMentionSetting(cmdMentionSetting);
+  }
+  
   /**
    * Set whether commands that inherit the <code>CommandReader</code>'s default
    * mention setting require a mention.
@@ -849,6 +1254,333 @@ public class CommandReader {
    */
   public void setMentionSetting(MentionSetting newSetting) {
     requireMention = newSetting;
+    if (helpCommand != null) helpCommand.repaginate();
+  }
+  
+  /**
+   * Get whether commands are run through plain reflection rather than method
+   * handles.
+   * 
+   * @return Whether reflective invocation is used.
+   */
+  public boolean isReflectiveInvocation() {
+    return reflectiveInvocation;
+  }
+  
+  /**
+   * Set whether commands are run through plain reflection
+   * ({@link Method#invoke}) rather than method handles. Method handles are
+   * faster, but reflection may be needed in environments that restrict them.
+   * This defaults to the <code>net.nixill.commands.reflectiveInvocation</code>
+   * system property, or false if it isn't set.
+   * 
+   * @param reflective
+   *          Whether to use reflection.
+   */
+  public void setReflectiveInvocation(boolean reflective) {
+    reflectiveInvocation = reflective;
+  }
+  
+  /**
+   * Get the executor that commands are run on.
+   * 
+   * @return The executor.
+   */
+  public Executor getExecutor() {
+    return executor;
+  }
+  
+  /**
+   * Set the executor that commands are run on, once they've been recognized
+   * (which happens on Discord4J's dispatcher thread). By default, this is a
+   * bounded pool from {@link CommandExecutors#newDefault()}.
+   * {@link CommandExecutors} can also make executors that use virtual threads,
+   * or that run commands directly on the dispatcher thread.
+   * <p>
+   * This also sets how many commands may run at once to suit the new executor
+   * (see {@link #setMaxRunningCommands}): as many as a thread pool has
+   * threads, or many more for virtual threads. The old executor isn't shut
+   * down.
+   * 
+   * @param newExecutor
+   *          The new executor to use.
+   */
+  public void setExecutor(Executor newExecutor) {
+    executor = newExecutor;
+    fairExecutor.setBase(newExecutor);
+    fairExecutor.setMaxRunning(CommandExecutors.runningLimitFor(newExecutor));
+  }
+  
+  /**
+   * Get the reply sent when a command is turned away because too many runs of
+   * it are already in progress or waiting.
+   * 
+   * @return The reply.
+   */
+  public String getBusyReply() {
+    return busyReply;
+  }
+  
+  /**
+   * Set the reply sent when a command is turned away because too many runs of
+   * it are already in progress or waiting (see
+   * {@link BotCommand#maxConcurrent()}). It's sent to the channel the command
+   * was used in. Set it to an empty string to turn commands away silently.
+   * 
+   * @param reply
+   *          The new reply to use.
+   */
+  public void setBusyReply(String reply) {
+    busyReply = reply;
+  }
+  
+  /**
+   * Get the reply sent when a command is used during its cooldown.
+   * 
+   * @return The reply.
+   */
+  public String getCooldownReply() {
+    return cooldownReply;
+  }
+  
+  /**
+   * Set the reply sent when a command is used during its cooldown (see
+   * {@link BotCommand#cooldown()}). It's sent to the channel the command was
+   * used in, and is used as a {@link String#format} pattern with the number of
+   * seconds left on the cooldown, for example
+   * <code>"Try again in %d seconds."</code>
+   * <p>
+   * This defaults to an empty string, which ignores such uses silently; since
+   * cooldowns are usually there to slow down spam, answering every message
+   * would defeat the purpose.
+   * 
+   * @param reply
+   *          The new reply to use.
+   */
+  public void setCooldownReply(String reply) {
+    cooldownReply = reply;
+  }
+  
+  /**
+   * Get the most commands that may run at once.
+   * 
+   * @return The limit.
+   */
+  public int getMaxRunningCommands() {
+    return fairExecutor.getMaxRunning();
+  }
+  
+  /**
+   * Set the most commands that may run at once. Commands past this limit wait
+   * their turn, and guilds take turns, so the executor is shared fairly. This
+   * should usually match the number of threads the executor has, and is set to
+   * suit the executor whenever {@link #setExecutor} is called, so call this
+   * afterwards to override it.
+   * 
+   * @param max
+   *          The new limit, at least 1.
+   */
+  public void setMaxRunningCommands(int max) {
+    fairExecutor.setMaxRunning(max);
+  }
+  
+  /**
+   * Get the most commands a single guild may have waiting or running at once.
+   * 
+   * @return The limit.
+   */
+  public int getGuildQueueLimit() {
+    return fairExecutor.getGroupLimit();
+  }
+  
+  /**
+   * Set the most commands a single guild may have waiting or running at once.
+   * Further commands from the guild are ignored, and counted in
+   * {@link ExecutorMetrics#getDropped(long)}. Direct messages count as one
+   * guild. This defaults to 100.
+   * 
+   * @param limit
+   *          The new limit, at least 1.
+   */
+  public void setGuildQueueLimit(int limit) {
+    fairExecutor.setGroupLimit(limit);
+  }
+  
+  /**
+   * Get how heavily loaded the reader is right now, judged by how many
+   * commands are waiting to run (see {@link ExecutorMetrics#getQueueDepth()}).
+   * 
+   * @return The pressure level.
+   */
+  public PressureLevel getPressure() {
+    int waiting = metrics.getQueueDepth();
+    if (waiting >= criticalMark) return PressureLevel.CRITICAL;
+    if (waiting >= elevatedMark) return PressureLevel.ELEVATED;
+    return PressureLevel.NORMAL;
+  }
+  
+  /**
+   * Get how many waiting commands make the pressure elevated.
+   * 
+   * @return The high-water mark.
+   */
+  public int getElevatedMark() {
+    return elevatedMark;
+  }
+  
+  /**
+   * Get how many waiting commands make the pressure critical.
+   * 
+   * @return The high-water mark.
+   */
+  public int getCriticalMark() {
+    return criticalMark;
+  }
+  
+  /**
+   * Set how many waiting commands it takes to put the reader under pressure.
+   * Once the elevated mark is reached, <code>LOW</code> priority commands (such
+   * as help) and replies like usage messages are answered with the busy
+   * reaction instead; once the critical mark is reached, <code>NORMAL</code>
+   * priority commands are too. These default to 100 and 500.
+   * 
+   * @param elevated
+   *          The new elevated mark, at least 1.
+   * @param critical
+   *          The new critical mark, at least the elevated mark.
+   * @throws IllegalArgumentException
+   *           If the marks are out of order or less than 1.
+   */
+  public void setHighWaterMarks(int elevated, int critical) {
+    if (elevated < 1 || critical < elevated)
+      throw new IllegalArgumentException("The high-water marks must be at least 1 and in order.");
+    criticalMark = critical;
+    elevatedMark = elevated;
+  }
+  
+  /**
+   * Get the reaction to commands shed under pressure.
+   * 
+   * @return The reaction, or <code>null</code> if there isn't one.
+   */
+  public Emoji getBusyReaction() {
+    return busyReaction;
+  }
+  
+  /**
+   * Set the reaction to commands shed under pressure (see
+   * {@link #setHighWaterMarks}). This defaults to an hourglass. Set it to
+   * <code>null</code> to shed commands silently.
+   * 
+   * @param reaction
+   *          The new reaction to use.
+   */
+  public void setBusyReaction(Emoji reaction) {
+    busyReaction = reaction;
+  }
+  
+  /**
+   * Get how long commands may run by default.
+   * 
+   * @return The default timeout, in milliseconds, or 0 for no limit.
+   */
+  public long getDefaultTimeout() {
+    return defaultTimeout;
+  }
+  
+  /**
+   * Set how long commands may run, for commands that don't set their own
+   * {@link BotCommand#timeout()}. This defaults to 0 (no limit).
+   * <p>
+   * Setting a timeout stops a stuck command from going unanswered, but the
+   * command still keeps its thread, and its places in its guild's share and
+   * its bulkhead, until it notices it's been interrupted, so commands that
+   * might hang should wait in ways that can be interrupted.
+   * 
+   * @param millis
+   *          The new default timeout, in milliseconds, or 0 for no limit.
+   * @throws IllegalArgumentException
+   *           If the timeout is negative.
+   */
+  public void setDefaultTimeout(long millis) {
+    if (millis < 0) throw new IllegalArgumentException("Timeouts can't be negative.");
+    defaultTimeout = millis;
+  }
+  
+  /**
+   * Get the reply sent when a command runs out of time.
+   * 
+   * @return The reply.
+   */
+  public String getTimeoutReply() {
+    return timeoutReply;
+  }
+  
+  /**
+   * Set the reply sent when a command runs out of time. It's sent to the
+   * command's reply target, from the executor, as soon as the time runs out,
+   * even if the command hasn't stopped yet. Set it to an empty string to time commands out
+   * silently.
+   * 
+   * @param reply
+   *          The new reply to use.
+   */
+  public void setTimeoutReply(String reply) {
+    timeoutReply = reply;
+  }
+  
+  /**
+   * Get which commands are run in the order they were sent.
+   * 
+   * @return The ordering mode.
+   */
+  public OrderingMode getOrdering() {
+    return ordering;
+  }
+  
+  /**
+   * Set which commands are run in the order they were sent. By default,
+   * commands in the same channel run one at a time, in order, so their replies
+   * don't get mixed up; commands in different channels still run in parallel.
+   * A command waiting for a place in its bulkhead holds back the commands
+   * after it. Commands that were already waiting keep the ordering they were
+   * sent with.
+   * 
+   * @param newOrdering
+   *          The new ordering mode to use.
+   */
+  public void setOrdering(OrderingMode newOrdering) {
+    ordering = newOrdering;
+  }
+  
+  /**
+   * Get statistics about the commands given to the executor, such as how many
+   * are waiting and how long they waited.
+   * 
+   * @return The metrics.
+   */
+  public ExecutorMetrics getExecutorMetrics() {
+    return metrics;
+  }
+  
+  /**
+   * Get whether messages sent by bots are ignored.
+   * 
+   * @return Whether bots are ignored.
+   */
+  public boolean isIgnoringBots() {
+    return ignoringBots;
+  }
+  
+  /**
+   * Set whether messages sent by bots (including this one) are ignored. This
+   * defaults to true.
+   * 
+   * @param ignore
+   *          Whether to ignore bots.
+   */
+  public void setIgnoringBots(boolean ignore) {
+    ignoringBots = ignore;
   }
   
   /**
@@ -866,8 +1598,124 @@ public class CommandReader {
    * @param newPrefix
    *          The new prefix to use.
    */
-  public void setPrefix(String newPrefix) {
+  public synchronized void setPrefix(String newPrefix) {
     prefix = newPrefix;
+    rebuildRecognizer();
+    if (helpCommand != null) helpCommand.repaginate();
+  }
+  
+  /**
+   * Get the prefix required for commands in a guild.
+   * 
+   * @param guild
+   *          The guild, or <code>null</code> for direct messages.
+   * @return The guild's own prefix, or the <code>CommandReader</code>'s if it
+   *         doesn't have one.
+   */
+  public String getPrefix(IGuild guild) {
+    if (guild == null) return prefix;
+    String guildPrefix = getGuildSettings(guild.getLongID()).getPrefix();
+    return (guildPrefix == null) ? prefix : guildPrefix;
+  }
+  
+  /**
+   * Get the settings a guild uses in place of the <code>CommandReader</code>'s.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @return The guild's settings, which are {@link GuildSettings#DEFAULT} if it
+   *         doesn't have any.
+   */
+  public GuildSettings getGuildSettings(long guildID) {
+    GuildSettings settings = guildStore.get(guildID);
+    return (settings == null) ? GuildSettings.DEFAULT : settings;
+  }
+  
+  /**
+   * Set the settings a guild uses in place of the <code>CommandReader</code>'s,
+   * and save them to the guild settings store.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param settings
+   *          The guild's settings, or <code>null</code> to go back to the
+   *          <code>CommandReader</code>'s.
+   */
+  public synchronized void setGuildSettings(long guildID, GuildSettings settings) {
+    if (settings != null && settings.isDefault()) settings = null;
+    GuildSettings old = guildStore.get(guildID);
+    guildStore.put(guildID, settings);
+    
+    String oldPrefix = (old == null) ? null : old.getPrefix();
+    String newPrefix = (settings == null) ? null : settings.getPrefix();
+    if (oldPrefix == null ? newPrefix != null : !oldPrefix.equals(newPrefix)) {
+      rebuildRecognizer();
+      if (helpCommand != null) helpCommand.repaginate();
+    }
+  }
+  
+  /**
+   * Set the prefix required for commands in a guild.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param newPrefix
+   *          The new prefix to use, or <code>null</code> to use the
+   *          <code>CommandReader</code>'s.
+   */
+  public synchronized void setGuildPrefix(long guildID, String newPrefix) {
+    setGuildSettings(guildID, getGuildSettings(guildID).withPrefix(newPrefix));
+  }
+  
+  /**
+   * Set whether commands in a guild that inherit the default mention setting
+   * require a mention.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param newSetting
+   *          The new setting to use, or <code>DEFAULT</code> to use the
+   *          <code>CommandReader</code>'s.
+   */
+  public synchronized void setGuildMentionSetting(long guildID, MentionSetting newSetting) {
+    setGuildSettings(guildID, getGuildSettings(guildID).withMentionSetting(newSetting));
+  }
+  
+  /**
+   * Set whether a command can be used in a guild.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param name
+   *          The command's name (not an alias).
+   * @param enabled
+   *          Whether the guild allows the command to be used.
+   */
+  public synchronized void setCommandEnabled(long guildID, String name, boolean enabled) {
+    setGuildSettings(guildID, getGuildSettings(guildID).withCommandEnabled(name, enabled));
+  }
+  
+  /**
+   * Get where the guild settings are kept.
+   * 
+   * @return The store.
+   */
+  public GuildSettingsStore getGuildSettingsStore() {
+    return guildStore;
+  }
+  
+  /**
+   * Set where the guild settings are kept. The settings already in the old
+   * store aren't copied over; the reader uses the new store's from then on.
+   * 
+   * @param store
+   *          The store, such as a {@link MappedGuildSettingsStore} to keep
+   *          settings between runs.
+   */
+  public synchronized void setGuildSettingsStore(GuildSettingsStore store) {
+    guildStore = store;
+    rebuildRecognizer();
+    if (helpCommand != null) helpCommand.repaginate();
   }
   
   /**
@@ -885,7 +1733,31 @@ public class CommandReader {
    * 
    * @return The client.
    */
-  public static IDiscordClient getClient() {
+  public IDiscordClient getDiscordClient() {
     return client;
   }
+  
+  /**
+   * Get the shard the <code>CommandReader</code> reads commands from.
+   * 
+   * @return The shard, or <code>null</code> if it reads commands from all of
+   *         the client's shards.
+   */
+  public IShard getShard() {
+    return shard;
+  }
+  
+  /**
+   * Get the {@link IDiscordClient} of the most recently created
+   * <code>CommandReader</code>.
+   * 
+   * @return The client.
+   * @deprecated A process may run more than one client. Use
+   *             {@link #getDiscordClient()}, or <code>getClient()</code> on
+   *             the message or event being handled.
+   */
+  @Deprecated
+  public static IDiscordClient getClient() {
+    return lastClient;
+  }
 }
@@ -0,0 +1,275 @@
+package net.nixill.commands.objects;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Recognizes commands in raw message text. The bot's mentions, the prefix, and
+ * every registered command name are matched in a single scan of the message,
+ * without building any strings, so that messages which aren't commands (most
+ * of them) are turned away after only a few character comparisons.
+ * <p>
+ * Before any of that, {@link #mayBeCommand} checks the first character that
+ * isn't whitespace against the characters a command can start with. This
+ * neither allocates nor looks past that character, and it's enough to reject
+ * nearly all ordinary chatter.
+ * <p>
+ * Command names are held in a case-insensitive trie. A recognizer never
+ * changes once built; the {@link CommandReader} builds a new one whenever its
+ * commands or prefix change, and swaps it in with a single write. Since the
+ * recognizer also keeps the registry it was built from, a message is read and
+ * run entirely against one consistent set of commands, without any locking.
+ * <p>
+ * Guilds may have prefixes of their own. The first character of each one is
+ * added to those {@link #mayBeCommand} lets through, so that a guild using the
+ * default prefix never has to look up its settings for ordinary chatter;
+ * {@link #recognize} is then given the prefix of the guild the message came
+ * from.
+ * 
+ * @author Nixill
+ */
+final class CommandRecognizer {
+  /** The number of characters allowed in command names. */
+  private static final int SYMBOLS = 38;
+  
+  /** The commands the recognizer was built from. */
+  final CommandRegistry    registry;
+  
+  /** The full mention of the bot, or <code>null</code> if not yet known. */
+  private final String mentionNick;
+  /** The short mention of the bot, or <code>null</code> if not yet known. */
+  private final String mentionPlain;
+  /** The prefix for commands in guilds that don't have their own. */
+  private final String prefix;
+  /** The root of the command name trie. */
+  private final Node   root;
+  /**
+   * The characters a command can start with, or <code>null</code> if it can
+   * start with anything (because a prefix is empty).
+   */
+  private final BitSet starts;
+  
+  /**
+   * A single node of the command name trie.
+   */
+  private static final class Node {
+    /** The nodes for each following character, created as needed. */
+    final Node[] next = new Node[SYMBOLS];
+    /** The command this name runs in guilds, if any. */
+    CommandPlan  guild;
+    /** The command this name runs in direct messages, if any. */
+    CommandPlan  dm;
+  }
+  
+  /**
+   * A recognized command.
+   */
+  static final class Match {
+    /** The command to run. */
+    final CommandPlan plan;
+    /** Whether the command was preceded by a mention of the bot. */
+    final boolean     preMention;
+    /** The index at which the command's parameters start. */
+    final int         argsStart;
+    /** The index after the last non-whitespace character of the message. */
+    final int         end;
+    
+    private Match(CommandPlan plan, boolean preMention, int argsStart, int end) {
+      this.plan = plan;
+      this.preMention = preMention;
+      this.argsStart = argsStart;
+      this.end = end;
+    }
+  }
+  
+  /**
+   * Builds a recognizer.
+   * 
+   * @param prefix
+   *          The prefix for commands in guilds that don't have their own.
+   * @param guildStarts
+   *          The characters the guilds' own prefixes start with, or
+   *          <code>null</code> if one might be empty.
+   * @param registry
+   *          The commands to recognize.
+   * @param mentionNick
+   *          The bot's mention in <code>&lt;@!id&gt;</code> form, or
+   *          <code>null</code> if not yet known.
+   * @param mentionPlain
+   *          The bot's mention in <code>&lt;@id&gt;</code> form, or
+   *          <code>null</code> if not yet known.
+   */
+  CommandRecognizer(String prefix, BitSet guildStarts, CommandRegistry registry, String mentionNick,
+      String mentionPlain) {
+    this.registry = registry;
+    this.prefix = prefix;
+    this.mentionNick = mentionNick;
+    this.mentionPlain = mentionPlain;
+    this.root = new Node();
+    
+    if (prefix.isEmpty() || guildStarts == null) {
+      starts = null;
+    } else {
+      starts = (BitSet) guildStarts.clone();
+      starts.set(prefix.charAt(0));
+      if (mentionNick != null) starts.set(mentionNick.charAt(0));
+      if (mentionPlain != null) starts.set(mentionPlain.charAt(0));
+    }
+    
+    for (Map.Entry<String, CommandPlan> ent : registry.serverCommands.entrySet()) {
+      nodeFor(ent.getKey()).guild = ent.getValue();
+    }
+    for (Map.Entry<String, CommandPlan> ent : registry.dmCommands.entrySet()) {
+      nodeFor(ent.getKey()).dm = ent.getValue();
+    }
+  }
+  
+  /**
+   * Gets the trie node for a name, creating it if necessary.
+   * 
+   * @param name
+   *          The lowercase name, already checked to be valid.
+   * @return The node.
+   */
+  private Node nodeFor(String name) {
+    Node node = root;
+    for (int i = 0; i < name.length(); i++) {
+      int sym = symbol(name.charAt(i));
+      if (node.next[sym] == null) node.next[sym] = new Node();
+      node = node.next[sym];
+    }
+    return node;
+  }
+  
+  /**
+   * Gets the trie index of a character, ignoring case.
+   * 
+   * @param c
+   *          The character.
+   * @return The index, or -1 if the character can't appear in command names.
+   */
+  private static int symbol(char c) {
+    if (c >= 'a' && c <= 'z') return c - 'a';
+    if (c >= 'A' && c <= 'Z') return c - 'A';
+    if (c >= '0' && c <= '9') return 26 + (c - '0');
+    if (c == '-') return 36;
+    if (c == '_') return 37;
+    return -1;
+  }
+  
+  /**
+   * Checks whether a command name can be recognized: that it isn't empty, and
+   * only uses letters, numbers, underscores, and hyphens.
+   * 
+   * @param name
+   *          The name.
+   * @return Whether the name is valid.
+   */
+  static boolean isValidName(String name) {
+    if (name.isEmpty()) return false;
+    for (int i = 0; i < name.length(); i++) {
+      if (symbol(name.charAt(i)) < 0) return false;
+    }
+    return true;
+  }
+  
+  /**
+   * Returns whether a piece of text appears at a position in a message.
+   * 
+   * @param text
+   *          The message.
+   * @param at
+   *          The position to look at.
+   * @param end
+   *          The end of the readable part of the message.
+   * @param what
+   *          The text to look for.
+   * @return Whether it was found.
+   */
+  private static boolean matchesAt(CharSequence text, int at, int end, String what) {
+    int len = what.length();
+    if (end - at < len) return false;
+    for (int i = 0; i < len; i++) {
+      if (text.charAt(at + i) != what.charAt(i)) return false;
+    }
+    return true;
+  }
+  
+  /**
+   * Quickly checks whether a message could be a command at all, by looking only
+   * at its first character that isn't whitespace. Messages this returns
+   * <code>false</code> for are definitely not commands; messages it returns
+   * <code>true</code> for still need to go through {@link #recognize}.
+   * 
+   * @param text
+   *          The message's content.
+   * @return Whether the message could be a command.
+   */
+  boolean mayBeCommand(CharSequence text) {
+    int len = text.length();
+    for (int i = 0; i < len; i++) {
+      char c = text.charAt(i);
+      if (c > ' ') return starts == null || starts.get(c);
+    }
+    return false;
+  }
+  
+  /**
+   * Recognizes the command in a message, if there is one. Leading and
+   * trailing whitespace is ignored, as is whitespace after a mention of the
+   * bot.
+   * 
+   * @param text
+   *          The message's content.
+   * @param isPrivate
+   *          Whether the message was sent in a direct message.
+   * @param guildPrefix
+   *          The prefix of the guild the message was sent in, or
+   *          <code>null</code> if it uses the default.
+   * @return The recognized command, or <code>null</code> if the message isn't
+   *         a command usable there.
+   */
+  Match recognize(CharSequence text, boolean isPrivate, String guildPrefix) {
+    String prefix = (guildPrefix == null) ? this.prefix : guildPrefix;
+    int pos = 0;
+    int end = text.length();
+    while (pos < end && text.charAt(pos) <= ' ')
+      pos++;
+    while (end > pos && text.charAt(end - 1) <= ' ')
+      end--;
+    
+    // See if the message starts with a pre-mention
+    boolean preMention = false;
+    if (mentionNick != null && matchesAt(text, pos, end, mentionNick)) {
+      preMention = true;
+      pos += mentionNick.length();
+    } else if (mentionPlain != null && matchesAt(text, pos, end, mentionPlain)) {
+      preMention = true;
+      pos += mentionPlain.length();
+    }
+    if (preMention) {
+      while (pos < end && text.charAt(pos) <= ' ')
+        pos++;
+    }
+    
+    // Then the prefix
+    if (!matchesAt(text, pos, end, prefix)) return null;
+    pos += prefix.length();
+    
+    // Then the name, which runs up to the first space
+    Node node = root;
+    while (pos < end) {
+      char c = text.charAt(pos);
+      if (c == ' ') break;
+      int sym = symbol(c);
+      if (sym < 0) return null;
+      node = node.next[sym];
+      if (node == null) return null;
+      pos++;
+    }
+    
+    CommandPlan plan = isPrivate ? node.dm : node.guild;
+    if (plan == null) return null;
+    return new Match(plan, preMention, (pos < end) ? pos + 1 : end, end);
+  }
+}
@@ -0,0 +1,610 @@
+package net.nixill.commands.objects;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import com.vdurmont.emoji.Emoji;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.annotations.Deserializer;
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.annotations.Serializer;
+import net.nixill.commands.exceptions.InvalidCommandMethodError;
+import net.nixill.commands.exceptions.InvalidDeserializationMethodError;
+import net.nixill.commands.exceptions.InvalidSerializationMethodError;
+import net.nixill.commands.exceptions.NameAlreadyTakenError;
+import net.nixill.commands.exceptions.SerializationException;
+import sx.blah.discord.api.internal.json.objects.EmbedObject;
+import sx.blah.discord.handle.obj.IEmoji;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * The commands, deserializers, and serializers a bot knows. A registry never
+ * changes once it's built, and doesn't depend on any client, so one registry
+ * can be shared by every {@link CommandReader} in the process - one for each
+ * bot, or for each shard of a bot - and each of them only needs its own
+ * settings and executor. Registration (and all the checking that goes with it)
+ * happens once, in a {@link Builder}.
+ * <p>
+ * A registry's commands share their cooldowns and bulkheads between all the
+ * readers using it.
+ * 
+ * @author Nixill
+ */
+public final class CommandRegistry {
+  /** The registered deserializers. */
+  final Map<Class<?>, ArgumentDeserializer<?>> deserializers;
+  
+  /** The registered serializers. */
+  final Map<Class<?>, Method>                  serializers;
+  /** The objects for the registered serializers. */
+  final Map<Class<?>, Object>                  serializerObjects;
+  
+  /** The commands registered to guilds. */
+  final Map<String, CommandPlan>               serverCommands;
+  
+  /** The commands registered to direct messages. */
+  final Map<String, CommandPlan>               dmCommands;
+  
+  /** The named bulkheads. */
+  final Map<String, Bulkhead>                  bulkheads;
+  
+  /** The default help system's entry for each command (by its main name). */
+  final SortedMap<String, CommandHelp>         help;
+  
+  /**
+   * Creates a registry from what's been added to a builder.
+   * 
+   * @param builder
+   *          The builder.
+   */
+  private CommandRegistry(Builder builder) {
+    deserializers = Collections.unmodifiableMap(new HashMap<>(builder.deserializers));
+    serializers = Collections.unmodifiableMap(new HashMap<>(builder.serializers));
+    serializerObjects = Collections.unmodifiableMap(new HashMap<>(builder.serializerObjects));
+    serverCommands = Collections.unmodifiableMap(new HashMap<>(builder.serverCommands));
+    dmCommands = Collections.unmodifiableMap(new HashMap<>(builder.dmCommands));
+    bulkheads = Collections.unmodifiableMap(new HashMap<>(builder.bulkheads));
+    help = Collections.unmodifiableSortedMap(new TreeMap<>(builder.help));
+  }
+  
+  /**
+   * Starts building a registry. The built-in deserializers and serializers are
+   * already registered.
+   * 
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder(null);
+  }
+  
+  /**
+   * Starts building a registry with everything in this one, to which more can
+   * be added. This registry doesn't change.
+   * 
+   * @return The builder.
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+  
+  /**
+   * Converts an object returned by a command method to a value that can be sent
+   * by the bot.
+   * 
+   * @param input
+   *          The object returned by the command method.
+   * @param msg
+   *          The message that triggered the command.
+   * @return The object sent to the user by the bot.
+   */
+  Object serialize(Object input, Class<?> type, IMessage msg) {
+    Method meth = serializers.get(type);
+    Object obj = serializerObjects.get(type);
+    if (meth != null) {
+      try {
+        if (meth.getParameterCount() == 2) {
+          return meth.invoke(obj, input, msg);
+        } else {
+          return meth.invoke(obj, input);
+        }
+      } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+        throw new SerializationException("The serialization method for type " + type.getSimpleName() + " failed.");
+      }
+    } else
+      return input.toString();
+  }
+  
+  /**
+   * Registers deserializers, serializers, and commands, and builds a
+   * {@link CommandRegistry} from them. The same checks are made as the
+   * methods are registered, so a method that isn't valid fails here, not when
+   * a command is used.
+   */
+  public static final class Builder {
+    /** The registered deserializers. */
+    private final HashMap<Class<?>, ArgumentDeserializer<?>> deserializers     = new HashMap<>();
+    /** The registered serializers. */
+    private final HashMap<Class<?>, Method>                  serializers       = new HashMap<>();
+    /** The objects for the registered serializers. */
+    private final HashMap<Class<?>, Object>                  serializerObjects = new HashMap<>();
+    /** The commands registered to guilds. */
+    private final HashMap<String, CommandPlan>               serverCommands    = new HashMap<>();
+    /** The commands registered to direct messages. */
+    private final HashMap<String, CommandPlan>               dmCommands        = new HashMap<>();
+    /** The named bulkheads. */
+    private final HashMap<String, Bulkhead>                  bulkheads         = new HashMap<>();
+    /** The default help system's entry for each command. */
+    private final TreeMap<String, CommandHelp>               help              = new TreeMap<>();
+    /** Commands to build again, with the deserializers registered by then. */
+    private final ArrayList<CommandPlan>                     rebind            = new ArrayList<>();
+    
+    /**
+     * Creates a builder.
+     * 
+     * @param from
+     *          The registry to start from, or <code>null</code> to start with
+     *          just the built-in methods.
+     */
+    private Builder(CommandRegistry from) {
+      if (from == null) {
+        register(DefaultMethods.class);
+      } else {
+        deserializers.putAll(from.deserializers);
+        serializers.putAll(from.serializers);
+        serializerObjects.putAll(from.serializerObjects);
+        serverCommands.putAll(from.serverCommands);
+        dmCommands.putAll(from.dmCommands);
+        bulkheads.putAll(from.bulkheads);
+        help.putAll(from.help);
+      }
+    }
+    
+    /**
+     * Register the deserializers, serializers, and bot commands in a class.
+     * <p>
+     * Using this method registers both static and instance methods. Instance
+     * methods will be fired from the supplied instance. To register static
+     * methods only, use {@link #register(Class)}.
+     * 
+     * @param object
+     *          The object from which methods should be registered.
+     * @return The builder itself, for chaining.
+     */
+    public Builder register(Object object) {
+      return register(object.getClass(), object);
+    }
+    
+    /**
+     * Register the <i>static</i> deserializers, serializers, and bot commands
+     * in a class.
+     * <p>
+     * Using this method registered only static methods. To register instance
+     * methods too, use {@link #register(Object)}.
+     * <p>
+     * You should not use both <code>register(Class)</code> and
+     * <code>register(Object)</code> on the same class, as it will cause a
+     * conflict in command names.
+     * 
+     * @param cls
+     *          The class from which static methods should be registered.
+     * @return The builder itself, for chaining.
+     */
+    public Builder register(Class<?> cls) {
+      return register(cls, null);
+    }
+    
+    /**
+     * Performs the actual registration of commands.
+     * 
+     * @param cls
+     *          A class to register commands from.
+     * @param object
+     *          The object of that class from which to fire instance methods.
+     *          <code>null</code> for static methods only.
+     * @return The builder itself, for chaining.
+     */
+    private Builder register(Class<?> cls, Object object) {
+      ArrayList<Method> meths = new ArrayList<>(Arrays.asList(cls.getDeclaredMethods()));
+      
+      for (Method meth : meths) {
+        Deserializer des = meth.getAnnotation(Deserializer.class);
+        Serializer ser = meth.getAnnotation(Serializer.class);
+        int mods = meth.getModifiers();
+        boolean isStatic = Modifier.isStatic(mods);
+        boolean isPublic = Modifier.isPublic(mods);
+        if (des != null && !(object == null && !isStatic) && isPublic) {
+          addDeserializer(meth, object);
+        }
+        if (ser != null && !(object == null && !isStatic) && isPublic) {
+          addSerializer(meth, object);
+        }
+      }
+      
+      for (Method meth : meths) {
+        BotCommand botc = meth.getAnnotation(BotCommand.class);
+        int mods = meth.getModifiers();
+        boolean isStatic = Modifier.isStatic(mods);
+        boolean isPublic = Modifier.isPublic(mods);
+        if (botc != null && !(object == null && !isStatic) && isPublic) {
+          addCommand(botc, meth, object);
+        }
+      }
+      
+      return this;
+    }
+    
+    /**
+     * Add a deserializer method.
+     * 
+     * @param meth
+     *          The method to add.
+     * @param obj
+     *          The object to fire it from.
+     */
+    private void addDeserializer(Method meth, Object obj) {
+      Parameter[] params = meth.getParameters();
+      int parCount = params.length;
+      if (parCount < 2) throw new InvalidDeserializationMethodError(
+          "Deserialization methods must have at least two parameters. The first two must be a TokenCursor (or an "
+              + "ArrayList) and an int.");
+      if (!params[0].getType().equals(TokenCursor.class) && !params[0].getType().equals(ArrayList.class))
+        throw new InvalidDeserializationMethodError(
+            "Deserialization methods must have at least two parameters. The first two must be a TokenCursor (or an "
+                + "ArrayList) and an int.");
+      if (!params[1].getType().equals(int.class)) throw new InvalidDeserializationMethodError(
+          "Deserialization methods must have at least two parameters. The first two must be a TokenCursor (or an "
+              + "ArrayList) and an int.");
+      for (int i = 2; i < meth.getParameterCount(); i++) {
+        Class<?> cls = params[i].getType();
+        if (cls != IMessage.class && cls != Restrict.class && cls != ParameterSpec.class && cls != Boolean.class
+            && cls != Boolean.TYPE) { throw new InvalidDeserializationMethodError(
+                "Deserialization methods can only have an IMessage, a Restrict annotation, a ParameterSpec, or a "
+                    + "boolean as additional arguments."); }
+      }
+      Class<?> ret = meth.getReturnType();
+      if (ret == Void.TYPE) throw new InvalidDeserializationMethodError("Deserialization methods can't return void.");
+      deserializers.put(ret, Deserializers.forMethod(meth, obj));
+    }
+    
+    /**
+     * Register a deserializer for a type. This replaces any deserializer already
+     * registered for the type, but only for commands registered afterwards.
+     * 
+     * @param type
+     *          The type the deserializer produces.
+     * @param deserializer
+     *          The deserializer.
+     * @return The builder itself, for chaining.
+     */
+    public <T> Builder registerDeserializer(Class<T> type, ArgumentDeserializer<? extends T> deserializer) {
+      deserializers.put(type, deserializer);
+      return this;
+    }
+    
+    /**
+     * Add a serializer method.
+     * 
+     * @param meth
+     *          The method to add.
+     * @param obj
+     *          The object to fire it from.
+     */
+    private void addSerializer(Method meth, Object obj) {
+      Class<?>[] parTypes = meth.getParameterTypes();
+      int parCount = parTypes.length;
+      if (parCount != 1 && parCount != 2) throw new InvalidSerializationMethodError(
+          "Serialization methods must have exactly one or two parameters - the type you wish to return from command "
+              + "methods, and optionally an IMessage.");
+      Class<?> in = parTypes[0];
+      Class<?> ret = meth.getReturnType();
+      if (!(ret.isAssignableFrom(String.class) || ret.isAssignableFrom(EmbedObject.class)
+          || ret.isAssignableFrom(Emoji.class)
+          || ret.isAssignableFrom(IEmoji.class))) { throw new InvalidDeserializationMethodError(
+              "Serialization methods must return either a String, EmbedObject, Emoji, IEmoji, or void."); }
+      if (parCount == 2 && !parTypes[1].equals(IMessage.class)) throw new InvalidSerializationMethodError(
+          "Serialization methods with two parameters must take the command return type and IMessage, in that order.");
+      serializers.put(in, meth);
+      if (Modifier.isStatic(meth.getModifiers()))
+        serializerObjects.put(in, null);
+      else
+        serializerObjects.put(in, obj);
+    }
+    
+    /**
+     * Add a command method.
+     * 
+     * @param ann
+     *          The method's annotation.
+     * @param meth
+     *          The method itself.
+     * @param obj
+     *          The object to fire it from.
+     */
+    private void addCommand(BotCommand ann, Method meth, Object obj) {
+      // Work out everything needed to run the command now, so that doesn't
+      // happen on every message. This also checks the method is valid.
+      if (Modifier.isStatic(meth.getModifiers())) obj = null;
+      Bulkhead bulkhead = bulkheadFor(ann);
+      CommandPlan plan = new CommandPlan(ann, meth, obj, deserializers, bulkhead);
+      
+      // Make sure the main name isn't already taken.
+      assertNameAvailable(ann.name(), ann.listen());
+      
+      // Only now that the command is definitely being added, set up its
+      // bulkhead.
+      if (!ann.bulkhead().isEmpty()) {
+        bulkheads.put(ann.bulkhead(), bulkhead);
+        if (ann.maxConcurrent() > 0) bulkhead.setLimits(ann.maxConcurrent(), ann.maxQueued());
+      }
+      
+      // Add to list(s). It's possible to have different methods handle DM vs
+      // Guild commands.
+      String[] names = (ann.name() + " " + ann.names()).split(" ");
+      ArrayList<String> allowedAliases = new ArrayList<>();
+      for (String name : names) {
+        if (addName(plan, name, ann.listen())) {
+          allowedAliases.add(name.toLowerCase());
+        }
+      }
+      
+      // Describe the command for the default help system.
+      addHelp(ann, allowedAliases);
+    }
+    
+    /**
+     * Adds a command to the default help system.
+     * 
+     * @param cmd
+     *          The command's annotation.
+     * @param aliases
+     *          The names the command was actually added by.
+     */
+    private void addHelp(BotCommand cmd, ArrayList<String> aliases) {
+      CommandHelp cHelp = new CommandHelp(cmd.name(), aliases, cmd.listen(), cmd.usage(), cmd.description(),
+          cmd.reply(), cmd.mentions(), cmd.requiredPerm());
+      help.put(helpKey(cmd), cHelp);
+    }
+    
+    /**
+     * Gets the key of a command's entry in the default help system.
+     * 
+     * @param cmd
+     *          The command's annotation.
+     * @return The key.
+     */
+    private static String helpKey(BotCommand cmd) {
+      switch (cmd.listen()) {
+        case GUILD:
+          return cmd.name() + " server";
+        case DM:
+          return cmd.name() + " dm";
+        default:
+          return cmd.name();
+      }
+    }
+    
+    /**
+     * Unregister the bot commands and serializers that were registered from an
+     * object with {@link #register(Object)}: those fired from the object, and
+     * the static ones in its class. Its deserializers stay registered, since
+     * commands may already have been built with them; use
+     * {@link #unregister(ClassLoader)} to remove those too.
+     * 
+     * @param object
+     *          The object whose methods should be unregistered.
+     * @return The builder itself, for chaining.
+     */
+    public Builder unregister(Object object) {
+      Class<?> cls = object.getClass();
+      removeCommands(plan -> plan.meth.getDeclaringClass() == cls && (plan.obj == null || plan.obj == object));
+      removeSerializers(type -> serializers.get(type).getDeclaringClass() == cls
+          && (serializerObjects.get(type) == null || serializerObjects.get(type) == object));
+      return this;
+    }
+    
+    /**
+     * Unregister all the bot commands and serializers declared in a class,
+     * whether they're static or were registered from an instance. Its
+     * deserializers stay registered, since commands may already have been
+     * built with them; use {@link #unregister(ClassLoader)} to remove those
+     * too.
+     * 
+     * @param cls
+     *          The class whose methods should be unregistered.
+     * @return The builder itself, for chaining.
+     */
+    public Builder unregister(Class<?> cls) {
+      removeCommands(plan -> plan.meth.getDeclaringClass() == cls);
+      removeSerializers(type -> serializers.get(type).getDeclaringClass() == cls);
+      return this;
+    }
+    
+    /**
+     * Unregister everything loaded by a class loader (such as a plugin's):
+     * the bot commands, serializers, and deserializers declared in its
+     * classes, and those for its types. Unlike the other ways of
+     * unregistering, this removes deserializers too, so that nothing left in
+     * the registry runs the loader's code once it's closed.
+     * <p>
+     * Other commands that were built with the removed deserializers are built
+     * again when the registry is built, with the deserializers registered by
+     * then. Their cooldowns start over.
+     * 
+     * @param loader
+     *          The class loader whose classes should be unregistered.
+     * @return The builder itself, for chaining.
+     */
+    public Builder unregister(ClassLoader loader) {
+      removeCommands(plan -> plan.meth.getDeclaringClass().getClassLoader() == loader);
+      removeSerializers(type -> type.getClassLoader() == loader
+          || serializers.get(type).getDeclaringClass().getClassLoader() == loader);
+      deserializers.entrySet().removeIf(
+          ent -> ent.getKey().getClassLoader() == loader || Deserializers.isLoadedBy(ent.getValue(), loader));
+      
+      // Whatever's left that still uses the loader's code is built again later.
+      Set<CommandPlan> stale = removeCommands(plan -> plan.isLoadedBy(loader));
+      for (CommandPlan plan : stale) {
+        if (!rebind.contains(plan)) rebind.add(plan);
+      }
+      return this;
+    }
+    
+    /**
+     * Removes commands, by all their names, along with their help entries.
+     * Commands waiting to be built again are removed too.
+     * 
+     * @param which
+     *          Which commands to remove.
+     * @return The commands removed from the lists.
+     */
+    private Set<CommandPlan> removeCommands(Predicate<CommandPlan> which) {
+      Set<CommandPlan> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (CommandPlan plan : serverCommands.values())
+        if (which.test(plan)) removed.add(plan);
+      for (CommandPlan plan : dmCommands.values())
+        if (which.test(plan)) removed.add(plan);
+      
+      serverCommands.values().removeAll(removed);
+      dmCommands.values().removeAll(removed);
+      for (CommandPlan plan : removed)
+        help.remove(helpKey(plan.cmd));
+      rebind.removeIf(which);
+      return removed;
+    }
+    
+    /**
+     * Removes serializers.
+     * 
+     * @param which
+     *          The types whose serializers should be removed.
+     */
+    private void removeSerializers(Predicate<Class<?>> which) {
+      Set<Class<?>> removed = new HashSet<>();
+      for (Class<?> type : serializers.keySet())
+        if (which.test(type)) removed.add(type);
+      
+      serializers.keySet().removeAll(removed);
+      serializerObjects.keySet().removeAll(removed);
+    }
+    
+    /**
+     * Finds the bulkhead a command should be limited by. Named bulkheads are
+     * looked up, or created (but not stored) if they don't exist yet.
+     * 
+     * @param ann
+     *          The command's annotation.
+     * @return The bulkhead, or <code>null</code> if the command isn't limited.
+     * @throws InvalidCommandMethodError
+     *           If the limits are negative, or conflict with the limits already
+     *           set for the named bulkhead.
+     */
+    private Bulkhead bulkheadFor(BotCommand ann) {
+      int max = ann.maxConcurrent();
+      int queued = ann.maxQueued();
+      if (max < 0 || queued < 0) throw new InvalidCommandMethodError(
+          "The command " + ann.name() + " can't have a negative maxConcurrent or maxQueued.");
+      
+      String name = ann.bulkhead();
+      if (name.isEmpty()) {
+        if (max == 0) return null;
+        return new Bulkhead(ann.name().toLowerCase(), max, queued);
+      }
+      
+      Bulkhead bulkhead = bulkheads.get(name);
+      if (bulkhead == null) return new Bulkhead(name, max, queued);
+      if (max > 0 && bulkhead.getLimit() > 0
+          && (bulkhead.getLimit() != max || bulkhead.getQueueLimit() != queued)) throw new InvalidCommandMethodError(
+              "The command " + ann.name() + " gives different limits for the bulkhead " + name
+                  + " than another command in it.");
+      return bulkhead;
+    }
+    
+    /**
+     * Asserts that a command name is available and errors otherwise.
+     * 
+     * @param name
+     *          The name to check for.
+     * @param where
+     *          Which list to look in.
+     * @throws InvalidCommandMethodError
+     *           If the name is invalid.
+     * @throws NameAlreadyTakenError
+     *           If the name is already taken.
+     */
+    private void assertNameAvailable(String name, BotCommand.CommandSource where) {
+      name = name.toLowerCase();
+      if (!CommandRecognizer.isValidName(name)) throw new InvalidCommandMethodError("The command name " + name
+          + " is not valid. Names can only contain numbers, letters, underscores, and hyphens.");
+      if (where != BotCommand.CommandSource.DM) {
+        if (serverCommands.containsKey(name))
+          throw new NameAlreadyTakenError("The command name " + name + " is already taken by command "
+              + serverCommands.get(name).cmd.name().toLowerCase());
+      }
+      if (where != BotCommand.CommandSource.GUILD) {
+        if (dmCommands.containsKey(name))
+          throw new NameAlreadyTakenError("The command name " + name + " is already taken by command "
+              + dmCommands.get(name).cmd.name().toLowerCase());
+      }
+    }
+    
+    /**
+     * Adds a command to the lists.
+     * 
+     * @param plan
+     *          The compiled command to add.
+     * @param name
+     *          The name to add it under.
+     * @param where
+     *          Which list to add it to.
+     * @return Whether or not the command was actually added by that name.
+     */
+    private boolean addName(CommandPlan plan, String name, BotCommand.CommandSource where) {
+      name = name.toLowerCase();
+      if (!CommandRecognizer.isValidName(name)) return false;
+      if (where != BotCommand.CommandSource.DM) {
+        if (serverCommands.containsKey(name)) return false;
+      }
+      if (where != BotCommand.CommandSource.GUILD) {
+        if (dmCommands.containsKey(name)) return false;
+        dmCommands.put(name, plan);
+      }
+      if (where != BotCommand.CommandSource.DM) {
+        serverCommands.put(name, plan);
+      }
+      return true;
+    }
+    
+    /**
+     * Builds the registry. The builder can go on being used afterwards, without
+     * affecting the registry.
+     * 
+     * @return The registry.
+     * @throws InvalidCommandMethodError
+     *           If a command being built again (see
+     *           {@link #unregister(ClassLoader)}) no longer has a deserializer
+     *           for one of its parameters.
+     * @throws NameAlreadyTakenError
+     *           If such a command's name has been taken in the meantime.
+     */
+    public CommandRegistry build() {
+      for (CommandPlan plan : rebind)
+        addCommand(plan.cmd, plan.meth, plan.obj);
+      rebind.clear();
+      return new CommandRegistry(this);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package net.nixill.commands.objects;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches a single run of a command method, and gives up on it if it runs for
+ * too long. When time runs out, the thread running the command is interrupted,
+ * and the timeout reply is handed to the reader's executor to be sent, since
+ * finding the reply channel may have to wait on Discord and the timer is
+ * shared by every command. Java can't stop a thread that doesn't want to
+ * stop, so the command keeps its thread until it notices the interrupt (or
+ * finishes anyway), but whatever it returns is thrown away.
+ * <p>
+ * Until then, the command also keeps its places in its guild's share of the
+ * executor and in its bulkhead. That's on purpose: giving them up early would
+ * let commands that ignore interrupts pile up beyond those limits.
+ * <p>
+ * Whichever of the command and the timer gets there first wins, decided by a
+ * single compare-and-set, so a command is never both answered and timed out.
+ * 
+ * @author Nixill
+ */
+final class CommandTimeout implements Runnable {
+  /** The state of a command that's still running. */
+  private static final int RUNNING     = 0;
+  /** The state of a command that finished in time. */
+  private static final int FINISHED    = 1;
+  /** The state of a command that ran out of time. */
+  private static final int TIMED_OUT   = 2;
+  /** The state of a command that ran out of time, once it's been interrupted. */
+  private static final int INTERRUPTED = 3;
+  
+  /** The thread all timeouts are scheduled on. */
+  private static final ScheduledExecutorService timer;
+  
+  static {
+    ScheduledThreadPoolExecutor exec = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread th = new Thread(r, "command-timeouts");
+      th.setDaemon(true);
+      return th;
+    });
+    // Almost every timeout is cancelled, so don't let them pile up.
+    exec.setRemoveOnCancelPolicy(true);
+    timer = exec;
+  }
+  
+  /** The state of the command. */
+  private final AtomicInteger         state = new AtomicInteger(RUNNING);
+  /** The thread running the command. */
+  private final Thread                thread;
+  /** The channel to send the timeout reply to. */
+  private final ReplyChannel          channel;
+  /** The timeout reply. */
+  private final String                reply;
+  /** The executor the timeout reply is sent on. */
+  private final Executor              replies;
+  /** Where timeouts are counted. */
+  private final ExecutorMetrics       metrics;
+  /** The scheduled timeout. */
+  private volatile ScheduledFuture<?> future;
+  
+  private CommandTimeout(ReplyChannel channel, String reply, Executor replies, ExecutorMetrics metrics) {
+    this.thread = Thread.currentThread();
+    this.channel = channel;
+    this.reply = reply;
+    this.replies = replies;
+    this.metrics = metrics;
+  }
+  
+  /**
+   * Starts timing a command that's about to run on the current thread.
+   * 
+   * @param millis
+   *          How long the command may run, in milliseconds.
+   * @param channel
+   *          The channel to send the timeout reply to.
+   * @param reply
+   *          The timeout reply, or an empty string or <code>null</code> for
+   *          none.
+   * @param replies
+   *          The executor to send the timeout reply on.
+   * @param metrics
+   *          Where to count the timeout, if it happens.
+   * @return The timeout, which must be {@link #finish() finished} once the
+   *         command returns.
+   */
+  static CommandTimeout start(long millis, ReplyChannel channel, String reply, Executor replies,
+      ExecutorMetrics metrics) {
+    CommandTimeout timeout = new CommandTimeout(channel, reply, replies, metrics);
+    timeout.future = timer.schedule(timeout, millis, TimeUnit.MILLISECONDS);
+    return timeout;
+  }
+  
+  /**
+   * Runs out the command's time. Called by the timer.
+   */
+  @Override
+  public void run() {
+    if (!state.compareAndSet(RUNNING, TIMED_OUT)) return;
+    metrics.timedOut();
+    thread.interrupt();
+    state.set(INTERRUPTED);
+    if (reply == null || reply.isEmpty()) return;
+    try {
+      replies.execute(() -> MessageSender.send(channel.get(), reply));
+    } catch (RejectedExecutionException ex) {
+      // The executor has been shut down, so the bot is going away anyway.
+    }
+  }
+  
+  /**
+   * Stops timing the command, once it has returned or thrown. If it ran out of
+   * time, this also clears the interrupt it was sent, so that it can't leak
+   * into whatever the thread runs next.
+   * 
+   * @return <code>true</code> if the command finished in time and its result
+   *         should be used, or <code>false</code> if it timed out and its
+   *         result should be thrown away.
+   */
+  boolean finish() {
+    if (state.compareAndSet(RUNNING, FINISHED)) {
+      future.cancel(false);
+      return true;
+    }
+    // The timer may not have interrupted us quite yet.
+    while (state.get() != INTERRUPTED)
+      Thread.yield();
+    Thread.interrupted();
+    return false;
+  }
+}
@@ -0,0 +1,246 @@
+package net.nixill.commands.objects;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of when a command's cooldown ends for each user (or channel, or
+ * guild). IDs map straight to times in an open-addressing table of primitive
+ * longs, so checking a cooldown doesn't box anything, and both the lookup and
+ * the update are done with compare-and-set rather than a lock.
+ * <p>
+ * Entries are never removed one at a time. Instead, when the table gets too
+ * full, one thread moves the entries that haven't expired yet into a new table
+ * (bigger or smaller as needed) and swaps it in. Each slot of the old table is
+ * frozen as it's moved, so no use can be recorded in the old table after it's
+ * been copied; anyone who finds a frozen slot waits for the new table and
+ * tries again there.
+ * 
+ * @author Nixill
+ */
+final class CooldownTable {
+  /** The size of a new table. */
+  private static final int  MIN_CAPACITY = 64;
+  /** The key of an empty slot. */
+  private static final long EMPTY        = 0L;
+  /** The key of an empty slot that has been frozen. */
+  private static final long MOVED        = -1L;
+  /** The end time of a slot that has been frozen. */
+  private static final long MOVED_END    = -1L;
+  /** The result of {@link #find} when the table is full. */
+  private static final int  FULL         = -1;
+  /** The result of {@link #find} when the table is being replaced. */
+  private static final int  FROZEN       = -2;
+  /** Subtracted from {@link System#nanoTime()} so that times are positive. */
+  private static final long EPOCH        = System.nanoTime() - 1;
+  
+  /**
+   * A single generation of the table.
+   */
+  private static final class Table {
+    /** The keys, or {@link #EMPTY}. */
+    final AtomicLongArray keys;
+    /** When each key's cooldown ends, or 0 if it hasn't been set. */
+    final AtomicLongArray ends;
+    /** The number of slots in use. */
+    final AtomicInteger   used = new AtomicInteger();
+    /** The slot index mask (the capacity minus one). */
+    final int             mask;
+    
+    Table(int capacity) {
+      keys = new AtomicLongArray(capacity);
+      ends = new AtomicLongArray(capacity);
+      mask = capacity - 1;
+    }
+  }
+  
+  /** The length of the cooldown, in nanoseconds. */
+  private final long          length;
+  /** The current table. */
+  private volatile Table      table      = new Table(MIN_CAPACITY);
+  /** Whether a thread is rebuilding the table. */
+  private final AtomicBoolean rebuilding = new AtomicBoolean();
+  
+  /**
+   * Creates a cooldown table.
+   * 
+   * @param lengthMillis
+   *          The length of the cooldown, in milliseconds.
+   */
+  CooldownTable(long lengthMillis) {
+    this.length = lengthMillis * 1000000L;
+  }
+  
+  /**
+   * Get the current time, as used for cooldowns.
+   * 
+   * @return The time, in nanoseconds (always positive).
+   */
+  static long now() {
+    return System.nanoTime() - EPOCH;
+  }
+  
+  /**
+   * Turns an ID into a key that isn't one of the reserved values.
+   * 
+   * @param id
+   *          The ID.
+   * @return The key.
+   */
+  private static long keyOf(long id) {
+    if (id == EMPTY) return Long.MIN_VALUE;
+    if (id == MOVED) return Long.MIN_VALUE + 1;
+    return id;
+  }
+  
+  /**
+   * Mixes the bits of a key, so that IDs that share their low bits (as
+   * Discord's do) spread across the table.
+   * 
+   * @param key
+   *          The key.
+   * @return The hash.
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+  
+  /**
+   * Starts the cooldown for an ID, unless it's already cooling down.
+   * 
+   * @param id
+   *          The ID.
+   * @param now
+   *          The current time, from {@link #now()}.
+   * @return 0 if the cooldown was started (and the command may run), or the
+   *         number of nanoseconds left on the existing cooldown.
+   */
+  long tryAcquire(long id, long now) {
+    long key = keyOf(id);
+    retry: for (;;) {
+      Table tab = table;
+      int slot = find(tab, key);
+      if (slot == FULL) {
+        rebuild(tab, now);
+        if (table == tab) Thread.yield();
+        continue;
+      }
+      if (slot == FROZEN) {
+        Thread.yield();
+        continue;
+      }
+      
+      for (;;) {
+        long end = tab.ends.get(slot);
+        if (end == MOVED_END) {
+          Thread.yield();
+          continue retry;
+        }
+        if (end > now) return end - now;
+        if (tab.ends.compareAndSet(slot, end, now + length)) break;
+      }
+      if (tab.used.get() > (tab.mask + 1) / 2) rebuild(tab, now);
+      return 0;
+    }
+  }
+  
+  /**
+   * Takes back a cooldown started by {@link #tryAcquire}, for a command that
+   * was turned away after all. Nothing happens if the cooldown has been
+   * started again since (once it ran out).
+   * 
+   * @param id
+   *          The ID.
+   * @param now
+   *          The time that was given to {@link #tryAcquire}.
+   */
+  void cancel(long id, long now) {
+    long key = keyOf(id);
+    for (;;) {
+      Table tab = table;
+      int slot = find(tab, key);
+      if (slot == FULL) return;
+      if (slot != FROZEN) {
+        if (tab.ends.compareAndSet(slot, now + length, 0L)) return;
+        if (tab.ends.get(slot) != MOVED_END) return;
+      }
+      // The table is being replaced; try again in the new one.
+      Thread.yield();
+    }
+  }
+  
+  /**
+   * Finds the slot for a key, claiming an empty one if it isn't there yet.
+   * 
+   * @param tab
+   *          The table to look in.
+   * @param key
+   *          The key.
+   * @return The slot, {@link #FULL} if the table is full, or {@link #FROZEN}
+   *         if the table is being replaced.
+   */
+  private static int find(Table tab, long key) {
+    int mask = tab.mask;
+    int slot = hash(key) & mask;
+    for (int probes = 0; probes <= mask; probes++) {
+      long here = tab.keys.get(slot);
+      if (here == EMPTY) {
+        if (tab.keys.compareAndSet(slot, EMPTY, key)) {
+          tab.used.incrementAndGet();
+          return slot;
+        }
+        // Someone else got to it first; look at it again.
+        here = tab.keys.get(slot);
+      }
+      if (here == key) return slot;
+      if (here == MOVED) return FROZEN;
+      slot = (slot + 1) & mask;
+    }
+    return FULL;
+  }
+  
+  /**
+   * Moves the entries that are still cooling down into a new table and swaps
+   * it in. Only one thread rebuilds at a time.
+   * 
+   * @param old
+   *          The table that needs rebuilding.
+   * @param now
+   *          The current time.
+   */
+  private void rebuild(Table old, long now) {
+    if (!rebuilding.compareAndSet(false, true)) return;
+    try {
+      if (table != old) return;
+      int live = 0;
+      for (int i = 0; i <= old.mask; i++) {
+        if (old.keys.get(i) != EMPTY && old.ends.get(i) > now) live++;
+      }
+      int capacity = MIN_CAPACITY;
+      while (capacity < live * 4)
+        capacity <<= 1;
+      
+      Table fresh = new Table(capacity);
+      for (int i = 0; i <= old.mask; i++) {
+        // Freeze the slot, whether it's empty or not.
+        long key = old.keys.get(i);
+        while (key == EMPTY && !old.keys.compareAndSet(i, EMPTY, MOVED))
+          key = old.keys.get(i);
+        if (key == EMPTY) continue;
+        long end = old.ends.getAndSet(i, MOVED_END);
+        
+        if (end > now) {
+          int slot = find(fresh, key);
+          if (slot >= 0) fresh.ends.set(slot, end);
+        }
+      }
+      table = fresh;
+    } finally {
+      rebuilding.set(false);
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package net.nixill.commands.objects;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -14,6 +13,7 @@ import net.nixill.commands.annotations.Restrict;
 import net.nixill.commands.exceptions.DeserializationException;
 import net.nixill.commands.exceptions.InvalidRestrictionError;
 import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.handle.obj.IRole;
 import sx.blah.discord.handle.obj.IUser;
 
@@ -77,27 +77,22 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized String.
    */
   @Deserializer
-  public static String deserializeString(ArrayList<String> values, int howMany, Restrict rest) {
-    String out = "";
-    int max = Math.min(values.size(), howMany);
-    for (int i = 0; i < max; i++) {
-      if (i != 0) out += " ";
-      out += values.remove(0);
-    }
+  public static String deserializeString(TokenCursor values, int howMany, Restrict rest) {
+    String out = values.take(howMany);
     
     if (rest != null) {
-      while (!out.matches(rest.value()) && !values.isEmpty()) {
-        out += " " + values.remove(0);
+      StringBuilder text = new StringBuilder(out);
+      if (matchWords(PatternCache.SHARED.get(rest.value()), text, values) == null) {
+        throw deserializationRestriction(text, rest);
       }
-      if (!out.matches(rest.value())) { throw deserializationRestriction(out, rest); }
+      out = text.toString();
     }
     
     return out;
@@ -109,26 +104,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized double.
    */
   @Deserializer
-  public static double deserializePDouble(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      double out = Double.parseDouble(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static double deserializePDouble(TokenCursor values, int howMany, Restrict rest) {
+    return toDouble(values.next(), rest, NumericCondition.forDouble(rest));
   }
   
   /**
@@ -140,18 +124,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized double array.
    */
   @Deserializer
-  public static double[] deserializePADouble(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static double[] deserializePADouble(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     double[] out = new double[max];
+    NumericCondition cond = NumericCondition.forDouble(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePDouble(values, 1, rest);
+      out[i] = toDouble(values.next(), rest, cond);
     }
     return out;
   }
@@ -164,15 +148,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Double.
    */
   @Deserializer
-  public static Double deserializeDouble(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Double deserializeDouble(TokenCursor values, int howMany, Restrict rest) {
     return deserializePDouble(values, howMany, rest);
   }
   
@@ -182,26 +165,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized float.
    */
   @Deserializer
-  public static float deserializePFloat(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      float out = Float.parseFloat(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static float deserializePFloat(TokenCursor values, int howMany, Restrict rest) {
+    return toFloat(values.next(), rest, NumericCondition.forDouble(rest));
   }
   
   /**
@@ -213,18 +185,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized float array.
    */
   @Deserializer
-  public static float[] deserializePAFloat(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static float[] deserializePAFloat(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     float[] out = new float[max];
+    NumericCondition cond = NumericCondition.forDouble(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePFloat(values, 1, rest);
+      out[i] = toFloat(values.next(), rest, cond);
     }
     return out;
   }
@@ -237,15 +209,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Float.
    */
   @Deserializer
-  public static Float deserializeFloat(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Float deserializeFloat(TokenCursor values, int howMany, Restrict rest) {
     return deserializePFloat(values, howMany, rest);
   }
   
@@ -255,26 +226,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized byte.
    */
   @Deserializer
-  public static byte deserializePByte(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      byte out = Byte.parseByte(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static byte deserializePByte(TokenCursor values, int howMany, Restrict rest) {
+    return toByte(values.next(), rest, NumericCondition.forLong(rest));
   }
   
   /**
@@ -286,18 +246,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized byte array.
    */
   @Deserializer
-  public static byte[] deserializePAByte(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static byte[] deserializePAByte(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     byte[] out = new byte[max];
+    NumericCondition cond = NumericCondition.forLong(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePByte(values, 1, rest);
+      out[i] = toByte(values.next(), rest, cond);
     }
     return out;
   }
@@ -310,15 +270,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Byte.
    */
   @Deserializer
-  public static Byte deserializeByte(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Byte deserializeByte(TokenCursor values, int howMany, Restrict rest) {
     return deserializePByte(values, howMany, rest);
   }
   
@@ -328,26 +287,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized short.
    */
   @Deserializer
-  public static short deserializePShort(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      short out = Short.parseShort(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static short deserializePShort(TokenCursor values, int howMany, Restrict rest) {
+    return toShort(values.next(), rest, NumericCondition.forLong(rest));
   }
   
   /**
@@ -359,18 +307,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized short array.
    */
   @Deserializer
-  public static short[] deserializePAShort(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static short[] deserializePAShort(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     short[] out = new short[max];
+    NumericCondition cond = NumericCondition.forLong(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePShort(values, 1, rest);
+      out[i] = toShort(values.next(), rest, cond);
     }
     return out;
   }
@@ -383,15 +331,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Short.
    */
   @Deserializer
-  public static Short deserializeShort(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Short deserializeShort(TokenCursor values, int howMany, Restrict rest) {
     return deserializePShort(values, howMany, rest);
   }
   
@@ -401,26 +348,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized int.
    */
   @Deserializer
-  public static int deserializePInteger(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      int out = Integer.parseInt(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static int deserializePInteger(TokenCursor values, int howMany, Restrict rest) {
+    return toInteger(values.next(), rest, NumericCondition.forLong(rest));
   }
   
   /**
@@ -432,18 +368,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized int array.
    */
   @Deserializer
-  public static int[] deserializePAInteger(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static int[] deserializePAInteger(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     int[] out = new int[max];
+    NumericCondition cond = NumericCondition.forLong(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePInteger(values, 1, rest);
+      out[i] = toInteger(values.next(), rest, cond);
     }
     return out;
   }
@@ -456,15 +392,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Double.
    */
   @Deserializer
-  public static Integer deserializeInteger(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Integer deserializeInteger(TokenCursor values, int howMany, Restrict rest) {
     return deserializePInteger(values, howMany, rest);
   }
   
@@ -474,26 +409,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized long.
    */
   @Deserializer
-  public static long deserializePLong(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
-    try {
-      Long out = Long.parseLong(value);
-      if (rest == null || meetsCondition(rest.value(), out)) {
-        return out;
-      } else {
-        throw deserializationRestriction(value, rest);
-      }
-    } catch (NumberFormatException ex) {
-      throw new DeserializationException("Can't convert " + value + " to a number.");
-    }
+  public static long deserializePLong(TokenCursor values, int howMany, Restrict rest) {
+    return toLong(values.next(), rest, NumericCondition.forLong(rest));
   }
   
   /**
@@ -505,18 +429,18 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized long array.
    */
   @Deserializer
-  public static long[] deserializePALong(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
+  public static long[] deserializePALong(TokenCursor values, int howMany, Restrict rest) {
+    int max = Math.min(values.remaining(), howMany);
     long[] out = new long[max];
+    NumericCondition cond = NumericCondition.forLong(rest);
     for (int i = 0; i < max; i++) {
-      out[i] = deserializePLong(values, 1, rest);
+      out[i] = toLong(values.next(), rest, cond);
     }
     return out;
   }
@@ -529,15 +453,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Double.
    */
   @Deserializer
-  public static Long deserializeLong(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Long deserializeLong(TokenCursor values, int howMany, Restrict rest) {
     return deserializePLong(values, howMany, rest);
   }
   
@@ -551,16 +474,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized boolean.
    */
   @Deserializer
-  public static boolean deserializePBoolean(ArrayList<String> values, int howMany) {
-    String value = values.remove(0);
+  public static boolean deserializePBoolean(TokenCursor values, int howMany) {
+    String value = values.next();
     String valueLC = value.toLowerCase();
     Boolean bool = boolMap.get(valueLC);
     if (bool == null) throw new DeserializationException("Can't convert " + value + " to a boolean.");
@@ -673,15 +595,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized boolean array.
    */
   @Deserializer
-  public static boolean[] deserializePABoolean(ArrayList<String> values, int howMany) {
-    int max = Math.min(values.size(), howMany);
+  public static boolean[] deserializePABoolean(TokenCursor values, int howMany) {
+    int max = Math.min(values.remaining(), howMany);
     boolean[] out = new boolean[max];
     for (int i = 0; i < max; i++) {
       out[i] = deserializePBoolean(values, 1);
@@ -697,15 +618,14 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Double.
    */
   @Deserializer
-  public static Boolean deserializeBoolean(ArrayList<String> values, int howMany) {
+  public static Boolean deserializeBoolean(TokenCursor values, int howMany) {
     return deserializePBoolean(values, howMany);
   }
   
@@ -748,16 +668,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized char.
    */
   @Deserializer
-  public static char deserializePCharacter(ArrayList<String> values, int howMany, Restrict rest) {
-    String value = values.remove(0);
+  public static char deserializePCharacter(TokenCursor values, int howMany, Restrict rest) {
+    String value = values.next();
     String valueLC = value.toLowerCase();
     char out = '\0';
     switch (valueLC) {
@@ -790,7 +709,9 @@ public final class DefaultMethods {
           throw new DeserializationException("\"" + value + "\" is not a valid character.");
         out = value.charAt(0);
     }
-    if (rest == null || String.valueOf(out).matches("[" + rest + "]"))
+    if (rest == null) return out;
+    Pattern allowed = PatternCache.SHARED.get(PatternCache.characterClass(rest));
+    if (allowed.matcher(String.valueOf(out)).matches())
       return out;
     else
       throw deserializationRestriction(value, rest);
@@ -807,32 +728,61 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken.
    * @return The deserialized double array.
    */
   @Deserializer
-  public static char[] deserializePACharacter(ArrayList<String> values, int howMany, Restrict rest) {
-    int max = Math.min(values.size(), howMany);
-    String toArray = "";
-    for (int i = 0; i < max; i++) {
-      if (i != 0) toArray += " ";
-      toArray += values.remove(0);
-    }
-    toArray.replaceAll("\\\\\\\\", "\ue000");
-    toArray.replaceAll("\\\\n", "\n");
-    toArray.replaceAll("\\\\r", "\r");
-    toArray.replaceAll("\\\\t", "\t");
-    toArray.replaceAll("\\\\s", " ");
-    toArray.replaceAll("\\ue000", "\\");
-    if (rest == null || toArray.matches(rest.value()))
+  public static char[] deserializePACharacter(TokenCursor values, int howMany, Restrict rest) {
+    String toArray = unescape(values.take(howMany));
+    if (rest == null || PatternCache.SHARED.get(rest.value()).matcher(toArray).matches())
       return toArray.toCharArray();
     else
       throw new DeserializationException("\"" + toArray + "\" is not a valid input.");
   }
   
+  /**
+   * Converts the escape sequences understood by the char array deserializer
+   * (\\, \n, \r, \t, \s) into the characters they stand for.
+   * 
+   * @param value
+   *          The text to convert.
+   * @return The converted text.
+   */
+  private static String unescape(String value) {
+    if (value.indexOf('\\') < 0) return value;
+    StringBuilder out = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char chr = value.charAt(i);
+      if (chr == '\\' && i + 1 < value.length()) {
+        switch (value.charAt(i + 1)) {
+          case '\\':
+            chr = '\\';
+            break;
+          case 'n':
+            chr = '\n';
+            break;
+          case 'r':
+            chr = '\r';
+            break;
+          case 't':
+            chr = '\t';
+            break;
+          case 's':
+            chr = ' ';
+            break;
+          default:
+            out.append(chr);
+            continue;
+        }
+        i++;
+      }
+      out.append(chr);
+    }
+    return out.toString();
+  }
+  
   /**
    * Deserializes part of an input string into a Character object. Removes the
    * portion of input that was deserialized. This method uses the default
@@ -841,18 +791,50 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Double.
    */
   @Deserializer
-  public static Character deserializeCharacter(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Character deserializeCharacter(TokenCursor values, int howMany, Restrict rest) {
     return deserializePCharacter(values, howMany, rest);
   }
   
+  /**
+   * Reads the ID out of a mention, such as <code>&lt;@!1234&gt;</code>. This is
+   * done by hand, rather than with a regex, since it's done for every mention
+   * parameter (including each element of an array of them).
+   * 
+   * @param value
+   *          The mention.
+   * @param start
+   *          What the mention starts with, such as <code>&lt;@</code>.
+   * @param nickname
+   *          Whether a <code>!</code> may come after the start, as in user
+   *          mentions that show nicknames.
+   * @return The ID, or -1 if the value isn't that kind of mention.
+   */
+  private static long mentionID(String value, String start, boolean nickname) {
+    int end = value.length() - 1;
+    if (end < 0 || !value.startsWith(start) || value.charAt(end) != '>') return -1;
+    int pos = start.length();
+    if (nickname && pos < end && value.charAt(pos) == '!') pos++;
+    if (pos >= end || end - pos > 19) return -1;
+    
+    long id = 0;
+    for (; pos < end; pos++) {
+      char c = value.charAt(pos);
+      if (c < '0' || c > '9') return -1;
+      id = id * 10 + (c - '0');
+      // Nineteen digits can be too many for a long, but never by enough to
+      // wrap around to a positive number.
+      if (id < 0) return -1;
+    }
+    return id;
+  }
+  
   /**
    * Deserializes part of an input string into an {@link IUser} object. Removes
    * the portion of input that was deserialized.
@@ -861,19 +843,20 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
+   * @param msg
+   *          The message the value is from.
    * @return The deserialized IUser.
    */
   @Deserializer
-  public static IUser deserializeUser(ArrayList<String> values, int howMany) {
-    String value = values.remove(0);
-    Matcher mtc = Pattern.compile("<@!?(\\d+)>").matcher(value);
-    if (mtc.matches()) {
-      IUser out = CommandReader.getClient().fetchUser(Long.parseLong(mtc.group(1)));
+  public static IUser deserializeUser(TokenCursor values, int howMany, IMessage msg) {
+    String value = values.next();
+    long id = mentionID(value, "<@", true);
+    if (id >= 0) {
+      IUser out = msg.getClient().fetchUser(id);
       if (out != null) return out;
       throw new DeserializationException("Can't get user " + value + "; perhaps they don't exist?");
     }
@@ -888,19 +871,20 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
+   * @param msg
+   *          The message the value is from.
    * @return The deserialized IChannel.
    */
   @Deserializer
-  public static IChannel deserializeChannel(ArrayList<String> values, int howMany) {
-    String value = values.remove(0);
-    Matcher mtc = Pattern.compile("<#(\\d+)>").matcher(value);
-    if (mtc.matches()) {
-      IChannel out = CommandReader.getClient().getChannelByID(Long.parseLong(mtc.group(1)));
+  public static IChannel deserializeChannel(TokenCursor values, int howMany, IMessage msg) {
+    String value = values.next();
+    long id = mentionID(value, "<#", false);
+    if (id >= 0) {
+      IChannel out = msg.getClient().getChannelByID(id);
       if (out != null) return out;
       throw new DeserializationException(
           "Can't get channel " + value + "; perhaps it doesn't exist or I can't access it?");
@@ -916,19 +900,20 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
+   * @param msg
+   *          The message the value is from.
    * @return The deserialized IRole.
    */
   @Deserializer
-  public static IRole deserializeRole(ArrayList<String> values, int howMany) {
-    String value = values.remove(0);
-    Matcher mtc = Pattern.compile("<@&(\\d+)>").matcher(value);
-    if (mtc.matches()) {
-      IRole out = CommandReader.getClient().getRoleByID(Long.parseLong(mtc.group(1)));
+  public static IRole deserializeRole(TokenCursor values, int howMany, IMessage msg) {
+    String value = values.next();
+    long id = mentionID(value, "<@&", false);
+    if (id >= 0) {
+      IRole out = msg.getClient().getRoleByID(id);
       if (out != null) return out;
       throw new DeserializationException("Can't get role " + value + "; perhaps they don't exist?");
     }
@@ -947,16 +932,15 @@ public final class DefaultMethods {
    * 
    * @param values
    *          The remaining values. Values used for deserialization should be
-   *          removed from the original list, and should be removed from the
-   *          front.
+   *          taken from the cursor.
    * @param howMany
    *          How many values should be taken, if it makes sense to take
    *          multiple values.
    * @return The deserialized Emoji.
    */
   @Deserializer
-  public static Emoji deserializeEmoji(ArrayList<String> values, int howMany) {
-    String value = values.remove(0);
+  public static Emoji deserializeEmoji(TokenCursor values, int howMany) {
+    String value = values.next();
     String valueOrig = value;
     if (value.startsWith(":") && value.endsWith(":")) value = value.substring(1, value.length() - 1).toLowerCase();
     Emoji emoji = EmojiManager.getByUnicode(value);
@@ -969,146 +953,125 @@ public final class DefaultMethods {
   }
   
   @Deserializer
-  public static Matcher deserializeMatcher(ArrayList<String> values, int howMany, Restrict rest) {
+  public static Matcher deserializeMatcher(TokenCursor values, int howMany, Restrict rest) {
     if (rest == null)
       throw new InvalidRestrictionError("Matcher parameters *must* have a regex @Restrict to match against.");
-    String value = deserializeString(values, howMany, null);
-    
-    while (!value.matches(rest.value()) && !values.isEmpty()) {
-      value += " " + values.remove(0);
-    }
+    StringBuilder text = new StringBuilder(deserializeString(values, howMany, null));
     
-    Matcher mtc = Pattern.compile(rest.value()).matcher(value);
+    Matcher mtc = matchWords(PatternCache.SHARED.get(rest.value()), text, values);
     
-    if (!mtc.matches()) { throw deserializationRestriction(value, rest); }
+    if (mtc == null) { throw deserializationRestriction(text, rest); }
     
     return mtc;
   }
   
-  private static boolean meetsCondition(String condition, long in) {
-    condition = condition.replaceAll("[ \\t\\n\\r]", "");
-    String[] ands = condition.split("&");
-    for (String and : ands) {
-      String[] ors = and.split("\\|");
-      boolean satisfiedInner = false;
-      for (String or : ors) {
-        String kw = or.toLowerCase().replaceAll("\\-", "");
-        switch (kw) {
-          case "positive":
-            or = ">0";
-            break;
-          case "negative":
-            or = "<0";
-            break;
-          case "nonpositive":
-            or = "<=0";
-            break;
-          case "nonnegative":
-            or = ">=0";
-            break;
-          case "even":
-            or = "%2";
-            break;
-          case "odd":
-            or = "!%2";
-            break;
-        }
-        
-        Matcher mtc = Pattern.compile("(!?)([><]?=|[><]|\\^|%)(-?\\d+)").matcher(or);
-        if (!mtc.matches()) throw new InvalidRestrictionError("The condition " + or + " is not valid.");
-        
-        long number = Long.parseLong(mtc.group(3));
-        boolean invert = mtc.group(1).matches("!");
-        String cond = mtc.group(2);
-        boolean satisfy = false;
-        
-        if (cond.equals(">="))
-          satisfy = (in >= number);
-        else if (cond.equals("<="))
-          satisfy = (in <= number);
-        else if (cond.equals(">"))
-          satisfy = (in > number);
-        else if (cond.equals("<"))
-          satisfy = (in < number);
-        else if (cond.equals("="))
-          satisfy = (in == number);
-        else if (cond.equals("%"))
-          satisfy = (in % number == 0);
-        else if (cond.equals("^")) {
-          double log = Math.log(in) / Math.log(number);
-          satisfy = (log == Math.floor(log));
-        }
-        
-        satisfy = (satisfy != invert);
-        
-        satisfiedInner = satisfiedInner | satisfy;
+  /**
+   * Matches a regex against text, adding words to the end of the text one at a
+   * time until the whole text matches.
+   * <p>
+   * When an attempt fails without the regex ever reaching the end of the text,
+   * adding more words can't make it match either, so no more are taken. This
+   * means a restriction that can't match is usually given up on after the
+   * first word or two, rather than being tried against every word left in the
+   * message.
+   * 
+   * @param pattern
+   *          The regex.
+   * @param text
+   *          The text so far, which words are added to.
+   * @param values
+   *          The remaining values, which words are taken from.
+   * @return The matcher, which has matched the text, or <code>null</code> if
+   *         the text can't be made to match.
+   */
+  private static Matcher matchWords(Pattern pattern, StringBuilder text, TokenCursor values) {
+    // The matcher reads the builder as it grows, so only its bounds have to
+    // be moved along as words are added.
+    Matcher mtc = pattern.matcher(text);
+    while (true) {
+      mtc.region(0, text.length());
+      if (mtc.matches()) return mtc;
+      if (!mtc.hitEnd() || !values.hasNext()) return null;
+      text.append(' ').append(values.next());
+    }
+  }
+  
+  private static double toDouble(String value, Restrict rest, NumericCondition cond) {
+    try {
+      double out = Double.parseDouble(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
       }
-      if (satisfiedInner == false) return false;
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
     }
-    return true;
   }
   
-  private static boolean meetsCondition(String condition, double in) {
-    condition = condition.replaceAll("[ \\t\\n\\r\\-]", "");
-    String[] ands = condition.split("&");
-    for (String and : ands) {
-      String[] ors = and.split("\\|");
-      boolean satisfiedInner = false;
-      for (String or : ors) {
-        String kw = or.toLowerCase();
-        switch (kw) {
-          case "positive":
-            or = ">0";
-            break;
-          case "negative":
-            or = "<0";
-            break;
-          case "nonpositive":
-            or = "<=0";
-            break;
-          case "nonnegative":
-            or = ">=0";
-            break;
-          case "even":
-            or = "%2";
-            break;
-          case "odd":
-            or = "!%2";
-            break;
-        }
-        
-        Matcher mtc = Pattern.compile("(!?)([><]?=|[><]|\\^|%)(-?\\d*\\.\\d+)").matcher(or);
-        if (!mtc.matches()) throw new InvalidRestrictionError("The condition " + or + " is not valid.");
-        
-        double number = Double.parseDouble(mtc.group(3));
-        boolean invert = mtc.group(1).matches("!");
-        String cond = mtc.group(2);
-        boolean satisfy = false;
-        
-        if (cond.equals(">="))
-          satisfy = (in >= number);
-        else if (cond.equals("<="))
-          satisfy = (in <= number);
-        else if (cond.equals(">"))
-          satisfy = (in > number);
-        else if (cond.equals("<"))
-          satisfy = (in < number);
-        else if (cond.equals("="))
-          satisfy = (in == number);
-        else if (cond.equals("%"))
-          satisfy = (in % number == 0);
-        else if (cond.equals("^")) {
-          double log = Math.log(in) / Math.log(number);
-          satisfy = (log == Math.floor(log));
-        }
-        
-        satisfy = (satisfy != invert);
-        
-        satisfiedInner = satisfiedInner | satisfy;
+  private static float toFloat(String value, Restrict rest, NumericCondition cond) {
+    try {
+      float out = Float.parseFloat(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
       }
-      if (satisfiedInner == false) return false;
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
+    }
+  }
+  
+  private static byte toByte(String value, Restrict rest, NumericCondition cond) {
+    try {
+      byte out = Byte.parseByte(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
+      }
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
+    }
+  }
+  
+  private static short toShort(String value, Restrict rest, NumericCondition cond) {
+    try {
+      short out = Short.parseShort(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
+      }
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
+    }
+  }
+  
+  private static int toInteger(String value, Restrict rest, NumericCondition cond) {
+    try {
+      int out = Integer.parseInt(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
+      }
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
+    }
+  }
+  
+  private static long toLong(String value, Restrict rest, NumericCondition cond) {
+    try {
+      long out = Long.parseLong(value);
+      if (cond == null || cond.test(out)) {
+        return out;
+      } else {
+        throw deserializationRestriction(value, rest);
+      }
+    } catch (NumberFormatException ex) {
+      throw new DeserializationException("Can't convert " + value + " to a number.");
     }
-    return true;
   }
   
   private static DeserializationException deserializationRestriction(Object out, Restrict rest) {
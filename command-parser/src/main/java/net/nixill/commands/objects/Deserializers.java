@@ -0,0 +1,344 @@
+package net.nixill.commands.objects;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Map;
+
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.exceptions.DeserializationException;
+import net.nixill.commands.exceptions.InvalidCommandMethodError;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * Looks up and builds the {@link ArgumentDeserializer}s used by command
+ * parameters. These are resolved once, when a command is registered, so that
+ * running a command doesn't need to search the registered deserializers again.
+ * 
+ * @author Nixill
+ */
+final class Deserializers {
+  private Deserializers() {}
+  
+  /**
+   * Finds the deserializer that should be used for a given type.
+   * 
+   * @param cls
+   *          The type to find a deserializer for.
+   * @param deserializers
+   *          The registered deserializers.
+   * @return The resolved deserializer.
+   * @throws InvalidCommandMethodError
+   *           If no deserializer exists for the type.
+   */
+  static ArgumentDeserializer<?> resolve(Class<?> cls, Map<Class<?>, ArgumentDeserializer<?>> deserializers) {
+    ArgumentDeserializer<?> des = deserializers.get(cls);
+    if (des != null) return des;
+    if (cls.isArray()) return new ForArray(cls.getComponentType(), resolve(cls.getComponentType(), deserializers));
+    if (cls.isEnum()) return new ForEnum(cls);
+    throw new InvalidCommandMethodError(
+        "Type " + cls.getName() + " has no String converter (try registering deserializers first).");
+  }
+  
+  /**
+   * Checks whether a deserializer is one of the built-in ones from
+   * {@link DefaultMethods} (or an array of one), which read restrictions the
+   * built-in way.
+   * 
+   * @param des
+   *          The deserializer.
+   * @return Whether it's built in.
+   */
+  static boolean isBuiltIn(ArgumentDeserializer<?> des) {
+    if (des instanceof ForArray) return isBuiltIn(((ForArray) des).element);
+    if (des instanceof ForMethod) return ((ForMethod) des).builtIn;
+    if (des instanceof ForReflection) return ((ForReflection) des).meth.getDeclaringClass() == DefaultMethods.class;
+    return false;
+  }
+  
+  /**
+   * Checks whether a deserializer runs code, or makes objects of a type,
+   * loaded by a class loader.
+   * 
+   * @param des
+   *          The deserializer.
+   * @param loader
+   *          The class loader.
+   * @return Whether it does.
+   */
+  static boolean isLoadedBy(ArgumentDeserializer<?> des, ClassLoader loader) {
+    if (des instanceof ForArray)
+      return ((ForArray) des).component.getClassLoader() == loader || isLoadedBy(((ForArray) des).element, loader);
+    if (des instanceof ForMethod) return ((ForMethod) des).declaring.getClassLoader() == loader;
+    if (des instanceof ForReflection) return ((ForReflection) des).meth.getDeclaringClass().getClassLoader() == loader;
+    if (des instanceof ForEnum) return ((ForEnum) des).type.getClassLoader() == loader;
+    return des.getClass().getClassLoader() == loader;
+  }
+  
+  /**
+   * Adapts a method annotated with <code>@</code>
+   * {@link net.nixill.commands.annotations.Deserializer Deserializer} into an
+   * {@link ArgumentDeserializer}. The method should already have been
+   * validated.
+   * 
+   * @param meth
+   *          The deserializer method.
+   * @param obj
+   *          The object to fire it from.
+   * @return The deserializer.
+   */
+  static ArgumentDeserializer<Object> forMethod(Method meth, Object obj) {
+    if (Modifier.isStatic(meth.getModifiers())) obj = null;
+    try {
+      return new ForMethod(meth, obj);
+    } catch (IllegalAccessException ex) {
+      return new ForReflection(meth, obj);
+    }
+  }
+  
+  /**
+   * A deserializer backed by a method, called through a method handle that
+   * takes the same arguments as {@link ArgumentDeserializer#deserialize}.
+   * <p>
+   * Methods that take an {@link ArrayList} rather than a {@link TokenCursor}
+   * are given a copy of the remaining words, and the cursor is then moved past
+   * however many words they removed.
+   */
+  private static final class ForMethod implements ArgumentDeserializer<Object> {
+    /** The type of the handle once adapted. */
+    private static final MethodType  TYPE = MethodType.methodType(Object.class, Object.class, int.class,
+        IMessage.class, ParameterSpec.class);
+    /** Gets the restriction from a parameter spec. */
+    private static final MethodHandle RESTRICTION;
+    
+    static {
+      try {
+        RESTRICTION = MethodHandles.lookup().findVirtual(ParameterSpec.class, "getRestriction",
+            MethodType.methodType(Restrict.class));
+      } catch (NoSuchMethodException | IllegalAccessException ex) {
+        throw new ExceptionInInitializerError(ex);
+      }
+    }
+    
+    /** The adapted handle. */
+    private final MethodHandle handle;
+    /** Whether the method takes an ArrayList. */
+    private final boolean      takesList;
+    /** The class the method is declared in. */
+    private final Class<?>     declaring;
+    /** Whether the method is one of the {@link DefaultMethods}. */
+    private final boolean      builtIn;
+    
+    /**
+     * Creates a method-backed deserializer.
+     * 
+     * @param meth
+     *          The deserializer method.
+     * @param obj
+     *          The object to fire it from (<code>null</code> if static).
+     * @throws IllegalAccessException
+     *           If the method can't be accessed through a handle.
+     */
+    private ForMethod(Method meth, Object obj) throws IllegalAccessException {
+      MethodHandle mh = MethodHandles.lookup().unreflect(meth);
+      if (obj != null) mh = mh.bindTo(obj);
+      takesList = meth.getParameterTypes()[0] == ArrayList.class;
+      declaring = meth.getDeclaringClass();
+      builtIn = declaring == DefaultMethods.class;
+      
+      // Fill in the extra parameters from the last to the first, so that the
+      // indexes of the ones not yet handled don't move.
+      Class<?>[] inputTypes = meth.getParameterTypes();
+      int[] reorder = new int[inputTypes.length];
+      reorder[0] = 0;
+      reorder[1] = 1;
+      int kept = 2;
+      for (int i = inputTypes.length - 1; i >= 2; i--) {
+        Class<?> clz = inputTypes[i];
+        if (clz == Boolean.TYPE || clz == Boolean.class) {
+          // Forwards compatibility - the boolean is whether the message was
+          // deleted (true) or created (false).
+          mh = MethodHandles.insertArguments(mh, i, Boolean.FALSE);
+        } else if (clz == Restrict.class) {
+          mh = MethodHandles.filterArguments(mh, i, RESTRICTION);
+        }
+      }
+      for (int i = 2; i < inputTypes.length; i++) {
+        Class<?> clz = inputTypes[i];
+        if (clz == IMessage.class)
+          reorder[kept++] = 2;
+        else if (clz == Restrict.class || clz == ParameterSpec.class) reorder[kept++] = 3;
+      }
+      
+      int[] sources = new int[kept];
+      System.arraycopy(reorder, 0, sources, 0, kept);
+      mh = mh.asType(mh.type().changeReturnType(Object.class).changeParameterType(0, Object.class));
+      handle = MethodHandles.permuteArguments(mh, TYPE, sources);
+    }
+    
+    @Override
+    public Object deserialize(TokenCursor values, int howMany, IMessage msg, ParameterSpec param) {
+      try {
+        if (takesList) {
+          ArrayList<String> list = values.toList();
+          int size = list.size();
+          Object out = (Object) handle.invokeExact((Object) list, howMany, msg, param);
+          values.skip(size - list.size());
+          return out;
+        }
+        return (Object) handle.invokeExact((Object) values, howMany, msg, param);
+      } catch (DeserializationException | Error ex) {
+        throw ex;
+      } catch (Throwable th) {
+        throw new DeserializationException(th);
+      }
+    }
+  }
+  
+  /**
+   * A deserializer backed by a method, called through reflection. Only used
+   * if the method can't be accessed through a method handle.
+   */
+  private static final class ForReflection implements ArgumentDeserializer<Object> {
+    /** The deserializer method. */
+    private final Method   meth;
+    /** The object to fire it from. */
+    private final Object   obj;
+    /** The types of the method's parameters. */
+    private final Class<?>[] inputTypes;
+    
+    /**
+     * Creates a reflective deserializer.
+     * 
+     * @param meth
+     *          The deserializer method.
+     * @param obj
+     *          The object to fire it from (<code>null</code> if static).
+     */
+    private ForReflection(Method meth, Object obj) {
+      this.meth = meth;
+      this.obj = obj;
+      this.inputTypes = meth.getParameterTypes();
+    }
+    
+    @Override
+    public Object deserialize(TokenCursor values, int howMany, IMessage msg, ParameterSpec param) {
+      Object[] inputs = new Object[inputTypes.length];
+      ArrayList<String> list = null;
+      if (inputTypes[0] == ArrayList.class)
+        inputs[0] = list = values.toList();
+      else
+        inputs[0] = values;
+      inputs[1] = howMany;
+      for (int i = 2; i < inputs.length; i++) {
+        Class<?> clz = inputTypes[i];
+        if (clz == IMessage.class) inputs[i] = msg;
+        if (clz == Restrict.class) inputs[i] = param.getRestriction();
+        if (clz == ParameterSpec.class) inputs[i] = param;
+        if (clz == Boolean.TYPE || clz == Boolean.class) inputs[i] = Boolean.FALSE;
+      }
+      try {
+        if (list == null) return meth.invoke(obj, inputs);
+        int size = list.size();
+        Object out = meth.invoke(obj, inputs);
+        values.skip(size - list.size());
+        return out;
+      } catch (IllegalAccessException | IllegalArgumentException ex) {
+        throw new DeserializationException(
+            "The deserialization method for type " + meth.getReturnType().getSimpleName() + " failed.");
+      } catch (InvocationTargetException ex) {
+        Throwable th = ex.getCause();
+        if (th instanceof DeserializationException) throw (DeserializationException) th;
+        if (th instanceof Error) throw (Error) th;
+        else throw new DeserializationException(th);
+      }
+    }
+  }
+  
+  /**
+   * A deserializer for enums without a registered deserializer, which matches
+   * the input against the names of the constants.
+   */
+  private static final class ForEnum implements ArgumentDeserializer<Object> {
+    /** The enum type. */
+    private final Class<?> type;
+    /** The enum's constants. */
+    private final Object[] constants;
+    /** The lowercase names of the constants. */
+    private final String[] names;
+    
+    /**
+     * Creates an enum deserializer.
+     * 
+     * @param cls
+     *          The enum type.
+     */
+    private ForEnum(Class<?> cls) {
+      type = cls;
+      constants = cls.getEnumConstants();
+      names = new String[constants.length];
+      for (int i = 0; i < constants.length; i++) {
+        names[i] = constants[i].toString().toLowerCase();
+      }
+    }
+    
+    @Override
+    public Object deserialize(TokenCursor values, int howMany, IMessage msg, ParameterSpec param) {
+      String value = values.next();
+      String valueLC = value.toLowerCase();
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals(valueLC)) return constants[i];
+      }
+      throw new DeserializationException(value + " is an invalid choice.");
+    }
+  }
+  
+  /**
+   * A deserializer for arrays without a registered deserializer, which uses
+   * the component type's deserializer for each element.
+   * <p>
+   * Primitive types cannot be deserialized using this class. However, they
+   * have default array deserializers in {@link DefaultMethods}.
+   */
+  private static final class ForArray implements ArgumentDeserializer<Object> {
+    /** The component type of the array. */
+    private final Class<?>                component;
+    /** The deserializer for each element. */
+    private final ArgumentDeserializer<?> element;
+    
+    /**
+     * Creates an array deserializer.
+     * 
+     * @param component
+     *          The component type of the array.
+     * @param element
+     *          The deserializer for each element.
+     */
+    private ForArray(Class<?> component, ArgumentDeserializer<?> element) {
+      this.component = component;
+      this.element = element;
+    }
+    
+    @Override
+    public Object deserialize(TokenCursor values, int howMany, IMessage msg, ParameterSpec param) {
+      int maxSize = Math.min(values.remaining(), howMany);
+      Object array = Array.newInstance(component, maxSize);
+      if (component.isPrimitive()) {
+        for (int i = 0; i < maxSize; i++) {
+          Array.set(array, i, element.deserialize(values, 1, msg, param));
+        }
+      } else {
+        Object[] objects = (Object[]) array;
+        for (int i = 0; i < maxSize; i++) {
+          objects[i] = element.deserialize(values, 1, msg, param);
+        }
+      }
+      return array;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package net.nixill.commands.objects;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IPrivateChannel;
+import sx.blah.discord.handle.obj.IUser;
+
+/**
+ * Remembers the direct message channels the bot has with users, so that
+ * replying to someone in a direct message doesn't need to ask Discord for the
+ * channel each time (which the help system, replying only in direct messages,
+ * would otherwise do for every use).
+ * <p>
+ * The cache holds a limited number of channels, forgetting the one used least
+ * recently when it's full, and forgets channels that haven't been used for a
+ * while. A channel is also forgotten as soon as sending to it fails, so the
+ * next message asks Discord for it again.
+ * <p>
+ * The same user has a different direct message channel with each bot, so
+ * channels are kept by both the bot's and the user's IDs, and one cache is
+ * shared by every client in the process.
+ * 
+ * @author Nixill
+ */
+final class DmChannelCache {
+  /** The cache used by command readers and the {@link MessageSender}. */
+  static final DmChannelCache SHARED = new DmChannelCache(1000, TimeUnit.MINUTES.toNanos(10));
+  
+  /**
+   * A bot and user pair.
+   */
+  private static final class Key {
+    /** The bot's ID. */
+    final long bot;
+    /** The user's ID. */
+    final long user;
+    
+    Key(IUser user) {
+      this.bot = user.getClient().getOurUser().getLongID();
+      this.user = user.getLongID();
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      Key that = (Key) other;
+      return bot == that.bot && user == that.user;
+    }
+    
+    @Override
+    public int hashCode() {
+      return Long.hashCode(bot * 31 + user);
+    }
+  }
+  
+  /**
+   * A remembered channel.
+   */
+  private static final class Remembered {
+    /** The channel. */
+    final IChannel channel;
+    /** When the channel was last used, from {@link System#nanoTime()}. */
+    long           used;
+    
+    Remembered(IChannel channel, long used) {
+      this.channel = channel;
+      this.used = used;
+    }
+  }
+  
+  /** The remembered channels, least recently used first. */
+  private final LinkedHashMap<Key, Remembered> channels;
+  /** How long a channel is remembered without being used, in nanoseconds. */
+  private final long                           idleNanos;
+  
+  /**
+   * Creates a direct message channel cache.
+   * 
+   * @param capacity
+   *          How many channels to remember at most.
+   * @param idleNanos
+   *          How long a channel is remembered without being used, in
+   *          nanoseconds.
+   */
+  DmChannelCache(int capacity, long idleNanos) {
+    this.idleNanos = idleNanos;
+    this.channels = new LinkedHashMap<Key, Remembered>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Remembered> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+  
+  /**
+   * Gets the bot's direct message channel with a user, asking Discord for it
+   * if it isn't remembered.
+   * 
+   * @param user
+   *          The user.
+   * @return The channel.
+   */
+  IChannel get(IUser user) {
+    Key key = new Key(user);
+    long now = System.nanoTime();
+    synchronized (channels) {
+      Remembered entry = channels.get(key);
+      if (entry != null && now - entry.used < idleNanos && !entry.channel.isDeleted()) {
+        entry.used = now;
+        return entry.channel;
+      }
+    }
+    
+    // Asking Discord can take a while, so it's done without holding the lock.
+    IChannel channel = user.getOrCreatePMChannel();
+    synchronized (channels) {
+      channels.put(key, new Remembered(channel, now));
+    }
+    return channel;
+  }
+  
+  /**
+   * Forgets the bot's direct message channel with a user.
+   * 
+   * @param user
+   *          The user.
+   */
+  void invalidate(IUser user) {
+    Key key = new Key(user);
+    synchronized (channels) {
+      channels.remove(key);
+    }
+  }
+  
+  /**
+   * Forgets a channel, if it's a direct message channel.
+   * 
+   * @param channel
+   *          The channel.
+   */
+  void invalidate(IChannel channel) {
+    if (channel instanceof IPrivateChannel) invalidate(((IPrivateChannel) channel).getRecipient());
+  }
+}
@@ -0,0 +1,313 @@
+package net.nixill.commands.objects;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.nixill.commands.annotations.BotCommand;
+
+/**
+ * Statistics about the commands a {@link CommandReader} has handed to its
+ * executor: how many are waiting, how long they waited, and how many were
+ * turned away. The counts can be read at any time from any thread. All but the
+ * counts by guild are kept without locking; those are only updated when a
+ * guild is already flooding the reader, and are only kept for the
+ * {@link #TRACKED_GUILDS} guilds that dropped commands most recently.
+ * 
+ * @author Nixill
+ */
+public final class ExecutorMetrics {
+  /** How many guilds {@link #getDropped(long)} keeps counts for. */
+  public static final int TRACKED_GUILDS = 1000;
+  
+  /** Commands handed to the executor. */
+  private final LongAdder                          submitted = new LongAdder();
+  /** Commands the executor refused. */
+  private final LongAdder                          rejected = new LongAdder();
+  /** Commands dropped because their guild had too many waiting. */
+  private final LongAdder                          dropped = new LongAdder();
+  /** Commands turned away because their bulkhead was full. */
+  private final LongAdder                          busy = new LongAdder();
+  /** Commands ignored because they were on cooldown. */
+  private final LongAdder                          onCooldown = new LongAdder();
+  /** Commands shed because the reader was under pressure. */
+  private final LongAdder                          shed = new LongAdder();
+  /** Commands that ran out of time. */
+  private final LongAdder                          timedOut = new LongAdder();
+  /** Commands dropped, by guild, least recent first. Guarded by itself. */
+  private final RecentGuilds                       droppedByGuild = new RecentGuilds();
+  /** Commands that have finished running. */
+  private final LongAdder                          completed = new LongAdder();
+  /** Commands waiting to start. */
+  private final AtomicInteger                      queued = new AtomicInteger();
+  /** Commands running right now. */
+  private final AtomicInteger                      running = new AtomicInteger();
+  /** The total time commands spent waiting to start, in nanoseconds. */
+  private final LongAdder                          totalWait = new LongAdder();
+  /** The longest time a command spent waiting to start, in nanoseconds. */
+  private final AtomicLong                         maxWait = new AtomicLong();
+  
+  /**
+   * Counts by guild, forgetting the guild used least recently once there are
+   * more than {@link #TRACKED_GUILDS}.
+   */
+  private static final class RecentGuilds extends LinkedHashMap<Long, LongAdder> {
+    private static final long serialVersionUID = 1L;
+    
+    RecentGuilds() {
+      super(16, 0.75f, true);
+    }
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, LongAdder> eldest) {
+      return size() > TRACKED_GUILDS;
+    }
+  }
+  
+  ExecutorMetrics() {}
+  
+  /**
+   * Records a command being handed to the executor.
+   */
+  void submitted() {
+    submitted.increment();
+    queued.incrementAndGet();
+  }
+  
+  /**
+   * Records the executor refusing a command that was handed to it.
+   */
+  void rejected() {
+    queued.decrementAndGet();
+    rejected.increment();
+  }
+  
+  /**
+   * Records a command being dropped (without being handed to the executor)
+   * because its guild already had too many commands waiting.
+   * 
+   * @param guild
+   *          The guild's ID, or 0 for direct messages.
+   */
+  void dropped(long guild) {
+    dropped.increment();
+    synchronized (droppedByGuild) {
+      LongAdder count = droppedByGuild.get(guild);
+      if (count == null) {
+        count = new LongAdder();
+        droppedByGuild.put(guild, count);
+      }
+      count.increment();
+    }
+  }
+  
+  /**
+   * Records a command being turned away because its bulkhead was full.
+   */
+  void busy() {
+    busy.increment();
+  }
+  
+  /**
+   * Records a command that was already waiting being turned away because its
+   * bulkhead was full, once it got to the front of its lane.
+   */
+  void busyWhileQueued() {
+    queued.decrementAndGet();
+    busy.increment();
+  }
+  
+  /**
+   * Records a command being ignored because it was used during its cooldown.
+   */
+  void onCooldown() {
+    onCooldown.increment();
+  }
+  
+  /**
+   * Records a command being shed because too many commands were waiting.
+   */
+  void shed() {
+    shed.increment();
+  }
+  
+  /**
+   * Records a command running out of time.
+   */
+  void timedOut() {
+    timedOut.increment();
+  }
+  
+  /**
+   * Records a command starting to run.
+   * 
+   * @param submittedAt
+   *          The {@link System#nanoTime()} at which it was handed over.
+   */
+  void started(long submittedAt) {
+    long wait = System.nanoTime() - submittedAt;
+    queued.decrementAndGet();
+    running.incrementAndGet();
+    totalWait.add(wait);
+    long max = maxWait.get();
+    while (wait > max && !maxWait.compareAndSet(max, wait))
+      max = maxWait.get();
+  }
+  
+  /**
+   * Records a command finishing, whether or not it succeeded.
+   */
+  void finished() {
+    running.decrementAndGet();
+    completed.increment();
+  }
+  
+  /**
+   * Get the number of commands waiting for the executor to start them.
+   * 
+   * @return The queue depth.
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+  
+  /**
+   * Get the number of commands running right now.
+   * 
+   * @return The number of running commands.
+   */
+  public int getRunning() {
+    return running.get();
+  }
+  
+  /**
+   * Get the number of commands handed to the executor, including ones it
+   * rejected.
+   * 
+   * @return The number of commands submitted.
+   */
+  public long getSubmitted() {
+    return submitted.sum();
+  }
+  
+  /**
+   * Get the number of commands the executor refused to run (usually because
+   * its queue was full).
+   * 
+   * @return The number of commands rejected.
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+  
+  /**
+   * Get the number of commands dropped because their guild already had too
+   * many waiting (see {@link CommandReader#setGuildQueueLimit}). These are not
+   * counted as submitted.
+   * 
+   * @return The number of commands dropped.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+  
+  /**
+   * Get the number of commands dropped from a single guild because it already
+   * had too many waiting. Only the {@link #TRACKED_GUILDS} guilds that dropped
+   * commands most recently are counted; for the rest, this is 0.
+   * 
+   * @param guildID
+   *          The guild's ID, or 0 for direct messages.
+   * @return The number of commands dropped.
+   */
+  public long getDropped(long guildID) {
+    synchronized (droppedByGuild) {
+      LongAdder count = droppedByGuild.get(guildID);
+      return (count == null) ? 0 : count.sum();
+    }
+  }
+  
+  /**
+   * Get the number of commands turned away because too many runs of them were
+   * already in progress or waiting (see {@link BotCommand#maxConcurrent()}).
+   * These are not counted as submitted.
+   * 
+   * @return The number of commands turned away.
+   */
+  public long getBusy() {
+    return busy.sum();
+  }
+  
+  /**
+   * Get the number of commands ignored because they were used during their
+   * cooldown (see {@link BotCommand#cooldown()}). These are not counted as
+   * submitted.
+   * 
+   * @return The number of commands ignored.
+   */
+  public long getOnCooldown() {
+    return onCooldown.sum();
+  }
+  
+  /**
+   * Get the number of commands shed because too many commands were waiting
+   * (see {@link BotCommand#priority()}). These are not counted as submitted.
+   * 
+   * @return The number of commands shed.
+   */
+  public long getShed() {
+    return shed.sum();
+  }
+  
+  /**
+   * Get the number of commands that ran out of time (see
+   * {@link BotCommand#timeout()}). These are still counted as completed once
+   * they actually return.
+   * 
+   * @return The number of commands that timed out.
+   */
+  public long getTimedOut() {
+    return timedOut.sum();
+  }
+  
+  /**
+   * Get the number of commands that have finished running.
+   * 
+   * @return The number of commands completed.
+   */
+  public long getCompleted() {
+    return completed.sum();
+  }
+  
+  /**
+   * Get the total time commands have spent waiting to start.
+   * 
+   * @return The total wait, in nanoseconds.
+   */
+  public long getTotalWaitNanos() {
+    return totalWait.sum();
+  }
+  
+  /**
+   * Get the average time commands have spent waiting to start.
+   * 
+   * @return The average wait, in nanoseconds, or 0 if no commands have
+   *         started.
+   */
+  public long getAverageWaitNanos() {
+    long started = completed.sum() + running.get();
+    if (started <= 0) return 0;
+    return totalWait.sum() / started;
+  }
+  
+  /**
+   * Get the longest time a single command has spent waiting to start.
+   * 
+   * @return The longest wait, in nanoseconds.
+   */
+  public long getMaxWaitNanos() {
+    return maxWait.get();
+  }
+}
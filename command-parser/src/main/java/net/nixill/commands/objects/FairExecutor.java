@@ -0,0 +1,311 @@
+package net.nixill.commands.objects;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares out another executor fairly between groups of tasks (for commands,
+ * each guild is a group, and direct messages are one more). Only a limited
+ * number of tasks are handed to the underlying executor at once; the rest wait
+ * here, in one queue per group, and are released by deficit round robin, so a
+ * group with a thousand waiting tasks gets no more turns than a group with
+ * one.
+ * <p>
+ * Every task costs the same, so each group's deficit grows by
+ * {@link #QUANTUM} per round and shrinks by one per task released.
+ * <p>
+ * Groups also have a limit on how many tasks they can have admitted at once
+ * (see {@link #tryAdmit}), so that one group can't fill memory with waiting
+ * tasks during a flood.
+ * 
+ * @author Nixill
+ */
+final class FairExecutor implements Executor {
+  /** The group used for direct messages, which don't have a guild. */
+  static final long DM_GROUP = 0L;
+  /** How many tasks a group may release per round. */
+  private static final int QUANTUM = 1;
+  /** The count of a group that has been removed from {@link #admitted}. */
+  private static final int RETIRED = -1;
+  
+  /**
+   * A task that knows which group it belongs to, and what to do if it can't be
+   * run.
+   */
+  interface Task extends Runnable {
+    /**
+     * Get the group this task belongs to.
+     * 
+     * @return The group.
+     */
+    long group();
+    
+    /**
+     * Called instead of {@link #run()} if the underlying executor won't take
+     * the task.
+     */
+    void reject();
+  }
+  
+  /**
+   * The waiting tasks of a single group.
+   */
+  private static final class Flow {
+    /** The group. */
+    final long                 group;
+    /** The tasks waiting to be released. */
+    final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    /** How many more tasks the group may release this round. */
+    int                        deficit;
+    
+    Flow(long group) {
+      this.group = group;
+    }
+  }
+  
+  /** The groups with tasks waiting, by group. Guarded by this. */
+  private final HashMap<Long, Flow>                    flows = new HashMap<>();
+  /** The groups with tasks waiting, in round-robin order. Guarded by this. */
+  private final ArrayDeque<Flow>                       active = new ArrayDeque<>();
+  /**
+   * How many tasks each group has admitted and not yet completed. Groups are
+   * removed when their count returns to zero.
+   */
+  private final ConcurrentHashMap<Long, AtomicInteger> admitted = new ConcurrentHashMap<>();
+  /** How many tasks have been released and not finished. Guarded by this. */
+  private int                                          running;
+  /** The most tasks that may be released at once. */
+  private volatile int                                 maxRunning;
+  /** The most tasks a group may have admitted at once. */
+  private volatile int                                 groupLimit;
+  /** The executor tasks are released to. */
+  private volatile Executor                            base;
+  
+  /**
+   * Creates a fair executor.
+   * 
+   * @param base
+   *          The executor to release tasks to.
+   * @param maxRunning
+   *          The most tasks that may be released at once.
+   * @param groupLimit
+   *          The most tasks a group may have admitted at once.
+   */
+  FairExecutor(Executor base, int maxRunning, int groupLimit) {
+    this.base = base;
+    this.maxRunning = maxRunning;
+    this.groupLimit = groupLimit;
+  }
+  
+  /**
+   * Changes the executor that tasks are released to.
+   * 
+   * @param newBase
+   *          The new executor.
+   */
+  void setBase(Executor newBase) {
+    base = newBase;
+  }
+  
+  /**
+   * Get the most tasks that may be released to the underlying executor at
+   * once.
+   * 
+   * @return The limit.
+   */
+  int getMaxRunning() {
+    return maxRunning;
+  }
+  
+  /**
+   * Set the most tasks that may be released to the underlying executor at
+   * once. This should usually match the number of threads it has. If the
+   * limit is raised, waiting tasks are released straight away to fill it.
+   * 
+   * @param max
+   *          The new limit, at least 1.
+   */
+  void setMaxRunning(int max) {
+    if (max < 1) throw new IllegalArgumentException("At least one task must be able to run.");
+    maxRunning = max;
+    for (;;) {
+      Runnable next;
+      synchronized (this) {
+        if (active.isEmpty() || running >= maxRunning) return;
+        running++;
+        next = pick();
+      }
+      release(next);
+    }
+  }
+  
+  /**
+   * Get the most tasks a group may have admitted at once.
+   * 
+   * @return The limit.
+   */
+  int getGroupLimit() {
+    return groupLimit;
+  }
+  
+  /**
+   * Set the most tasks a group may have admitted at once.
+   * 
+   * @param limit
+   *          The new limit, at least 1.
+   */
+  void setGroupLimit(int limit) {
+    if (limit < 1) throw new IllegalArgumentException("Groups must be able to admit at least one task.");
+    groupLimit = limit;
+  }
+  
+  /**
+   * Admits a task for a group, if the group is under its limit. Every admitted
+   * task must later be passed to {@link #complete}.
+   * 
+   * @param group
+   *          The group.
+   * @return Whether the task was admitted.
+   */
+  boolean tryAdmit(long group) {
+    int limit = groupLimit;
+    for (;;) {
+      AtomicInteger count = admitted.get(group);
+      if (count == null) {
+        count = admitted.putIfAbsent(group, new AtomicInteger(1));
+        if (count == null) return true;
+      }
+      for (int now = count.get(); now != RETIRED; now = count.get()) {
+        if (now >= limit) return false;
+        if (count.compareAndSet(now, now + 1)) return true;
+      }
+      // complete() retired this count as we read it; it's about to be removed
+      admitted.remove(group, count);
+    }
+  }
+  
+  /**
+   * Records that an admitted task has finished (or been rejected). When a
+   * group has nothing left admitted, it's forgotten, so that the groups of
+   * guilds the bot has left don't pile up. Its count is retired first, so that
+   * {@link #tryAdmit} never adds to a count that's been removed.
+   * 
+   * @param group
+   *          The group it was admitted for.
+   */
+  void complete(long group) {
+    AtomicInteger count = admitted.get(group);
+    if (count != null && count.decrementAndGet() == 0 && count.compareAndSet(0, RETIRED)) {
+      admitted.remove(group, count);
+    }
+  }
+  
+  /**
+   * Queues a task. Tasks that aren't {@link Task}s are put in the direct
+   * message group.
+   * 
+   * @param task
+   *          The task.
+   */
+  @Override
+  public void execute(Runnable task) {
+    long group = (task instanceof Task) ? ((Task) task).group() : DM_GROUP;
+    Runnable next;
+    synchronized (this) {
+      Flow flow = flows.get(group);
+      if (flow == null) {
+        flow = new Flow(group);
+        flows.put(group, flow);
+        active.addLast(flow);
+      }
+      flow.tasks.addLast(task);
+      if (running >= maxRunning) return;
+      running++;
+      next = pick();
+    }
+    release(next);
+  }
+  
+  /**
+   * Takes the next task to release, by deficit round robin. Must be called
+   * while holding the lock, with at least one task waiting.
+   * 
+   * @return The task.
+   */
+  private Runnable pick() {
+    Flow flow = active.peekFirst();
+    if (flow.deficit <= 0) flow.deficit += QUANTUM;
+    Runnable task = flow.tasks.pollFirst();
+    flow.deficit--;
+    if (flow.tasks.isEmpty()) {
+      active.pollFirst();
+      flows.remove(flow.group);
+    } else if (flow.deficit <= 0) {
+      active.pollFirst();
+      active.addLast(flow);
+    }
+    return task;
+  }
+  
+  /**
+   * Called when a released task finishes. Takes the next task to release, if
+   * there is one; otherwise gives up the finished task's place.
+   * 
+   * @return The next task, or <code>null</code> if none are waiting.
+   */
+  private synchronized Runnable finished() {
+    if (active.isEmpty() || running > maxRunning) {
+      running--;
+      return null;
+    }
+    return pick();
+  }
+  
+  /**
+   * Hands a task to the underlying executor. If it won't take the task, the
+   * task is rejected and the next one is tried.
+   * 
+   * @param task
+   *          The task.
+   */
+  private void release(Runnable task) {
+    while (task != null) {
+      try {
+        base.execute(new Released(task));
+        return;
+      } catch (RejectedExecutionException ex) {
+        if (task instanceof Task) ((Task) task).reject();
+        task = finished();
+      }
+    }
+  }
+  
+  /**
+   * Runs a released task, then keeps running waiting tasks on the same thread
+   * until there are none left to release.
+   */
+  private final class Released implements Runnable {
+    /** The first task to run. */
+    private final Runnable first;
+    
+    Released(Runnable first) {
+      this.first = first;
+    }
+    
+    @Override
+    public void run() {
+      for (Runnable task = first; task != null; task = finished()) {
+        try {
+          task.run();
+        } catch (Throwable ex) {
+          Thread th = Thread.currentThread();
+          th.getUncaughtExceptionHandler().uncaughtException(th, ex);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package net.nixill.commands.objects;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.nixill.commands.enums.MentionSetting;
+
+/**
+ * The settings a single guild uses in place of a {@link CommandReader}'s own.
+ * Each setting can be left unset, in which case the guild uses the reader's.
+ * Guilds can also turn off commands they don't want, by name.
+ * <p>
+ * Guild settings never change once created; use {@link #withPrefix},
+ * {@link #withMentionSetting}, and {@link #withCommandEnabled} to get changed
+ * copies.
+ * 
+ * @author Nixill
+ */
+public final class GuildSettings {
+  /** Settings that change nothing. */
+  public static final GuildSettings DEFAULT = new GuildSettings(null, MentionSetting.DEFAULT);
+  
+  /** The guild's prefix, or <code>null</code> to use the reader's. */
+  private final String         prefix;
+  /** The guild's mention setting, or <code>DEFAULT</code> for the reader's. */
+  private final MentionSetting requireMention;
+  /** The names of the commands the guild has turned off, in lowercase. */
+  private final Set<String>    disabled;
+  
+  /**
+   * Creates guild settings that don't turn off any commands.
+   * 
+   * @param prefix
+   *          The guild's prefix, or <code>null</code> to use the reader's.
+   * @param requireMention
+   *          The guild's mention setting, or <code>DEFAULT</code> (or
+   *          <code>null</code>) to use the reader's.
+   */
+  public GuildSettings(String prefix, MentionSetting requireMention) {
+    this(prefix, requireMention, Collections.<String>emptySet());
+  }
+  
+  /**
+   * Creates guild settings.
+   * 
+   * @param prefix
+   *          The guild's prefix, or <code>null</code> to use the reader's.
+   * @param requireMention
+   *          The guild's mention setting, or <code>DEFAULT</code> (or
+   *          <code>null</code>) to use the reader's.
+   * @param disabled
+   *          The names of the commands the guild has turned off.
+   */
+  public GuildSettings(String prefix, MentionSetting requireMention, Collection<String> disabled) {
+    this.prefix = prefix;
+    this.requireMention = (requireMention == null) ? MentionSetting.DEFAULT : requireMention;
+    if (disabled.isEmpty()) {
+      this.disabled = Collections.emptySet();
+    } else {
+      Set<String> names = new TreeSet<>();
+      for (String name : disabled) {
+        names.add(name.toLowerCase());
+      }
+      this.disabled = Collections.unmodifiableSet(names);
+    }
+  }
+  
+  /**
+   * Get the guild's prefix.
+   * 
+   * @return The prefix, or <code>null</code> if the guild uses the reader's.
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+  
+  /**
+   * Get the guild's mention setting.
+   * 
+   * @return The mention setting, or <code>DEFAULT</code> if the guild uses the
+   *         reader's.
+   */
+  public MentionSetting getMentionSetting() {
+    return requireMention;
+  }
+  
+  /**
+   * Get the names of the commands the guild has turned off.
+   * 
+   * @return The names, in lowercase.
+   */
+  public Set<String> getDisabledCommands() {
+    return disabled;
+  }
+  
+  /**
+   * Get whether the guild allows a command to be used.
+   * 
+   * @param name
+   *          The command's name (not an alias), in lowercase.
+   * @return Whether the command is allowed.
+   */
+  public boolean isCommandEnabled(String name) {
+    return disabled.isEmpty() || !disabled.contains(name);
+  }
+  
+  /**
+   * Get a copy of these settings with a different prefix.
+   * 
+   * @param newPrefix
+   *          The new prefix, or <code>null</code> to use the reader's.
+   * @return The new settings.
+   */
+  public GuildSettings withPrefix(String newPrefix) {
+    return new GuildSettings(newPrefix, requireMention, disabled);
+  }
+  
+  /**
+   * Get a copy of these settings with a different mention setting.
+   * 
+   * @param newSetting
+   *          The new mention setting, or <code>DEFAULT</code> to use the
+   *          reader's.
+   * @return The new settings.
+   */
+  public GuildSettings withMentionSetting(MentionSetting newSetting) {
+    return new GuildSettings(prefix, newSetting, disabled);
+  }
+  
+  /**
+   * Get a copy of these settings with a command turned on or off.
+   * 
+   * @param name
+   *          The command's name (not an alias).
+   * @param enabled
+   *          Whether the guild allows the command to be used.
+   * @return The new settings.
+   */
+  public GuildSettings withCommandEnabled(String name, boolean enabled) {
+    Set<String> names = new TreeSet<>(disabled);
+    if (enabled)
+      names.remove(name.toLowerCase());
+    else
+      names.add(name.toLowerCase());
+    return new GuildSettings(prefix, requireMention, names);
+  }
+  
+  /**
+   * Get whether these settings change nothing, so that the guild uses all of
+   * the reader's settings.
+   * 
+   * @return Whether nothing is set.
+   */
+  public boolean isDefault() {
+    return prefix == null && requireMention == MentionSetting.DEFAULT && disabled.isEmpty();
+  }
+  
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof GuildSettings)) return false;
+    GuildSettings that = (GuildSettings) other;
+    return (prefix == null ? that.prefix == null : prefix.equals(that.prefix))
+        && requireMention == that.requireMention && disabled.equals(that.disabled);
+  }
+  
+  @Override
+  public int hashCode() {
+    return ((prefix == null ? 0 : prefix.hashCode()) * 31 + requireMention.hashCode()) * 31 + disabled.hashCode();
+  }
+}
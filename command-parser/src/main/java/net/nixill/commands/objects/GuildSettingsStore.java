@@ -0,0 +1,70 @@
+package net.nixill.commands.objects;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Where a {@link CommandReader} keeps its per-guild settings. The reader asks
+ * the store for a guild's settings whenever a message from that guild might be
+ * a command, and doesn't keep a copy of its own, so stores should make
+ * {@link #get} quick.
+ * <p>
+ * {@link MemoryGuildSettingsStore} keeps settings only as long as the bot
+ * runs; {@link MappedGuildSettingsStore} keeps them in a file.
+ * 
+ * @author Nixill
+ */
+public interface GuildSettingsStore {
+  /**
+   * Gets a guild's settings.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @return The settings, or <code>null</code> if the guild has none.
+   */
+  GuildSettings get(long guildID);
+  
+  /**
+   * Saves a guild's settings, replacing any it had before.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param settings
+   *          The settings, or <code>null</code> if the guild no longer has
+   *          any.
+   */
+  void put(long guildID, GuildSettings settings);
+  
+  /**
+   * Saves the settings of many guilds at once, as when loading them all at
+   * startup. By default, this just puts each guild in turn; stores for which
+   * that's slow should save them together.
+   * 
+   * @param settings
+   *          The settings, by guild ID. A <code>null</code> value means the
+   *          guild no longer has any.
+   */
+  default void putAll(Map<Long, GuildSettings> settings) {
+    for (Map.Entry<Long, GuildSettings> ent : settings.entrySet()) {
+      put(ent.getKey(), ent.getValue());
+    }
+  }
+  
+  /**
+   * Gets whether no guild has any settings. While this is <code>true</code>,
+   * the reader doesn't look guilds up at all.
+   * 
+   * @return Whether the store is empty.
+   */
+  boolean isEmpty();
+  
+  /**
+   * Gets the characters that the guilds' own prefixes start with. It's fine
+   * for this to include characters no prefix starts with any more, but it
+   * must not leave any out.
+   * 
+   * @return The characters, or <code>null</code> if a prefix might be empty
+   *         (so that a command could start with anything).
+   */
+  BitSet getPrefixStarts();
+}
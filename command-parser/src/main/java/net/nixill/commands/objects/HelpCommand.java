@@ -1,42 +1,49 @@
 package net.nixill.commands.objects;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.NavigableMap;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 import net.nixill.commands.annotations.BotCommand;
 import net.nixill.commands.annotations.BotCommand.ReplyTarget;
 import net.nixill.commands.annotations.OptParam;
+import net.nixill.commands.enums.CommandPriority;
+import net.nixill.commands.enums.MentionSetting;
 import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.api.internal.json.objects.EmbedObject.EmbedFieldObject;
+import sx.blah.discord.handle.obj.IGuild;
 import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.handle.obj.IUser;
 import sx.blah.discord.util.EmbedBuilder;
 
 /**
  * A class holding information for the command reader's default Help system,
  * automatically populating it with information on the given commands if it's
  * used.
+ * <p>
+ * Each reader has its own help, since the help shows the reader's prefix and
+ * bot, but the entries for the commands come from the reader's
+ * {@link CommandRegistry} and are shared.
  * 
  * @author Nixill
  */
 class HelpCommand {
+  /** The longest a bot's name can be, which the title leaves room for. */
+  private static final int                        MAX_NAME_LENGTH  = 32;
+  /** The longest a bot's mention can be, which command titles leave room for. */
+  private static final int                        MENTION_LENGTH   = 23;
+  
   /** The CommandReader using the help system. */
-  private CommandReader                reader;
+  private CommandReader                           reader;
   /** The pages of the command help. */
-  private TreeMap<Integer, String>     commandPages     = new TreeMap<>();
+  private volatile TreeMap<Integer, String>       commandPages     = new TreeMap<>();
   /** The embeds for each command (by their main name). */
-  private TreeMap<String, CommandHelp> mainEmbeds       = new TreeMap<>();
-  /** The embeds for each command (by all aliases). */
-  private HashMap<String, CommandHelp> aliasEmbeds      = new HashMap<>();
+  private volatile SortedMap<String, CommandHelp> mainEmbeds       = new TreeMap<>();
   
-  /** The name at the top of the embed. */
-  private String                       embedName;
   /** The description at the top of the embed. */
-  private String                       embedDescription = "";
+  private String                                  embedDescription = "";
   /** The footer at the bottom of the embed. */
-  private String                       embedFooter      = "Page XXX of XXX";
+  private String                                  embedFooter      = "Page XXX of XXX";
   
   /**
    * Initializes a HelpCommand.
@@ -46,7 +53,17 @@ class HelpCommand {
    */
   HelpCommand(CommandReader r) {
     reader = r;
-    embedName = CommandReader.getClient().getOurUser().getName() + " help";
+  }
+  
+  /**
+   * Sets the commands the help is for, and splits them into pages.
+   * 
+   * @param entries
+   *          The help entries for each command, by main name.
+   */
+  void setCommands(SortedMap<String, CommandHelp> entries) {
+    mainEmbeds = entries;
+    repaginate();
   }
   
   /**
@@ -70,25 +87,29 @@ class HelpCommand {
    *          Which page to view.
    * @return An {@link EmbedObject} showing the specified page for help.
    */
-  @BotCommand(name = "help", usage = "help [page]", description = "Displays a list of commands.", reply = ReplyTarget.DM)
+  @BotCommand(name = "help", usage = "help [page]", description = "Displays a list of commands.", reply = ReplyTarget.DM,
+      priority = CommandPriority.LOW)
   public EmbedObject helpCommand(IMessage msg, @OptParam("1") int page) {
+    TreeMap<Integer, String> commandPages = this.commandPages;
+    SortedMap<String, CommandHelp> mainEmbeds = this.mainEmbeds;
+    IUser us = msg.getClient().getOurUser();
+    String prefix = reader.getPrefix(msg.getGuild());
+    
     EmbedBuilder em = new EmbedBuilder();
-    em.withTitle(embedName).withDesc(embedDescription).withFooterText("Page " + page + " of " + commandPages.size());
+    em.withTitle(us.getName() + " help").withDesc(embedDescription).withFooterText("Page " + page + " of " + commandPages.size());
     if (commandPages.containsKey(page)) {
       String firstKey = commandPages.get(page);
       String lastKey = commandPages.get(page + 1);
+      SortedMap<String, CommandHelp> subMap;
       if (lastKey == null)
-        lastKey = mainEmbeds.lastKey();
+        subMap = mainEmbeds.tailMap(firstKey);
       else
-        lastKey = mainEmbeds.lowerKey(lastKey);
-      
-      NavigableMap<String, CommandHelp> subMap = mainEmbeds.subMap(firstKey, true, lastKey, true);
+        subMap = mainEmbeds.subMap(firstKey, lastKey);
       
-      String key = firstKey;
-      while (key != null) {
-        EmbedFieldObject embed = mainEmbeds.get(key).getEmbed();
-        em.appendField(embed.name, embed.value, embed.inline);
-        key = subMap.higherKey(key);
+      for (CommandHelp cHelp : subMap.values()) {
+        EmbedFieldObject embed = cHelp.getEmbed();
+        String mention = needsMention(msg.getGuild(), cHelp) ? us.mention() : null;
+        em.appendField(cHelp.getTitle(prefix, mention), embed.value, embed.inline);
       }
     } else if (page <= 0) {
       em.appendField("Not far enough.",
@@ -108,84 +129,55 @@ class HelpCommand {
    *          Which command to view.
    * @return An {@link EmbedObject} showing the specified page for help.
    */
-  @BotCommand(name = "helpwith", usage = "!helpwith <command>", description = "Displays help on a specific command.", reply = ReplyTarget.DM)
+  @BotCommand(name = "helpwith", usage = "!helpwith <command>", description = "Displays help on a specific command.", reply = ReplyTarget.DM,
+      priority = CommandPriority.LOW)
   public EmbedObject helpWithCommand(IMessage msg, String whatCommand) {
     EmbedBuilder em = new EmbedBuilder();
     whatCommand = whatCommand.toLowerCase();
-    em.withTitle(CommandReader.getClient().getOurUser().getDisplayName(msg.getGuild()) + ": " + whatCommand + " help");
+    em.withTitle(msg.getClient().getOurUser().getDisplayName(msg.getGuild()) + ": " + whatCommand + " help");
     // Insert that command's embed fields
     return em.build();
   }
   
+  /**
+   * Checks whether a command needs a mention, as it's used through the reader.
+   * 
+   * @param guild
+   *          The guild it's used in, or <code>null</code> for the reader's
+   *          default.
+   * @param cHelp
+   *          The command's help entry.
+   * @return Whether the command needs a mention.
+   */
+  private boolean needsMention(IGuild guild, CommandHelp cHelp) {
+    return reader.getMentionSetting(guild, cHelp.getMentionSetting()) == MentionSetting.PREFIX;
+  }
+  
   /**
    * Splits the list of commands into pages based on the lengths of the command
    * embeds.
    */
   void repaginate() {
-    commandPages.clear();
+    TreeMap<Integer, String> pages = new TreeMap<>();
     
-    int builtInChars = embedName.length() + embedDescription.length() + embedFooter.length();
+    int builtInChars = MAX_NAME_LENGTH + " help".length() + embedDescription.length() + embedFooter.length();
+    int titleChars = reader.getPrefix().length() + "****".length();
     int remainingChars = -1;
     
     int page = 0;
-    String key = mainEmbeds.firstKey();
-    CommandHelp cHelp = mainEmbeds.get(key);
-    
-    while (true) {
-      remainingChars -= cHelp.getCharCount();
+    for (Map.Entry<String, CommandHelp> entry : mainEmbeds.entrySet()) {
+      CommandHelp cHelp = entry.getValue();
+      int chars = cHelp.getCharCount() + titleChars;
+      if (needsMention(null, cHelp)) chars += MENTION_LENGTH + 1;
+      
+      remainingChars -= chars;
       if (remainingChars < 0) {
         page += 1;
-        commandPages.put(page, key);
+        pages.put(page, entry.getKey());
         remainingChars = 750 - builtInChars;
-        remainingChars -= cHelp.getCharCount();
-      }
-      
-      key = mainEmbeds.higherKey(key);
-      if (key == null) return;
-    }
-  }
-  
-  /**
-   * Adds a command method to the help system. Does not automatically
-   * repaginate, so as to save time adding multiple commands.
-   * 
-   * @param meth
-   *          The method to add.
-   * @param acceptedAliases
-   *          The aliases for that command that weren't already taken by other
-   *          commands.
-   */
-  void addCommand(Method meth, ArrayList<String> acceptedAliases) {
-    BotCommand cmd = meth.getAnnotation(BotCommand.class);
-    
-    // Create new help object
-    CommandHelp cHelp = new CommandHelp(cmd.name(), acceptedAliases, cmd.listen(), cmd.usage(), cmd.description(),
-        cmd.reply(), reader.getPrefix(), reader.getMentionSetting(cmd.mentions()), cmd.requiredPerm());
-    
-    // Add to main list
-    switch (cmd.listen()) {
-      case GUILD:
-        mainEmbeds.put(cmd.name() + " server", cHelp);
-        break;
-      case DM:
-        mainEmbeds.put(cmd.name() + " dm", cHelp);
-        break;
-      case BOTH:
-        mainEmbeds.put(cmd.name(), cHelp);
-    }
-    
-    // Add to sub-lists
-    for (String name : acceptedAliases) {
-      switch (cmd.listen()) {
-        case GUILD:
-          aliasEmbeds.put(name + " server", cHelp);
-          break;
-        case DM:
-          aliasEmbeds.put(name + " dm", cHelp);
-          break;
-        case BOTH:
-          aliasEmbeds.put(name, cHelp);
+        remainingChars -= chars;
       }
     }
+    commandPages = pages;
   }
 }
@@ -0,0 +1,239 @@
+package net.nixill.commands.objects;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on another executor so that tasks with the same key run one at a
+ * time, in the order they were submitted, while tasks with different keys can
+ * run in parallel.
+ * <p>
+ * Each key that has tasks waiting gets a lane: a lock-free queue, plus a count
+ * of the tasks in it. Whoever takes the count from zero to one submits the lane
+ * to the underlying executor, and the lane then runs its tasks until the count
+ * drops back to zero. An empty lane is marked dead (a count of -1) before it's
+ * removed from the map, so a submitter that finds a dead lane knows to make a
+ * new one.
+ * <p>
+ * Lanes are themselves {@link FairExecutor.Task}s, in the group of the task at
+ * their front, so they can be scheduled fairly.
+ * <p>
+ * A {@link Gated} task that can't run yet when it reaches the front of its
+ * lane holds the lane there, without holding a thread, until it's ready; the
+ * tasks behind it wait, so they stay in order.
+ * 
+ * @author Nixill
+ */
+final class KeyedSerialExecutor {
+  /** The most tasks a lane runs before letting other lanes have the thread. */
+  private static final int BATCH_SIZE = 16;
+  /** The result of {@link Lane#drain}: the lane is empty. */
+  private static final int EMPTY      = 0;
+  /** The result of {@link Lane#drain}: the lane still has tasks. */
+  private static final int MORE       = 1;
+  /** The result of {@link Lane#drain}: the task at the front isn't ready. */
+  private static final int PARKED     = 2;
+  
+  /** The lanes that have tasks waiting or running. */
+  private final ConcurrentHashMap<Long, Lane> lanes = new ConcurrentHashMap<>();
+  /** The executor the lanes run on. */
+  private final Executor                      base;
+  
+  /**
+   * Creates a keyed serial executor.
+   * 
+   * @param base
+   *          The executor the tasks should run on. Tasks that it rejects are
+   *          dropped, after calling {@link FairExecutor.Task#reject()} if they
+   *          are fair tasks.
+   */
+  KeyedSerialExecutor(Executor base) {
+    this.base = base;
+  }
+  
+  /**
+   * Submits a task. It'll run after every task previously submitted with the
+   * same key has finished.
+   * 
+   * @param key
+   *          The key to order the task by.
+   * @param task
+   *          The task.
+   */
+  void execute(long key, Runnable task) {
+    Long boxed = key;
+    for (;;) {
+      Lane lane = lanes.get(boxed);
+      if (lane == null) {
+        Lane fresh = new Lane(boxed);
+        lane = lanes.putIfAbsent(boxed, fresh);
+        if (lane == null) lane = fresh;
+      }
+      
+      int count = lane.count.get();
+      if (count < 0) {
+        // The lane just emptied out; clear it away and make a new one.
+        lanes.remove(boxed, lane);
+        continue;
+      }
+      if (!lane.count.compareAndSet(count, count + 1)) continue;
+      
+      lane.tasks.add(task);
+      if (count == 0) {
+        lane.group = groupOf(task, lane.group);
+        lane.schedule();
+      }
+      return;
+    }
+  }
+  
+  /**
+   * A task that may not be able to run as soon as it reaches the front of its
+   * lane.
+   */
+  interface Gated extends Runnable {
+    /**
+     * Checks whether the task can run, once it reaches the front of its lane.
+     * If it can't, the lane waits until the task calls <code>resume</code>,
+     * which it must do exactly once, when it can run. That may happen before
+     * this returns.
+     * 
+     * @param resume
+     *          Runs the lane again.
+     * @return Whether the task can run now.
+     */
+    boolean tryStart(Runnable resume);
+  }
+  
+  /**
+   * Gets the fair-scheduling group of a task.
+   * 
+   * @param task
+   *          The task.
+   * @param fallback
+   *          The group to use if the task doesn't have one.
+   * @return The group.
+   */
+  private static long groupOf(Runnable task, long fallback) {
+    return (task instanceof FairExecutor.Task) ? ((FairExecutor.Task) task).group() : fallback;
+  }
+  
+  /**
+   * The tasks waiting for a single key.
+   */
+  private final class Lane implements FairExecutor.Task {
+    /** The key of this lane. */
+    final Long                            key;
+    /** The waiting tasks. */
+    final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of tasks that have been submitted and not yet finished, or -1
+     * once the lane is dead.
+     */
+    final AtomicInteger                   count = new AtomicInteger();
+    /** The group of the task at the front of the lane. */
+    volatile long                         group = FairExecutor.DM_GROUP;
+    /** The task at the front, if it's taken out but hasn't run yet. */
+    volatile Runnable                     parked;
+    /** Resumes the lane, once its parked task is ready. */
+    final Runnable                        resumeLane = this::resume;
+    
+    Lane(Long key) {
+      this.key = key;
+    }
+    
+    /**
+     * Submits the lane again once the task at its front is ready.
+     */
+    void resume() {
+      group = groupOf(parked, group);
+      schedule();
+    }
+    
+    /**
+     * Submits the idle lane to the underlying executor. If the executor won't
+     * take it, its tasks are rejected.
+     */
+    void schedule() {
+      try {
+        base.execute(this);
+      } catch (RejectedExecutionException ex) {
+        reject();
+      }
+    }
+    
+    @Override
+    public long group() {
+      return group;
+    }
+    
+    @Override
+    public void reject() {
+      drain(false, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public void run() {
+      while (drain(true, BATCH_SIZE) == MORE) {
+        // Give other lanes a turn. If the executor won't take the lane back,
+        // its tasks were already accepted, so keep running them here.
+        Runnable head = tasks.peek();
+        if (head != null) group = groupOf(head, group);
+        try {
+          base.execute(this);
+          return;
+        } catch (RejectedExecutionException ex) {}
+      }
+    }
+    
+    /**
+     * Runs (or rejects) tasks from the front of the lane.
+     * 
+     * @param runTasks
+     *          Whether to run the tasks, rather than rejecting them.
+     * @param limit
+     *          The most tasks to take.
+     * @return {@link #EMPTY} if no tasks are left, {@link #MORE} if there are,
+     *         or {@link #PARKED} if the task at the front isn't ready to run.
+     */
+    int drain(boolean runTasks, int limit) {
+      for (int done = 0; done < limit; done++) {
+        Runnable task = parked;
+        if (task != null) {
+          parked = null;
+        } else {
+          // A submitter counts its task before adding it, so the task may not
+          // be visible quite yet.
+          while ((task = tasks.poll()) == null)
+            Thread.yield();
+          if (runTasks && task instanceof Gated) {
+            // The task may resume the lane before it even answers, so it has
+            // to be parked first.
+            parked = task;
+            if (!((Gated) task).tryStart(resumeLane)) return PARKED;
+            parked = null;
+          }
+        }
+        
+        try {
+          if (runTasks)
+            task.run();
+          else if (task instanceof FairExecutor.Task) ((FairExecutor.Task) task).reject();
+        } catch (Throwable ex) {
+          Thread th = Thread.currentThread();
+          th.getUncaughtExceptionHandler().uncaughtException(th, ex);
+        }
+        
+        if (count.decrementAndGet() == 0) {
+          // If someone adds a task now, they'll resubmit the lane themselves.
+          if (count.compareAndSet(0, -1)) lanes.remove(key, this);
+          return EMPTY;
+        }
+      }
+      return MORE;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package net.nixill.commands.objects;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable map from primitive longs (such as Discord IDs) to values, held
+ * in an open-addressing table so that a lookup neither boxes the key nor
+ * follows more than a pointer or two.
+ * <p>
+ * Changes return a new map and leave the old one alone. They copy the whole
+ * table, which is fine for things that are read on every message but changed
+ * only once in a while, and it means a map can be swapped in with a single
+ * write and read without any locking. Many changes at once should be made
+ * with {@link #withAll}, which copies the table only once.
+ * 
+ * @param <V>
+ *          The type of the values.
+ * @author Nixill
+ */
+final class LongMap<V> {
+  /** The smallest table size. */
+  private static final int        MIN_CAPACITY = 16;
+  /** A map with nothing in it. */
+  private static final LongMap<?> EMPTY        = new LongMap<>(new long[MIN_CAPACITY], new Object[MIN_CAPACITY], 0);
+  
+  /** The keys. A slot is empty if its value is <code>null</code>. */
+  private final long[]   keys;
+  /** The values, or <code>null</code> for empty slots. */
+  private final Object[] values;
+  /** The number of entries. */
+  private final int      size;
+  /** The slot index mask (the capacity minus one). */
+  private final int      mask;
+  
+  private LongMap(long[] keys, Object[] values, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.size = size;
+    this.mask = keys.length - 1;
+  }
+  
+  /**
+   * Gets a map with nothing in it.
+   * 
+   * @param <V>
+   *          The type of the values.
+   * @return The map.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> LongMap<V> empty() {
+    return (LongMap<V>) EMPTY;
+  }
+  
+  /**
+   * Mixes the bits of a key, so that IDs that share their low bits (as
+   * Discord's do) spread across the table.
+   * 
+   * @param key
+   *          The key.
+   * @return The hash.
+   */
+  static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+  
+  /**
+   * Finds the slot holding a key, or the empty slot where it would go.
+   * 
+   * @param key
+   *          The key.
+   * @return The slot.
+   */
+  private int slotOf(long key) {
+    int slot = hash(key) & mask;
+    while (values[slot] != null && keys[slot] != key)
+      slot = (slot + 1) & mask;
+    return slot;
+  }
+  
+  /**
+   * Gets the value for a key.
+   * 
+   * @param key
+   *          The key.
+   * @return The value, or <code>null</code> if there isn't one.
+   */
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    if (size == 0) return null;
+    return (V) values[slotOf(key)];
+  }
+  
+  /**
+   * Gets whether the map has nothing in it.
+   * 
+   * @return Whether the map is empty.
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+  
+  /**
+   * Gets all of the values in the map, in no particular order.
+   * 
+   * @param into
+   *          An array of the right type, used as in
+   *          {@link java.util.Collection#toArray(Object[])}.
+   * @return The values.
+   */
+  @SuppressWarnings("unchecked")
+  V[] values(V[] into) {
+    V[] out = (into.length >= size) ? into : Arrays.copyOf(into, size);
+    int i = 0;
+    for (Object val : values) {
+      if (val != null) out[i++] = (V) val;
+    }
+    return out;
+  }
+  
+  /**
+   * Gets a map with a key set to a value, or removed.
+   * 
+   * @param key
+   *          The key.
+   * @param value
+   *          The value, or <code>null</code> to remove the key.
+   * @return The new map.
+   */
+  LongMap<V> with(long key, V value) {
+    boolean present = get(key) != null;
+    int newSize = size + (present ? 0 : 1) - (value == null ? 1 : 0);
+    if (value == null && !present) return this;
+    
+    LongMap<V> out = sized(newSize);
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null && keys[i] != key) out.put(keys[i], values[i]);
+    }
+    if (value != null) out.put(key, value);
+    return out;
+  }
+  
+  /**
+   * Gets a map with many keys set to values, or removed, copying the table
+   * only once.
+   * 
+   * @param changes
+   *          The new values, by key. A <code>null</code> value removes the
+   *          key.
+   * @return The new map.
+   */
+  LongMap<V> withAll(Map<Long, ? extends V> changes) {
+    if (changes.isEmpty()) return this;
+    int newSize = size;
+    for (Map.Entry<Long, ? extends V> ent : changes.entrySet()) {
+      if (get(ent.getKey()) != null) newSize--;
+      if (ent.getValue() != null) newSize++;
+    }
+    
+    LongMap<V> out = sized(newSize);
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null && !changes.containsKey(keys[i])) out.put(keys[i], values[i]);
+    }
+    for (Map.Entry<Long, ? extends V> ent : changes.entrySet()) {
+      if (ent.getValue() != null) out.put(ent.getKey(), ent.getValue());
+    }
+    return out;
+  }
+  
+  /**
+   * Makes an empty map, still being built, with room for some entries.
+   * 
+   * @param size
+   *          The number of entries it will hold.
+   * @return The map.
+   */
+  private static <V> LongMap<V> sized(int size) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < size * 2)
+      capacity <<= 1;
+    return new LongMap<>(new long[capacity], new Object[capacity], size);
+  }
+  
+  /**
+   * Puts an entry into a map that's still being built.
+   * 
+   * @param key
+   *          The key.
+   * @param value
+   *          The value.
+   */
+  private void put(long key, Object value) {
+    int slot = slotOf(key);
+    keys[slot] = key;
+    values[slot] = value;
+  }
+}
@@ -0,0 +1,812 @@
+package net.nixill.commands.objects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import net.nixill.commands.enums.MentionSetting;
+
+/**
+ * A {@link GuildSettingsStore} that keeps settings in a memory-mapped file, so
+ * that they survive restarts. Opening the file only maps it; nothing is read
+ * per guild until that guild is looked up, so startup takes the same time
+ * however many guilds there are. Once a guild's record has been read, its
+ * settings are remembered, so later lookups only find its entry.
+ * <p>
+ * The file is a hash table of fixed-size entries, keyed by guild ID, after a
+ * header that holds the table's size and the names of every command any guild
+ * has turned off. Each entry holds two copies of the guild's record, each with
+ * a sequence number and a checksum. An update overwrites the older copy and
+ * flushes it to disk, so if the bot stops part way through a write, the
+ * half-written copy fails its checksum and the other one is used instead.
+ * A guild set back to the defaults keeps its entry until the table is next
+ * rebuilt. When the table gets half full, a new one without such entries
+ * (twice the size, if it needs to be) is written to a new file, which then
+ * replaces the old one.
+ * <p>
+ * Records have room for prefixes up to {@value #MAX_PREFIX_BYTES} bytes long
+ * (in UTF-8), and the file can name up to {@value #MAX_NAMES} commands that
+ * guilds have turned off, each up to {@value #NAME_BYTES} characters long.
+ * 
+ * @author Nixill
+ */
+public final class MappedGuildSettingsStore implements GuildSettingsStore {
+  /** The longest prefix a record can hold, in bytes. */
+  public static final int MAX_PREFIX_BYTES = 14;
+  /** How many command names the file can hold. */
+  public static final int MAX_NAMES        = 256;
+  /** The longest command name the file can hold. */
+  public static final int NAME_BYTES       = 32;
+  
+  /** The first four bytes of a settings file. */
+  private static final int MAGIC            = 0x4e584753;
+  /** The version of the file layout. */
+  private static final int FORMAT           = 1;
+  /** Where the header keeps the number of entries in the table. */
+  private static final int H_CAPACITY       = 8;
+  /** Where the header keeps the number of entries in use. */
+  private static final int H_USED           = 12;
+  /** Where the header keeps the bits of the ASCII characters prefixes start with. */
+  private static final int H_STARTS         = 16;
+  /** Where the header keeps its flags. */
+  private static final int H_FLAGS          = 32;
+  /** Where the header keeps the number of command names. */
+  private static final int H_NAME_COUNT     = 36;
+  /** Where the header keeps the number of guilds whose settings aren't the defaults. */
+  private static final int H_CUSTOMIZED     = 40;
+  /** Where the command names start. */
+  private static final int H_NAMES          = 64;
+  /** The size of the header. */
+  private static final int HEADER_SIZE      = H_NAMES + MAX_NAMES * NAME_BYTES;
+  /** The flag set when some prefix is empty or doesn't start with ASCII. */
+  private static final int FLAG_ANY_START   = 1;
+  
+  /** Where a record keeps its guild's ID. */
+  private static final int R_GUILD          = 0;
+  /** Where a record keeps its sequence number. */
+  private static final int R_SEQUENCE       = 8;
+  /** Where a record keeps its checksum. */
+  private static final int R_CHECKSUM       = 12;
+  /** Where a record keeps its mention setting. */
+  private static final int R_MENTIONS       = 16;
+  /** Where a record keeps its prefix's length, or -1 for none. */
+  private static final int R_PREFIX_LENGTH  = 17;
+  /** Where a record keeps its prefix. */
+  private static final int R_PREFIX         = 18;
+  /** Where a record keeps the bits of the commands it turns off. */
+  private static final int R_DISABLED       = 32;
+  /** The size of a record. */
+  private static final int RECORD_SIZE      = 64;
+  /** The size of an entry, which holds two copies of a record. */
+  private static final int ENTRY_SIZE       = RECORD_SIZE * 2;
+  /** The number of entries in a new file. */
+  private static final int MIN_CAPACITY     = 1024;
+  
+  /**
+   * Unmaps a mapped file right away, or does nothing if this Java can't. This
+   * isn't part of Java's API, so it's found once, by reflection.
+   */
+  private static final Consumer<MappedByteBuffer> UNMAPPER = findUnmapper();
+  
+  /**
+   * A single mapping of the file. Lookups hold on to the mapping while they
+   * read it, so that it's only unmapped once it's been replaced and nothing
+   * is reading it.
+   */
+  private static final class Table {
+    /** The mapped file. */
+    final MappedByteBuffer                    buf;
+    /** The number of entries. */
+    final int                                 capacity;
+    /** The settings read from each entry so far. */
+    final AtomicReferenceArray<GuildSettings> decoded;
+    /** How many lookups hold the mapping, plus one until it's replaced. */
+    final AtomicInteger                       holders = new AtomicInteger(1);
+    /** Whether the mapping has been released for good. */
+    volatile boolean                          released;
+    
+    Table(MappedByteBuffer buf, int capacity) {
+      this.buf = buf;
+      this.capacity = capacity;
+      this.decoded = new AtomicReferenceArray<>(capacity);
+    }
+    
+    /**
+     * Holds on to the mapping, unless it's already been released.
+     * 
+     * @return Whether the mapping can be read.
+     */
+    boolean hold() {
+      for (;;) {
+        int count = holders.get();
+        if (count == 0) return false;
+        if (holders.compareAndSet(count, count + 1)) return true;
+      }
+    }
+    
+    /**
+     * Lets go of the mapping, unmapping it if it's been replaced and nothing
+     * else holds it.
+     */
+    void letGo() {
+      if (holders.decrementAndGet() == 0) {
+        UNMAPPER.accept(buf);
+        released = true;
+      }
+    }
+  }
+  
+  /** The settings file. */
+  private final File        file;
+  /**
+   * The current mapping of the file, which is only replaced when the table is
+   * rebuilt. Changed settings reach lookups through its decoded settings.
+   */
+  private volatile Table    table;
+  /** The command names in the file, by their bit in records. */
+  private volatile String[] names;
+  /** The number of guilds whose settings aren't the defaults. */
+  private volatile int      customized;
+  
+  /**
+   * Opens a settings file, creating it if it doesn't exist yet.
+   * 
+   * @param file
+   *          The file.
+   * @throws IOException
+   *           If the file can't be opened or created, or isn't a settings
+   *           file.
+   */
+  public MappedGuildSettingsStore(File file) throws IOException {
+    this.file = file;
+    File temp = tempFile();
+    if (temp.exists()) Files.delete(temp.toPath());
+    
+    if (!file.exists() || file.length() == 0) {
+      table = create(file, MIN_CAPACITY, new long[2], 0, new String[0]);
+    } else {
+      table = open(file);
+    }
+    
+    ByteBuffer buf = table.buf;
+    int count = buf.getInt(H_NAME_COUNT);
+    String[] loaded = new String[count];
+    for (int i = 0; i < count; i++) {
+      loaded[i] = readName(buf, i);
+    }
+    names = loaded;
+    customized = buf.getInt(H_CUSTOMIZED);
+  }
+  
+  /**
+   * Get the file the settings are kept in.
+   * 
+   * @return The file.
+   */
+  public File getFile() {
+    return file;
+  }
+  
+  @Override
+  public GuildSettings get(long guildID) {
+    Table tab = hold();
+    try {
+      int entry = find(tab, guildID);
+      if (entry < 0) return null;
+      GuildSettings settings = settingsAt(tab, entry, guildID);
+      return (settings == null || settings.isDefault()) ? null : settings;
+    } finally {
+      tab.letGo();
+    }
+  }
+  
+  @Override
+  public synchronized void put(long guildID, GuildSettings settings) {
+    if (settings == null) settings = GuildSettings.DEFAULT;
+    byte[] rec = encode(guildID, settings);
+    Table tab = table;
+    int entry = find(tab, guildID);
+    GuildSettings before = (entry < 0) ? null : settingsAt(tab, entry, guildID);
+    boolean wasCustom = before != null && !before.isDefault();
+    boolean isCustom = !settings.isDefault();
+    if (!wasCustom && !isCustom) return;
+    
+    boolean claimed = false;
+    if (entry < 0) {
+      if ((tab.buf.getInt(H_USED) + 1) * 2 > tab.capacity) {
+        tab = rebuild(tab);
+        entry = find(tab, guildID);
+      }
+      entry = -entry - 1;
+      claimed = true;
+    }
+    MappedByteBuffer buf = tab.buf;
+    
+    // The count of customized guilds is raised before the record is written,
+    // and lowered after, so that if the bot stops in between, the count is
+    // only ever too high, which just means guilds are looked up for nothing.
+    if (isCustom && !wasCustom) setCustomized(buf, customized + 1);
+    addPrefixStart(buf, settings.getPrefix());
+    
+    // Overwrite whichever copy isn't the current one.
+    int base = HEADER_SIZE + entry * ENTRY_SIZE;
+    byte[] first = readRecord(buf, base);
+    byte[] second = readRecord(buf, base + RECORD_SIZE);
+    boolean firstValid = isValid(first, guildID);
+    boolean secondValid = isValid(second, guildID);
+    int at = base;
+    int sequence = 1;
+    if (firstValid && (!secondValid || sequenceOf(second) - sequenceOf(first) < 0)) {
+      at = base + RECORD_SIZE;
+      sequence = sequenceOf(first) + 1;
+    } else if (secondValid) {
+      sequence = sequenceOf(second) + 1;
+    }
+    ByteBuffer.wrap(rec).putInt(R_SEQUENCE, sequence);
+    seal(rec);
+    writeRecord(buf, at, rec);
+    buf.force();
+    tab.decoded.set(entry, settings);
+    
+    // The entry is only counted once its record is there. If the bot stops
+    // first, the entry is just left out of the count until the table is
+    // rebuilt.
+    if (claimed) buf.putInt(H_USED, buf.getInt(H_USED) + 1);
+    if (wasCustom && !isCustom) setCustomized(buf, customized - 1);
+    buf.force();
+  }
+  
+  @Override
+  public boolean isEmpty() {
+    return customized == 0;
+  }
+  
+  @Override
+  public BitSet getPrefixStarts() {
+    Table tab = hold();
+    try {
+      ByteBuffer buf = tab.buf;
+      if ((buf.getInt(H_FLAGS) & FLAG_ANY_START) != 0) return null;
+      return BitSet.valueOf(new long[] { buf.getLong(H_STARTS), buf.getLong(H_STARTS + 8) });
+    } finally {
+      tab.letGo();
+    }
+  }
+  
+  /**
+   * Holds on to the current mapping of the file, for reading.
+   * 
+   * @return The mapping, which must be let go of afterwards.
+   */
+  private Table hold() {
+    for (;;) {
+      Table tab = table;
+      if (tab.hold()) return tab;
+    }
+  }
+  
+  /**
+   * Sets the number of guilds whose settings aren't the defaults.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param count
+   *          The number.
+   */
+  private void setCustomized(ByteBuffer buf, int count) {
+    buf.putInt(H_CUSTOMIZED, count);
+    customized = count;
+  }
+  
+  /**
+   * Get the file a rebuilt table is written to before replacing the settings
+   * file.
+   * 
+   * @return The file.
+   */
+  private File tempFile() {
+    return new File(file.getPath() + ".tmp");
+  }
+  
+  /**
+   * Creates a settings file with an empty table, and maps it.
+   * 
+   * @param target
+   *          The file.
+   * @param capacity
+   *          The number of entries.
+   * @param starts
+   *          The bits of the ASCII characters prefixes start with.
+   * @param flags
+   *          The header flags.
+   * @param fileNames
+   *          The command names.
+   * @return The mapping.
+   * @throws IOException
+   *           If the file can't be written.
+   */
+  private static Table create(File target, int capacity, long[] starts, int flags, String[] fileNames)
+      throws IOException {
+    long size = HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+    try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+      raf.setLength(size);
+      MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buf.putInt(0, MAGIC);
+      buf.putInt(4, FORMAT);
+      buf.putInt(H_CAPACITY, capacity);
+      buf.putLong(H_STARTS, starts[0]);
+      buf.putLong(H_STARTS + 8, starts[1]);
+      buf.putInt(H_FLAGS, flags);
+      for (int i = 0; i < fileNames.length; i++) {
+        writeName(buf, i, fileNames[i]);
+      }
+      buf.putInt(H_NAME_COUNT, fileNames.length);
+      buf.force();
+      return new Table(buf, capacity);
+    }
+  }
+  
+  /**
+   * Maps an existing settings file.
+   * 
+   * @param target
+   *          The file.
+   * @return The mapping.
+   * @throws IOException
+   *           If the file can't be read, or isn't a settings file.
+   */
+  private static Table open(File target) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+      long size = raf.length();
+      if (size < HEADER_SIZE) throw new IOException(target + " is not a guild settings file.");
+      MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (buf.getInt(0) != MAGIC) throw new IOException(target + " is not a guild settings file.");
+      if (buf.getInt(4) != FORMAT) throw new IOException(target + " has an unknown format " + buf.getInt(4) + ".");
+      int capacity = buf.getInt(H_CAPACITY);
+      if (capacity <= 0 || Integer.bitCount(capacity) != 1 || size != HEADER_SIZE + (long) capacity * ENTRY_SIZE)
+        throw new IOException(target + " is damaged (its size doesn't match its header).");
+      return new Table(buf, capacity);
+    }
+  }
+  
+  /**
+   * Moves every customized guild's current record into a new table, and swaps
+   * it in. Guilds set back to the defaults are left out. The new table is
+   * twice the size of the old one, unless leaving them out makes enough room.
+   * 
+   * @param old
+   *          The current table.
+   * @return The new table.
+   */
+  private Table rebuild(Table old) {
+    ByteBuffer from = old.buf;
+    int capacity = old.capacity;
+    if ((customized + 1) * 4 > capacity) capacity *= 2;
+    File temp = tempFile();
+    Table fresh;
+    int used = 0;
+    try {
+      fresh = create(temp, capacity, new long[] { from.getLong(H_STARTS), from.getLong(H_STARTS + 8) },
+          from.getInt(H_FLAGS), names);
+      for (int entry = 0; entry < old.capacity; entry++) {
+        long guildID = guildAt(from, entry);
+        if (guildID == 0) continue;
+        byte[] rec = current(from, entry, guildID);
+        if (rec == null || decode(rec).isDefault()) continue;
+        int slot = -find(fresh, guildID) - 1;
+        writeRecord(fresh.buf, HEADER_SIZE + slot * ENTRY_SIZE, rec);
+        used++;
+      }
+      fresh.buf.putInt(H_USED, used);
+      fresh.buf.putInt(H_CUSTOMIZED, used);
+      fresh.buf.force();
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Couldn't rebuild the guild settings file " + file + ".", ex);
+    }
+    
+    // The old file can't be replaced while it's mapped on some systems
+    // (Windows), so the old mapping is released first. Lookups only hold it
+    // for a moment; any that started before the swap are waited for.
+    table = fresh;
+    customized = used;
+    old.letGo();
+    while (!old.released)
+      Thread.yield();
+    
+    try {
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Couldn't replace the guild settings file " + file + ".", ex);
+    }
+    return fresh;
+  }
+  
+  /**
+   * Finds a way to unmap files, which is different before and after Java 9.
+   * 
+   * @return The unmapper, which does nothing if neither way works.
+   */
+  private static Consumer<MappedByteBuffer> findUnmapper() {
+    try {
+      // Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      return buf -> {
+        try {
+          invokeCleaner.invoke(unsafe, buf);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+          // The mapping is released when it's garbage collected instead.
+        }
+      };
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      // Java 8
+    }
+    
+    try {
+      Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buf -> {
+        try {
+          Object cleaner = cleanerMethod.invoke(buf);
+          if (cleaner != null) clean.invoke(cleaner);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+          // The mapping is released when it's garbage collected instead.
+        }
+      };
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return buf -> {};
+    }
+  }
+  
+  /**
+   * Mixes the bits of a guild ID, so that IDs that share their low bits (as
+   * Discord's do) spread across the table.
+   * 
+   * @param key
+   *          The ID.
+   * @return The hash.
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+  
+  /**
+   * Get the guild an entry belongs to.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param entry
+   *          The entry.
+   * @return The guild's ID, or 0 if the entry is empty.
+   */
+  private static long guildAt(ByteBuffer buf, int entry) {
+    int base = HEADER_SIZE + entry * ENTRY_SIZE;
+    long guildID = buf.getLong(base + R_GUILD);
+    return (guildID != 0) ? guildID : buf.getLong(base + RECORD_SIZE + R_GUILD);
+  }
+  
+  /**
+   * Finds the entry for a guild.
+   * 
+   * @param tab
+   *          The table.
+   * @param guildID
+   *          The guild's ID.
+   * @return The entry, or if the guild has none, <code>-(entry + 1)</code> of
+   *         the empty entry where it would go.
+   */
+  private static int find(Table tab, long guildID) {
+    int mask = tab.capacity - 1;
+    int entry = hash(guildID) & mask;
+    for (;;) {
+      long here = guildAt(tab.buf, entry);
+      if (here == guildID) return entry;
+      if (here == 0) return -entry - 1;
+      entry = (entry + 1) & mask;
+    }
+  }
+  
+  /**
+   * Gets the settings in an entry, reading them from the file only the first
+   * time.
+   * 
+   * @param tab
+   *          The table.
+   * @param entry
+   *          The entry.
+   * @param guildID
+   *          The guild the entry belongs to.
+   * @return The settings, or <code>null</code> if neither copy of the record
+   *         is intact.
+   */
+  private GuildSettings settingsAt(Table tab, int entry, long guildID) {
+    GuildSettings settings = tab.decoded.get(entry);
+    if (settings != null) return settings;
+    
+    byte[] rec = current(tab.buf, entry, guildID);
+    if (rec == null) return null;
+    settings = decode(rec);
+    // If the guild's settings were changed meanwhile, the new ones win.
+    if (!tab.decoded.compareAndSet(entry, null, settings)) settings = tab.decoded.get(entry);
+    return settings;
+  }
+  
+  /**
+   * Gets the newer of an entry's two copies that's intact.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param entry
+   *          The entry.
+   * @param guildID
+   *          The guild the entry belongs to.
+   * @return The record, or <code>null</code> if neither copy is intact.
+   */
+  private static byte[] current(ByteBuffer buf, int entry, long guildID) {
+    int base = HEADER_SIZE + entry * ENTRY_SIZE;
+    byte[] first = readRecord(buf, base);
+    byte[] second = readRecord(buf, base + RECORD_SIZE);
+    boolean firstValid = isValid(first, guildID);
+    boolean secondValid = isValid(second, guildID);
+    if (firstValid && secondValid) return (sequenceOf(second) - sequenceOf(first) > 0) ? second : first;
+    if (firstValid) return first;
+    if (secondValid) return second;
+    return null;
+  }
+  
+  /**
+   * Copies a record out of the file.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param at
+   *          Where the record starts.
+   * @return The record.
+   */
+  private static byte[] readRecord(ByteBuffer buf, int at) {
+    byte[] rec = new byte[RECORD_SIZE];
+    for (int i = 0; i < RECORD_SIZE; i++) {
+      rec[i] = buf.get(at + i);
+    }
+    return rec;
+  }
+  
+  /**
+   * Copies a record into the file. The guild ID is written last, so that an
+   * entry is never claimed by a record that isn't there yet.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param at
+   *          Where the record starts.
+   * @param rec
+   *          The record.
+   */
+  private static void writeRecord(ByteBuffer buf, int at, byte[] rec) {
+    for (int i = R_SEQUENCE; i < RECORD_SIZE; i++) {
+      buf.put(at + i, rec[i]);
+    }
+    buf.putLong(at + R_GUILD, ByteBuffer.wrap(rec).getLong(R_GUILD));
+  }
+  
+  /**
+   * Get a record's sequence number.
+   * 
+   * @param rec
+   *          The record.
+   * @return The sequence number.
+   */
+  private static int sequenceOf(byte[] rec) {
+    return ByteBuffer.wrap(rec).getInt(R_SEQUENCE);
+  }
+  
+  /**
+   * Computes a record's checksum, which covers everything but the checksum
+   * itself.
+   * 
+   * @param rec
+   *          The record.
+   * @return The checksum.
+   */
+  private static int checksum(byte[] rec) {
+    CRC32 crc = new CRC32();
+    crc.update(rec, 0, R_CHECKSUM);
+    crc.update(rec, R_CHECKSUM + 4, RECORD_SIZE - R_CHECKSUM - 4);
+    return (int) crc.getValue();
+  }
+  
+  /**
+   * Stores a record's checksum in it.
+   * 
+   * @param rec
+   *          The record.
+   */
+  private static void seal(byte[] rec) {
+    ByteBuffer.wrap(rec).putInt(R_CHECKSUM, checksum(rec));
+  }
+  
+  /**
+   * Checks that a record is intact and belongs to a guild.
+   * 
+   * @param rec
+   *          The record.
+   * @param guildID
+   *          The guild's ID.
+   * @return Whether the record can be used.
+   */
+  private static boolean isValid(byte[] rec, long guildID) {
+    ByteBuffer view = ByteBuffer.wrap(rec);
+    return view.getLong(R_GUILD) == guildID && view.getInt(R_CHECKSUM) == checksum(rec);
+  }
+  
+  /**
+   * Turns a record into settings.
+   * 
+   * @param rec
+   *          The record, already checked to be intact.
+   * @return The settings.
+   */
+  private GuildSettings decode(byte[] rec) {
+    MentionSetting[] settings = MentionSetting.values();
+    int mentions = rec[R_MENTIONS];
+    MentionSetting mentionSetting = (mentions >= 0 && mentions < settings.length) ? settings[mentions] : null;
+    
+    int length = rec[R_PREFIX_LENGTH];
+    String prefix = (length < 0) ? null : new String(rec, R_PREFIX, length, StandardCharsets.UTF_8);
+    
+    List<String> disabled = new ArrayList<>();
+    String[] fileNames = names;
+    for (int bit = 0; bit < fileNames.length; bit++) {
+      if ((rec[R_DISABLED + bit / 8] & (1 << (bit % 8))) != 0) disabled.add(fileNames[bit]);
+    }
+    return new GuildSettings(prefix, mentionSetting, disabled);
+  }
+  
+  /**
+   * Turns settings into a record, without its sequence number or checksum.
+   * Adds the names of any newly turned-off commands to the file.
+   * 
+   * @param guildID
+   *          The guild's ID.
+   * @param settings
+   *          The settings.
+   * @return The record.
+   */
+  private byte[] encode(long guildID, GuildSettings settings) {
+    byte[] rec = new byte[RECORD_SIZE];
+    ByteBuffer.wrap(rec).putLong(R_GUILD, guildID);
+    rec[R_MENTIONS] = (byte) settings.getMentionSetting().ordinal();
+    
+    String prefix = settings.getPrefix();
+    if (prefix == null) {
+      rec[R_PREFIX_LENGTH] = -1;
+    } else {
+      byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > MAX_PREFIX_BYTES)
+        throw new IllegalArgumentException("Prefixes can't be longer than " + MAX_PREFIX_BYTES + " bytes.");
+      rec[R_PREFIX_LENGTH] = (byte) bytes.length;
+      System.arraycopy(bytes, 0, rec, R_PREFIX, bytes.length);
+    }
+    
+    for (String name : settings.getDisabledCommands()) {
+      int bit = nameIndex(name);
+      rec[R_DISABLED + bit / 8] |= 1 << (bit % 8);
+    }
+    return rec;
+  }
+  
+  /**
+   * Gets the bit for a command name, adding the name to the file if it isn't
+   * there yet.
+   * 
+   * @param name
+   *          The name.
+   * @return The bit.
+   */
+  private int nameIndex(String name) {
+    String[] fileNames = names;
+    int index = Arrays.asList(fileNames).indexOf(name);
+    if (index >= 0) return index;
+    
+    if (name.length() > NAME_BYTES)
+      throw new IllegalArgumentException("Command names can't be longer than " + NAME_BYTES + " characters.");
+    if (fileNames.length >= MAX_NAMES)
+      throw new IllegalStateException("Guilds have already turned off " + MAX_NAMES + " different commands.");
+    
+    // The name is written before the count, so that a name cut off part way
+    // through is never counted.
+    ByteBuffer buf = table.buf;
+    writeName(buf, fileNames.length, name);
+    buf.putInt(H_NAME_COUNT, fileNames.length + 1);
+    fileNames = Arrays.copyOf(fileNames, fileNames.length + 1);
+    fileNames[fileNames.length - 1] = name;
+    names = fileNames;
+    return fileNames.length - 1;
+  }
+  
+  /**
+   * Reads a command name from the header.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param index
+   *          The name's bit.
+   * @return The name.
+   */
+  private static String readName(ByteBuffer buf, int index) {
+    int at = H_NAMES + index * NAME_BYTES;
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < NAME_BYTES; i++) {
+      byte b = buf.get(at + i);
+      if (b == 0) break;
+      name.append((char) b);
+    }
+    return name.toString();
+  }
+  
+  /**
+   * Writes a command name into the header.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param index
+   *          The name's bit.
+   * @param name
+   *          The name, which is no longer than {@link #NAME_BYTES} and only
+   *          uses ASCII (as all command names do).
+   */
+  private static void writeName(ByteBuffer buf, int index, String name) {
+    int at = H_NAMES + index * NAME_BYTES;
+    for (int i = 0; i < NAME_BYTES; i++) {
+      buf.put(at + i, (i < name.length()) ? (byte) name.charAt(i) : 0);
+    }
+  }
+  
+  /**
+   * Records in the header the character a prefix starts with.
+   * 
+   * @param buf
+   *          The mapped file.
+   * @param prefix
+   *          The prefix, or <code>null</code>.
+   */
+  private static void addPrefixStart(ByteBuffer buf, String prefix) {
+    if (prefix == null) return;
+    if (prefix.isEmpty() || prefix.charAt(0) >= 128) {
+      buf.putInt(H_FLAGS, buf.getInt(H_FLAGS) | FLAG_ANY_START);
+    } else {
+      int c = prefix.charAt(0);
+      int at = H_STARTS + (c / 64) * 8;
+      buf.putLong(at, buf.getLong(at) | (1L << (c % 64)));
+    }
+  }
+}
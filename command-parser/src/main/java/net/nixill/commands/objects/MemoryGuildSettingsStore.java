@@ -0,0 +1,60 @@
+package net.nixill.commands.objects;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link GuildSettingsStore} that keeps settings in memory, so that they last
+ * only as long as the bot runs. This is what a {@link CommandReader} uses
+ * until it's given another store.
+ * <p>
+ * The settings are held in a {@link LongMap}, which is replaced as a whole on
+ * every change, so looking a guild up never locks or boxes its ID. Each
+ * {@link #put} copies the whole map, so many guilds (loaded at startup, for
+ * example) should be saved together with {@link #putAll}, which copies it
+ * only once.
+ * 
+ * @author Nixill
+ */
+public final class MemoryGuildSettingsStore implements GuildSettingsStore {
+  /** The settings, by guild ID. */
+  private volatile LongMap<GuildSettings> settings = LongMap.empty();
+  
+  @Override
+  public GuildSettings get(long guildID) {
+    return settings.get(guildID);
+  }
+  
+  @Override
+  public synchronized void put(long guildID, GuildSettings newSettings) {
+    if (newSettings != null && newSettings.isDefault()) newSettings = null;
+    settings = settings.with(guildID, newSettings);
+  }
+  
+  @Override
+  public synchronized void putAll(Map<Long, GuildSettings> newSettings) {
+    HashMap<Long, GuildSettings> changes = new HashMap<>(newSettings);
+    for (Map.Entry<Long, GuildSettings> ent : changes.entrySet()) {
+      if (ent.getValue() != null && ent.getValue().isDefault()) ent.setValue(null);
+    }
+    settings = settings.withAll(changes);
+  }
+  
+  @Override
+  public boolean isEmpty() {
+    return settings.isEmpty();
+  }
+  
+  @Override
+  public BitSet getPrefixStarts() {
+    BitSet starts = new BitSet(128);
+    for (GuildSettings guild : settings.values(new GuildSettings[0])) {
+      String prefix = guild.getPrefix();
+      if (prefix == null) continue;
+      if (prefix.isEmpty()) return null;
+      starts.set(prefix.charAt(0));
+    }
+    return starts;
+  }
+}
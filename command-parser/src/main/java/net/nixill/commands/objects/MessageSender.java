@@ -58,7 +58,7 @@ public class MessageSender {
     return send(chan, msg, new IRequest<IMessage>() {
       @Override
       public IMessage request() {
-        return user.getOrCreatePMChannel().sendMessage(msg);
+        return DmChannelCache.SHARED.get(user).sendMessage(msg);
       }
     });
   }
@@ -86,7 +86,9 @@ public class MessageSender {
           return chnl.sendMessage(message);
         } catch (DiscordException ex) {
           // do nothing, since I can't see stack traces and if something's going
-          // wrong the bot can't pm me
+          // wrong the bot can't pm me; but if it was a DM, ask for the channel
+          // again next time
+          DmChannelCache.SHARED.invalidate(chnl);
         } catch (MissingPermissionsException ex) {
           return pmRun.request();
         }
@@ -131,7 +133,7 @@ public class MessageSender {
     return send(chan, msg, new IRequest<IMessage>() {
       @Override
       public IMessage request() {
-        return user.getOrCreatePMChannel().sendMessage(msg);
+        return DmChannelCache.SHARED.get(user).sendMessage(msg);
       }
     });
   }
@@ -159,7 +161,9 @@ public class MessageSender {
           return chnl.sendMessage(message);
         } catch (DiscordException ex) {
           // do nothing, since I can't see stack traces and if something's going
-          // wrong the bot can't pm me
+          // wrong the bot can't pm me; but if it was a DM, ask for the channel
+          // again next time
+          DmChannelCache.SHARED.invalidate(chnl);
         } catch (MissingPermissionsException ex) {
           return pmRun.request();
         }
@@ -242,14 +246,14 @@ public class MessageSender {
    */
   public static void delete(IMessage msg) {
     RequestBuffer.request(() -> {
-      IUser us = CommandReader.getClient().getOurUser();
       if (msg != null) {
+        IUser us = msg.getClient().getOurUser();
         if (msg.getAuthor().equals(us)) {
           msg.delete();
         } else {
           IChannel chan = msg.getChannel();
           if (chan.isPrivate()) return;
-          if (chan.getModifiedPermissions(us).contains(Permissions.MANAGE_MESSAGES)) msg.delete();
+          if (PermissionCache.SHARED.has(chan, us, Permissions.MANAGE_MESSAGES)) msg.delete();
         }
       }
     });
@@ -0,0 +1,510 @@
+package net.nixill.commands.objects;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.exceptions.InvalidRestrictionError;
+
+/**
+ * A <code>@</code>{@link Restrict} condition on a number, as understood by the
+ * built-in number deserializers, read once rather than every time a number is
+ * checked against it.
+ * <p>
+ * A condition is made of clauses joined with <code>&amp;</code> (all of which
+ * must be met) and <code>|</code> (any of which may be met), where
+ * <code>&amp;</code> is applied last. Each clause is a comparison
+ * (<code>&gt;</code>, <code>&gt;=</code>, <code>&lt;</code>,
+ * <code>&lt;=</code>, or <code>=</code>), a divisibility check
+ * (<code>%</code>), or a power check (<code>^</code>), followed by a number.
+ * Clauses can be inverted with a leading <code>!</code>. The keywords
+ * <code>positive</code>, <code>negative</code>, <code>non-positive</code>,
+ * <code>non-negative</code>, <code>even</code>, and <code>odd</code> may be
+ * used as clauses too.
+ * <p>
+ * Every comparison that stands alone between <code>&amp;</code>s is folded
+ * into a single range, so most conditions are checked with two comparisons.
+ * Everything else is kept as a flat list of clauses.
+ * 
+ * @author Nixill
+ */
+final class NumericCondition {
+  /** Conditions read for whole numbers, by their text. */
+  private static final ConcurrentHashMap<String, NumericCondition> WHOLE   = new ConcurrentHashMap<>();
+  /** Conditions read for decimal numbers, by their text. */
+  private static final ConcurrentHashMap<String, NumericCondition> DECIMAL = new ConcurrentHashMap<>();
+  
+  /** The clause operators. */
+  private static final byte GT = 0, GE = 1, LT = 2, LE = 3, EQ = 4, MOD = 5, POW = 6;
+  
+  /** Whether the condition is on whole numbers. */
+  private final boolean   integral;
+  /** The lowest whole number in the range. */
+  private long            min = Long.MIN_VALUE;
+  /** The highest whole number in the range. */
+  private long            max = Long.MAX_VALUE;
+  /** The lowest decimal number in the range. */
+  private double          low = Double.NEGATIVE_INFINITY;
+  /** The highest decimal number in the range. */
+  private double          high = Double.POSITIVE_INFINITY;
+  /** The operator of each remaining clause. */
+  private final byte[]    ops;
+  /** Whether each remaining clause is inverted. */
+  private final boolean[] inverted;
+  /**
+   * The number of each remaining clause, for whole numbers. Power checks keep
+   * their base.
+   */
+  private final long[]    longs;
+  /**
+   * The number of each remaining clause, for decimal numbers. Power checks
+   * keep the logarithm of their base.
+   */
+  private final double[]  doubles;
+  /** The index after the last clause of each group joined with <code>|</code>. */
+  private final int[]     ends;
+  
+  /**
+   * Gets a restriction's condition for whole numbers, reading it if it hasn't
+   * been read before.
+   * 
+   * @param rest
+   *          The restriction, or <code>null</code>.
+   * @return The condition, or <code>null</code> if there's no restriction.
+   * @throws InvalidRestrictionError
+   *           If the condition isn't valid.
+   */
+  static NumericCondition forLong(Restrict rest) {
+    if (rest == null) return null;
+    NumericCondition cond = WHOLE.get(rest.value());
+    return (cond != null) ? cond : WHOLE.computeIfAbsent(rest.value(), text -> new NumericCondition(text, true));
+  }
+  
+  /**
+   * Gets a restriction's condition for decimal numbers, reading it if it
+   * hasn't been read before.
+   * 
+   * @param rest
+   *          The restriction, or <code>null</code>.
+   * @return The condition, or <code>null</code> if there's no restriction.
+   * @throws InvalidRestrictionError
+   *           If the condition isn't valid.
+   */
+  static NumericCondition forDouble(Restrict rest) {
+    if (rest == null) return null;
+    NumericCondition cond = DECIMAL.get(rest.value());
+    return (cond != null) ? cond : DECIMAL.computeIfAbsent(rest.value(), text -> new NumericCondition(text, false));
+  }
+  
+  /**
+   * Reads a parameter's restriction ahead of time, if the parameter is a
+   * number (or an array of numbers), so that invalid conditions are found
+   * when the command is registered rather than when it's first used.
+   * 
+   * @param type
+   *          The type of the parameter.
+   * @param rest
+   *          The parameter's restriction, or <code>null</code>.
+   * @throws InvalidRestrictionError
+   *           If the condition isn't valid.
+   */
+  static void compile(Class<?> type, Restrict rest) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type == Double.TYPE || type == Double.class || type == Float.TYPE || type == Float.class)
+      forDouble(rest);
+    else if (type == Long.TYPE || type == Long.class || type == Integer.TYPE || type == Integer.class
+        || type == Short.TYPE || type == Short.class || type == Byte.TYPE || type == Byte.class)
+      forLong(rest);
+  }
+  
+  /**
+   * Reads a condition.
+   * 
+   * @param condition
+   *          The condition's text.
+   * @param integral
+   *          Whether the condition is on whole numbers.
+   * @throws InvalidRestrictionError
+   *           If the condition isn't valid.
+   */
+  private NumericCondition(String condition, boolean integral) {
+    this.integral = integral;
+    
+    StringBuilder compact = new StringBuilder(condition.length());
+    for (int i = 0; i < condition.length(); i++) {
+      char chr = condition.charAt(i);
+      if (chr != ' ' && chr != '\t' && chr != '\n' && chr != '\r') compact.append(chr);
+    }
+    
+    String[] ands = compact.toString().split("&", -1);
+    int count = 0;
+    for (String and : ands) {
+      count += and.split("\\|", -1).length;
+    }
+    
+    byte[] ops = new byte[count];
+    boolean[] inverted = new boolean[count];
+    long[] longs = new long[count];
+    double[] doubles = new double[count];
+    int[] ends = new int[ands.length];
+    int clauses = 0;
+    int groups = 0;
+    
+    for (String and : ands) {
+      String[] ors = and.split("\\|", -1);
+      int first = clauses;
+      for (String or : ors) {
+        readClause(or, clauses, ops, inverted, longs, doubles);
+        clauses++;
+      }
+      
+      // A lone comparison narrows the range instead of being kept.
+      if (clauses - first == 1 && narrow(ops[first], inverted[first], longs[first], doubles[first])) {
+        clauses = first;
+      } else {
+        ends[groups++] = clauses;
+      }
+    }
+    
+    this.ops = Arrays.copyOf(ops, clauses);
+    this.inverted = Arrays.copyOf(inverted, clauses);
+    this.longs = Arrays.copyOf(longs, clauses);
+    this.doubles = Arrays.copyOf(doubles, clauses);
+    this.ends = Arrays.copyOf(ends, groups);
+  }
+  
+  /**
+   * Reads a single clause into the given slot of the clause arrays.
+   * 
+   * @param clause
+   *          The clause's text, without whitespace.
+   * @param index
+   *          The slot to fill.
+   * @param ops
+   *          The clause operators.
+   * @param inverted
+   *          Whether each clause is inverted.
+   * @param longs
+   *          The whole number of each clause.
+   * @param doubles
+   *          The decimal number of each clause.
+   * @throws InvalidRestrictionError
+   *           If the clause isn't valid.
+   */
+  private void readClause(String clause, int index, byte[] ops, boolean[] inverted, long[] longs,
+      double[] doubles) {
+    String text = clause;
+    switch (clause.toLowerCase().replace("-", "")) {
+      case "positive":
+        text = ">0";
+        break;
+      case "negative":
+        text = "<0";
+        break;
+      case "nonpositive":
+        text = "<=0";
+        break;
+      case "nonnegative":
+        text = ">=0";
+        break;
+      case "even":
+        text = "%2";
+        break;
+      case "odd":
+        text = "!%2";
+        break;
+    }
+    
+    int pos = 0;
+    boolean invert = text.startsWith("!");
+    if (invert) pos++;
+    
+    byte op;
+    if (text.startsWith(">=", pos) || text.startsWith("<=", pos)) {
+      op = (text.charAt(pos) == '>') ? GE : LE;
+      pos += 2;
+    } else if (pos < text.length()) {
+      switch (text.charAt(pos)) {
+        case '>':
+          op = GT;
+          break;
+        case '<':
+          op = LT;
+          break;
+        case '=':
+          op = EQ;
+          break;
+        case '%':
+          op = MOD;
+          break;
+        case '^':
+          op = POW;
+          break;
+        default:
+          throw invalid(clause);
+      }
+      pos++;
+    } else {
+      throw invalid(clause);
+    }
+    
+    String number = text.substring(pos);
+    if (!isNumber(number)) throw invalid(clause);
+    
+    long whole = 0;
+    double decimal;
+    try {
+      if (integral) {
+        whole = Long.parseLong(number);
+        decimal = whole;
+      } else {
+        decimal = Double.parseDouble(number);
+        if (Double.isInfinite(decimal)) throw invalid(clause);
+      }
+    } catch (NumberFormatException ex) {
+      throw invalid(clause);
+    }
+    
+    // Dividing by zero never works, and only some bases have powers at all.
+    if (op == MOD && decimal == 0) throw invalid(clause);
+    if (op == POW) {
+      if (integral ? whole < 2 : (decimal <= 0 || decimal == 1)) throw invalid(clause);
+      decimal = Math.log(decimal);
+    }
+    
+    ops[index] = op;
+    inverted[index] = invert;
+    longs[index] = whole;
+    doubles[index] = decimal;
+  }
+  
+  /**
+   * Checks whether text is a number this condition can use: an optional minus
+   * sign and digits, and for decimal conditions, an optional decimal point.
+   * 
+   * @param text
+   *          The text.
+   * @return Whether it's a number.
+   */
+  private boolean isNumber(String text) {
+    int pos = text.startsWith("-") ? 1 : 0;
+    boolean digits = false;
+    boolean point = false;
+    for (; pos < text.length(); pos++) {
+      char chr = text.charAt(pos);
+      if (chr >= '0' && chr <= '9')
+        digits = true;
+      else if (chr == '.' && !integral && !point)
+        point = true;
+      else
+        return false;
+    }
+    return digits;
+  }
+  
+  /**
+   * Narrows the range by a comparison, if the clause is one that can be
+   * folded into it.
+   * 
+   * @param op
+   *          The clause's operator.
+   * @param invert
+   *          Whether the clause is inverted.
+   * @param whole
+   *          The clause's whole number.
+   * @param decimal
+   *          The clause's decimal number.
+   * @return Whether the range was narrowed, so that the clause isn't needed.
+   */
+  private boolean narrow(byte op, boolean invert, long whole, double decimal) {
+    if (invert) {
+      switch (op) {
+        case GT:
+          op = LE;
+          break;
+        case GE:
+          op = LT;
+          break;
+        case LT:
+          op = GE;
+          break;
+        case LE:
+          op = GT;
+          break;
+        default:
+          return false;
+      }
+    }
+    
+    if (!integral) {
+      switch (op) {
+        case GT:
+          low = Math.max(low, Math.nextUp(decimal));
+          return true;
+        case GE:
+          low = Math.max(low, decimal);
+          return true;
+        case LT:
+          high = Math.min(high, Math.nextDown(decimal));
+          return true;
+        case LE:
+          high = Math.min(high, decimal);
+          return true;
+        case EQ:
+          low = Math.max(low, decimal);
+          high = Math.min(high, decimal);
+          return true;
+        default:
+          return false;
+      }
+    }
+    
+    // Whole numbers have nothing between n and n + 1, so strict comparisons
+    // become inclusive ones, unless there's nothing past the limit at all.
+    if (op == GT) {
+      if (whole == Long.MAX_VALUE) return empty();
+      op = GE;
+      whole++;
+    } else if (op == LT) {
+      if (whole == Long.MIN_VALUE) return empty();
+      op = LE;
+      whole--;
+    }
+    switch (op) {
+      case GE:
+        min = Math.max(min, whole);
+        return true;
+      case LE:
+        max = Math.min(max, whole);
+        return true;
+      case EQ:
+        min = Math.max(min, whole);
+        max = Math.min(max, whole);
+        return true;
+      default:
+        return false;
+    }
+  }
+  
+  /**
+   * Empties the range, so that no number meets the condition.
+   * 
+   * @return <code>true</code>, as the clause isn't needed.
+   */
+  private boolean empty() {
+    min = Long.MAX_VALUE;
+    max = Long.MIN_VALUE;
+    return true;
+  }
+  
+  /**
+   * Checks whether a whole number meets the condition.
+   * 
+   * @param in
+   *          The number.
+   * @return Whether it meets the condition.
+   */
+  boolean test(long in) {
+    if (in < min || in > max) return false;
+    int index = 0;
+    for (int end : ends) {
+      boolean met = false;
+      for (; index < end && !met; index++) {
+        met = meets(index, in) != inverted[index];
+      }
+      if (!met) return false;
+      index = end;
+    }
+    return true;
+  }
+  
+  /**
+   * Checks whether a decimal number meets the condition.
+   * 
+   * @param in
+   *          The number.
+   * @return Whether it meets the condition.
+   */
+  boolean test(double in) {
+    if (!(in >= low && in <= high)) return false;
+    int index = 0;
+    for (int end : ends) {
+      boolean met = false;
+      for (; index < end && !met; index++) {
+        met = meets(index, in) != inverted[index];
+      }
+      if (!met) return false;
+      index = end;
+    }
+    return true;
+  }
+  
+  /**
+   * Checks a whole number against a single clause, ignoring inversion.
+   * 
+   * @param index
+   *          The clause.
+   * @param in
+   *          The number.
+   * @return Whether it meets the clause.
+   */
+  private boolean meets(int index, long in) {
+    long number = longs[index];
+    switch (ops[index]) {
+      case GT:
+        return in > number;
+      case GE:
+        return in >= number;
+      case LT:
+        return in < number;
+      case LE:
+        return in <= number;
+      case EQ:
+        return in == number;
+      case MOD:
+        return in % number == 0;
+      default:
+        if (in < 1) return false;
+        while (in % number == 0) {
+          in /= number;
+        }
+        return in == 1;
+    }
+  }
+  
+  /**
+   * Checks a decimal number against a single clause, ignoring inversion.
+   * 
+   * @param index
+   *          The clause.
+   * @param in
+   *          The number.
+   * @return Whether it meets the clause.
+   */
+  private boolean meets(int index, double in) {
+    double number = doubles[index];
+    switch (ops[index]) {
+      case GT:
+        return in > number;
+      case GE:
+        return in >= number;
+      case LT:
+        return in < number;
+      case LE:
+        return in <= number;
+      case EQ:
+        return in == number;
+      case MOD:
+        return in % number == 0;
+      default:
+        double log = Math.log(in) / number;
+        return log == Math.floor(log);
+    }
+  }
+  
+  private static InvalidRestrictionError invalid(String clause) {
+    return new InvalidRestrictionError("The condition " + clause + " is not valid.");
+  }
+}
@@ -0,0 +1,48 @@
+package net.nixill.commands.objects;
+
+import net.nixill.commands.annotations.Restrict;
+
+/**
+ * Describes a single user-supplied parameter of a command method, as passed to
+ * {@link ArgumentDeserializer}s. One is created for each parameter when the
+ * command is registered.
+ * 
+ * @author Nixill
+ */
+public final class ParameterSpec {
+  /** The type of the parameter. */
+  private final Class<?> type;
+  /** The parameter's restriction. */
+  private final Restrict restriction;
+  
+  /**
+   * Creates a parameter spec.
+   * 
+   * @param type
+   *          The type of the parameter.
+   * @param restriction
+   *          The parameter's restriction, or <code>null</code>.
+   */
+  ParameterSpec(Class<?> type, Restrict restriction) {
+    this.type = type;
+    this.restriction = restriction;
+  }
+  
+  /**
+   * Get the declared type of the parameter.
+   * 
+   * @return The type.
+   */
+  public Class<?> getType() {
+    return type;
+  }
+  
+  /**
+   * Get the <code>@</code>{@link Restrict} tag passed to the parameter.
+   * 
+   * @return The restriction, or <code>null</code> if there isn't one.
+   */
+  public Restrict getRestriction() {
+    return restriction;
+  }
+}
@@ -0,0 +1,122 @@
+package net.nixill.commands.objects;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.exceptions.InvalidRestrictionError;
+
+/**
+ * Remembers compiled regexes, so that <code>@</code>{@link Restrict} regexes
+ * aren't compiled again every time a parameter is read (which
+ * {@link String#matches} would do).
+ * <p>
+ * The regexes of registered command parameters are compiled when the command
+ * is registered, and kept for as long as the bot runs. Any other regex (such
+ * as one a custom deserializer passes to the built-in ones) is kept in a
+ * limited space, forgetting the one used least recently when it's full.
+ * 
+ * @author Nixill
+ */
+final class PatternCache {
+  /** The cache used by the built-in deserializers. */
+  static final PatternCache SHARED = new PatternCache(256);
+  
+  /** The regexes of registered parameters. */
+  private final ConcurrentHashMap<String, Pattern> registered = new ConcurrentHashMap<>();
+  /** Other regexes, least recently used first. */
+  private final LinkedHashMap<String, Pattern>     recent;
+  
+  /**
+   * Creates a pattern cache.
+   * 
+   * @param capacity
+   *          How many regexes to remember at most, besides those of registered
+   *          parameters.
+   */
+  PatternCache(int capacity) {
+    this.recent = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+  
+  /**
+   * Gets the regex for a character restriction, which lists the allowed
+   * characters as a regex character class would.
+   * 
+   * @param rest
+   *          The restriction.
+   * @return The regex.
+   */
+  static String characterClass(Restrict rest) {
+    return "[" + rest.value() + "]";
+  }
+  
+  /**
+   * Gets a compiled regex, compiling it if it isn't remembered.
+   * 
+   * @param regex
+   *          The regex.
+   * @return The compiled regex.
+   * @throws PatternSyntaxException
+   *           If the regex isn't valid.
+   */
+  Pattern get(String regex) {
+    Pattern pattern = registered.get(regex);
+    if (pattern != null) return pattern;
+    synchronized (recent) {
+      pattern = recent.get(regex);
+    }
+    if (pattern != null) return pattern;
+    
+    // Compiling can take a while, so it's done without holding the lock.
+    pattern = Pattern.compile(regex);
+    synchronized (recent) {
+      recent.put(regex, pattern);
+    }
+    return pattern;
+  }
+  
+  /**
+   * Compiles a parameter's restriction ahead of time, if the parameter is one
+   * the built-in deserializers read a regex restriction for (a string,
+   * character, character array, or matcher, or an array of them). The regex is
+   * then kept for as long as the bot runs.
+   * 
+   * @param type
+   *          The type of the parameter.
+   * @param rest
+   *          The parameter's restriction.
+   * @throws InvalidRestrictionError
+   *           If the regex isn't valid.
+   */
+  void compile(Class<?> type, Restrict rest) {
+    while (type.isArray() && type != char[].class) {
+      type = type.getComponentType();
+    }
+    
+    String regex;
+    if (type == String.class || type == Matcher.class || type == char[].class)
+      regex = rest.value();
+    else if (type == Character.TYPE || type == Character.class)
+      regex = characterClass(rest);
+    else
+      return;
+    
+    if (registered.containsKey(regex)) return;
+    try {
+      registered.put(regex, Pattern.compile(regex));
+    } catch (PatternSyntaxException ex) {
+      throw new InvalidRestrictionError("The restriction " + rest.value() + " is not a valid regex.");
+    }
+  }
+}
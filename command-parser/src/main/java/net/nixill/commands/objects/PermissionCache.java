@@ -0,0 +1,168 @@
+package net.nixill.commands.objects;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IGuild;
+import sx.blah.discord.handle.obj.IUser;
+import sx.blah.discord.handle.obj.Permissions;
+
+/**
+ * Remembers what users are allowed to do in channels, so that working it out
+ * (which means going through all of the user's roles and the channel's
+ * overwrites) is only done once for people who use commands repeatedly.
+ * <p>
+ * Each channel and user pair hashes to a single slot, which holds the last
+ * pair to land there along with its permissions as a bitmask. Checking a
+ * permission is a single array read; a pair that finds someone else in its
+ * slot just works the permissions out again and takes the slot over.
+ * <p>
+ * Rather than finding and removing entries when permissions change, every
+ * guild has an epoch number (shared with other guilds whose IDs hash the
+ * same way), which each entry records when it's made. Role, member, channel,
+ * and guild updates bump the guild's epoch, and entries from an older epoch
+ * are ignored. The {@link CommandReader} does this from the events Discord4J
+ * sends it.
+ * <p>
+ * Channel and user IDs are unique across all of Discord, so one cache is
+ * shared by every client in the process.
+ * 
+ * @author Nixill
+ */
+final class PermissionCache {
+  /** The cache used by command readers and the {@link MessageSender}. */
+  static final PermissionCache SHARED = new PermissionCache(4096, 1024);
+  
+  /**
+   * A channel and user pair with the user's permissions.
+   */
+  private static final class Entry {
+    /** The channel's ID. */
+    final long channel;
+    /** The user's ID. */
+    final long user;
+    /** The epoch of the channel's guild when the permissions were found. */
+    final int  epoch;
+    /** The permissions, with one bit for each by its ordinal. */
+    final long bits;
+    
+    Entry(long channel, long user, int epoch, long bits) {
+      this.channel = channel;
+      this.user = user;
+      this.epoch = epoch;
+      this.bits = bits;
+    }
+  }
+  
+  /** The entries. */
+  private final AtomicReferenceArray<Entry> slots;
+  /** The epochs of the guilds, by hash. */
+  private final AtomicIntegerArray          epochs;
+  
+  /**
+   * Creates a permission cache.
+   * 
+   * @param slots
+   *          The number of channel and user pairs to remember, which must be a
+   *          power of two.
+   * @param stripes
+   *          The number of guild epochs, which must be a power of two.
+   */
+  PermissionCache(int slots, int stripes) {
+    this.slots = new AtomicReferenceArray<>(slots);
+    this.epochs = new AtomicIntegerArray(stripes);
+  }
+  
+  /**
+   * Mixes the bits of a key, so that IDs that share their low bits (as
+   * Discord's do) spread across the table.
+   * 
+   * @param key
+   *          The key.
+   * @return The hash.
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+  
+  /**
+   * Gets the epoch stripe for a guild.
+   * 
+   * @param guild
+   *          The guild, or <code>null</code> for direct messages.
+   * @return The index of its epoch.
+   */
+  private int stripeOf(IGuild guild) {
+    return (guild == null) ? 0 : hash(guild.getLongID()) & (epochs.length() - 1);
+  }
+  
+  /**
+   * Checks whether a user has a permission in a channel.
+   * 
+   * @param channel
+   *          The channel.
+   * @param user
+   *          The user.
+   * @param perm
+   *          The permission.
+   * @return Whether the user has the permission.
+   */
+  boolean has(IChannel channel, IUser user, Permissions perm) {
+    return (bitsOf(channel, user) & (1L << perm.ordinal())) != 0;
+  }
+  
+  /**
+   * Gets a user's permissions in a channel, working them out if they aren't
+   * remembered.
+   * 
+   * @param channel
+   *          The channel.
+   * @param user
+   *          The user.
+   * @return The permissions, with one bit for each by its ordinal.
+   */
+  private long bitsOf(IChannel channel, IUser user) {
+    long channelID = channel.getLongID();
+    long userID = user.getLongID();
+    int epoch = epochs.get(stripeOf(channel.isPrivate() ? null : channel.getGuild()));
+    int slot = hash(channelID * 31 + userID) & (slots.length() - 1);
+    
+    Entry entry = slots.get(slot);
+    if (entry != null && entry.channel == channelID && entry.user == userID && entry.epoch == epoch)
+      return entry.bits;
+    
+    // The epoch was read before the permissions are worked out, so if they
+    // change meanwhile, this entry is already out of date.
+    long bits = 0;
+    EnumSet<Permissions> perms = channel.getModifiedPermissions(user);
+    for (Permissions perm : perms) {
+      bits |= 1L << perm.ordinal();
+    }
+    slots.set(slot, new Entry(channelID, userID, epoch, bits));
+    return bits;
+  }
+  
+  /**
+   * Forgets every permission in a guild.
+   * 
+   * @param guild
+   *          The guild.
+   */
+  void invalidate(IGuild guild) {
+    epochs.incrementAndGet(stripeOf(guild));
+  }
+  
+  /**
+   * Forgets every permission.
+   */
+  void invalidateAll() {
+    for (int i = 0; i < epochs.length(); i++) {
+      epochs.incrementAndGet(i);
+    }
+  }
+}
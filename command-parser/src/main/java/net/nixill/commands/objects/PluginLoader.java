@@ -0,0 +1,513 @@
+package net.nixill.commands.objects;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.annotations.Deserializer;
+import net.nixill.commands.annotations.Serializer;
+import net.nixill.commands.exceptions.PluginLoadException;
+
+/**
+ * Loads commands from plugin jars in a directory, and swaps them into running
+ * {@link CommandReader}s, so that commands can be changed without restarting
+ * or reconnecting the bot.
+ * <p>
+ * Each jar is loaded by its own class loader, from a copy of the jar, so a jar
+ * can be replaced while it's in use. The command classes in a jar are the ones
+ * listed in its manifest's <code>Command-Classes</code> attribute (separated
+ * by spaces or commas), or if there's no such attribute, every class with a
+ * {@link BotCommand}, {@link Deserializer}, or {@link Serializer} method. A
+ * class whose commands aren't all static is created with its public
+ * constructor that takes no parameters, and registered as an object; other
+ * classes are registered as classes.
+ * <p>
+ * The directory isn't watched; each {@link #reload()} loads the jars that are
+ * new or have changed since the last, and gives each reader a new
+ * {@link CommandRegistry}: the one it has at that moment, without the
+ * commands of plugins that were replaced or removed, and with those of the
+ * new versions. Commands registered with the readers in the meantime are
+ * kept, and readers that shared a registry still share one. Commands that are
+ * already running finish on the old version; the old version's class loader
+ * is closed once none of its commands are running, and the
+ * {@link #setUnloadDelay unload delay} has passed.
+ * 
+ * @author Nixill
+ */
+public final class PluginLoader implements Closeable {
+  /** The manifest attribute that lists a jar's command classes. */
+  public static final String COMMAND_CLASSES = "Command-Classes";
+  
+  /** The directory the plugin jars are in. */
+  private final File                    directory;
+  /** The readers the plugins are swapped into. */
+  private final CommandReader[]         readers;
+  /** The plugins in use, by file name. */
+  private final TreeMap<String, Plugin> plugins = new TreeMap<>();
+  /** Replaced plugins, waiting to be closed. */
+  private final ArrayList<Plugin>       retired = new ArrayList<>();
+  /** How long replaced plugins are kept open, in milliseconds. */
+  private long                          unloadDelay;
+  
+  /**
+   * A single loaded version of a plugin jar.
+   */
+  private static final class Plugin {
+    /** When the jar was last modified, when it was loaded. */
+    final long              modified;
+    /** The length of the jar, when it was loaded. */
+    final long              length;
+    /** The copy of the jar that's actually loaded. */
+    final File              copy;
+    /** The jar's class loader. */
+    final URLClassLoader    loader;
+    /** The classes and objects to register. */
+    final List<Object>      registrants = new ArrayList<>();
+    /** The plugin's commands, once it's been replaced. */
+    final List<CommandPlan> plans       = new ArrayList<>();
+    /** When the plugin was replaced, by {@link System#currentTimeMillis()}. */
+    long                    retiredAt;
+    
+    Plugin(long modified, long length, File copy, URLClassLoader loader) {
+      this.modified = modified;
+      this.length = length;
+      this.copy = copy;
+      this.loader = loader;
+    }
+    
+    /**
+     * Checks whether any of the plugin's commands are still running, once
+     * it's been replaced.
+     * 
+     * @return Whether none are.
+     */
+    boolean isIdle() {
+      for (CommandPlan plan : plans) {
+        if (plan.inFlight.get() != 0) return false;
+      }
+      return true;
+    }
+    
+    /**
+     * Closes the plugin's class loader and deletes its copy of the jar.
+     */
+    void close() {
+      try {
+        loader.close();
+      } catch (IOException ex) {
+        // Nothing else can be done with it anyway.
+      }
+      copy.delete();
+    }
+  }
+  
+  /**
+   * Creates a plugin loader. No plugins are loaded until {@link #reload()} is
+   * called.
+   * 
+   * @param directory
+   *          The directory the plugin jars are in.
+   * @param readers
+   *          The readers to swap the plugins into.
+   */
+  public PluginLoader(File directory, CommandReader... readers) {
+    if (readers.length == 0) throw new IllegalArgumentException("A plugin loader needs at least one reader.");
+    this.directory = directory;
+    this.readers = readers.clone();
+    this.unloadDelay = 60000L;
+  }
+  
+  /**
+   * Loads any plugins that are new or have changed, and drops any that have
+   * been removed. If anything changed, the readers' commands are all swapped
+   * at once.
+   * <p>
+   * If any plugin fails to load, or any of their commands are invalid or
+   * can't be used by any one of the readers, nothing is swapped in, and the
+   * commands already in use stay as they were.
+   * 
+   * @return Whether anything changed.
+   * @throws PluginLoadException
+   *           If a plugin can't be loaded.
+   */
+  public synchronized boolean reload() {
+    File[] jars = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+    if (jars == null) throw new PluginLoadException("Can't read the plugin directory " + directory + ".");
+    
+    TreeMap<String, Plugin> next = new TreeMap<>();
+    ArrayList<Plugin> fresh = new ArrayList<>();
+    try {
+      for (File jar : jars) {
+        Plugin old = plugins.get(jar.getName());
+        if (old != null && old.modified == jar.lastModified() && old.length == jar.length()) {
+          next.put(jar.getName(), old);
+        } else {
+          Plugin plugin = load(jar);
+          fresh.add(plugin);
+          next.put(jar.getName(), plugin);
+        }
+      }
+      
+      if (fresh.isEmpty() && next.keySet().equals(plugins.keySet())) {
+        closeRetired();
+        return false;
+      }
+      
+      ArrayList<Plugin> dropped = new ArrayList<>();
+      for (Plugin old : plugins.values()) {
+        if (!next.containsValue(old)) dropped.add(old);
+      }
+      swap(dropped, fresh);
+    } catch (RuntimeException | Error ex) {
+      // No reader was given any of the new plugins' commands.
+      for (Plugin plugin : fresh)
+        plugin.close();
+      throw ex;
+    }
+    
+    plugins.clear();
+    plugins.putAll(next);
+    closeRetired();
+    return true;
+  }
+  
+  /**
+   * Swaps plugins in every reader at once. Each reader's registry is rebuilt
+   * from the one it has now, and every new registry is checked before any
+   * reader is given one.
+   * 
+   * @param dropped
+   *          The plugins whose commands are removed, which are retired.
+   * @param added
+   *          The plugins whose commands are added.
+   * @throws RuntimeException
+   *           If a plugin's commands can't be registered, in which case no
+   *           reader is changed.
+   * @throws Error
+   *           If a plugin's commands are invalid, in which case no reader is
+   *           changed.
+   */
+  private void swap(Collection<Plugin> dropped, Collection<Plugin> added) {
+    withReadersLocked(0, () -> {
+      // Readers sharing a registry are given the same new one, so they keep
+      // sharing cooldowns and bulkheads.
+      IdentityHashMap<CommandRegistry, CommandRegistry> rebuilt = new IdentityHashMap<>();
+      CommandRegistry[] registries = new CommandRegistry[readers.length];
+      CommandRegistry[] withHelp = new CommandRegistry[readers.length];
+      for (int i = 0; i < readers.length; i++) {
+        CommandRegistry current = readers[i].getRegistry();
+        CommandRegistry registry = rebuilt.get(current);
+        if (registry == null) {
+          registry = rebuild(current, dropped, added);
+          rebuilt.put(current, registry);
+        }
+        registries[i] = registry;
+        withHelp[i] = readers[i].withHelp(registry);
+      }
+      
+      for (int i = 0; i < readers.length; i++)
+        readers[i].swapRegistry(registries[i], withHelp[i]);
+      
+      long now = System.currentTimeMillis();
+      for (Plugin plugin : dropped) {
+        for (CommandRegistry old : rebuilt.keySet()) {
+          collectPlans(plugin, old.serverCommands.values());
+          collectPlans(plugin, old.dmCommands.values());
+        }
+        plugin.retiredAt = now;
+        retired.add(plugin);
+      }
+    });
+  }
+  
+  /**
+   * Runs something while holding the lock of every reader from a given one
+   * on, so that nothing else can change their registries meanwhile.
+   * 
+   * @param from
+   *          The index of the first reader to lock.
+   * @param action
+   *          What to run.
+   */
+  private void withReadersLocked(int from, Runnable action) {
+    if (from == readers.length) {
+      action.run();
+      return;
+    }
+    synchronized (readers[from]) {
+      withReadersLocked(from + 1, action);
+    }
+  }
+  
+  /**
+   * Builds a registry with some plugins' commands removed and others added.
+   * Commands that used a removed plugin's deserializers are built again
+   * without them.
+   * 
+   * @param current
+   *          The registry to start from.
+   * @param dropped
+   *          The plugins whose commands are removed.
+   * @param added
+   *          The plugins whose commands are added.
+   * @return The new registry.
+   */
+  private static CommandRegistry rebuild(CommandRegistry current, Collection<Plugin> dropped,
+      Collection<Plugin> added) {
+    CommandRegistry.Builder builder = current.toBuilder();
+    for (Plugin plugin : dropped) {
+      for (Object registrant : plugin.registrants) {
+        if (registrant instanceof Class)
+          builder.unregister((Class<?>) registrant);
+        else
+          builder.unregister(registrant);
+      }
+      // Takes its deserializers too, so that later registries don't keep its
+      // class loader around.
+      builder.unregister(plugin.loader);
+    }
+    for (Plugin plugin : added) {
+      for (Object registrant : plugin.registrants) {
+        if (registrant instanceof Class)
+          builder.register((Class<?>) registrant);
+        else
+          builder.register(registrant);
+      }
+    }
+    return builder.build();
+  }
+  
+  /**
+   * Remembers which of a replaced registry's commands run a plugin's code,
+   * whether their own or that of its deserializers, so that the plugin isn't
+   * closed while they're running.
+   * 
+   * @param plugin
+   *          The plugin.
+   * @param commands
+   *          The registry's commands.
+   */
+  private static void collectPlans(Plugin plugin, Collection<CommandPlan> commands) {
+    for (CommandPlan plan : commands) {
+      if (plan.isLoadedBy(plugin.loader) && !plugin.plans.contains(plan))
+        plugin.plans.add(plan);
+    }
+  }
+  
+  /**
+   * Loads a single plugin jar.
+   * 
+   * @param jar
+   *          The jar.
+   * @return The plugin.
+   * @throws PluginLoadException
+   *           If the plugin can't be loaded.
+   */
+  private static Plugin load(File jar) {
+    long modified = jar.lastModified();
+    long length = jar.length();
+    Plugin plugin;
+    try {
+      File copy = File.createTempFile("plugin-", ".jar");
+      copy.deleteOnExit();
+      Files.copy(jar.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      URLClassLoader loader = new URLClassLoader(new URL[] { copy.toURI().toURL() },
+          PluginLoader.class.getClassLoader());
+      plugin = new Plugin(modified, length, copy, loader);
+    } catch (IOException ex) {
+      throw new PluginLoadException("Can't read the plugin " + jar.getName() + ".", ex);
+    }
+    
+    try (JarFile file = new JarFile(plugin.copy)) {
+      for (Class<?> cls : commandClasses(file, plugin.loader)) {
+        plugin.registrants.add(registrantFor(cls));
+      }
+    } catch (IOException ex) {
+      plugin.close();
+      throw new PluginLoadException("Can't read the plugin " + jar.getName() + ".", ex);
+    } catch (RuntimeException | Error ex) {
+      plugin.close();
+      throw ex;
+    }
+    return plugin;
+  }
+  
+  /**
+   * Finds the command classes in a plugin jar.
+   * 
+   * @param file
+   *          The jar.
+   * @param loader
+   *          The jar's class loader.
+   * @return The command classes.
+   * @throws IOException
+   *           If the jar can't be read.
+   */
+  private static List<Class<?>> commandClasses(JarFile file, ClassLoader loader) throws IOException {
+    List<Class<?>> classes = new ArrayList<>();
+    Manifest manifest = file.getManifest();
+    String listed = (manifest == null) ? null : manifest.getMainAttributes().getValue(COMMAND_CLASSES);
+    
+    if (listed != null) {
+      for (String name : listed.trim().split("[\\s,]+")) {
+        if (name.isEmpty()) continue;
+        try {
+          classes.add(Class.forName(name, true, loader));
+        } catch (ClassNotFoundException | LinkageError ex) {
+          throw new PluginLoadException("Can't load the command class " + name + ".", ex);
+        }
+      }
+      return classes;
+    }
+    
+    Enumeration<JarEntry> entries = file.entries();
+    while (entries.hasMoreElements()) {
+      String name = entries.nextElement().getName();
+      if (!name.endsWith(".class") || name.endsWith("module-info.class") || name.endsWith("package-info.class"))
+        continue;
+      name = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+      try {
+        Class<?> cls = Class.forName(name, false, loader);
+        if (hasCommands(cls)) classes.add(cls);
+      } catch (ClassNotFoundException | LinkageError ex) {
+        // Classes that can't be loaded can't have commands anyone can use;
+        // they may just need a library the bot doesn't have.
+      }
+    }
+    return classes;
+  }
+  
+  /**
+   * Checks whether a class has any methods to register.
+   * 
+   * @param cls
+   *          The class.
+   * @return Whether it has any public {@link BotCommand}, {@link Deserializer},
+   *         or {@link Serializer} methods.
+   */
+  private static boolean hasCommands(Class<?> cls) {
+    if (cls.isInterface() || cls.isAnnotation()) return false;
+    for (Method meth : cls.getDeclaredMethods()) {
+      if (isRegistered(meth)) return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Checks whether a method would be registered.
+   * 
+   * @param meth
+   *          The method.
+   * @return Whether it's public and has a {@link BotCommand},
+   *         {@link Deserializer}, or {@link Serializer} annotation.
+   */
+  private static boolean isRegistered(Method meth) {
+    return Modifier.isPublic(meth.getModifiers()) && (meth.isAnnotationPresent(BotCommand.class)
+        || meth.isAnnotationPresent(Deserializer.class) || meth.isAnnotationPresent(Serializer.class));
+  }
+  
+  /**
+   * Works out what to register for a command class: an instance if any of its
+   * methods aren't static, or the class itself otherwise.
+   * 
+   * @param cls
+   *          The class.
+   * @return The class or the instance.
+   * @throws PluginLoadException
+   *           If the class needs an instance and one can't be created.
+   */
+  private static Object registrantFor(Class<?> cls) {
+    boolean needsInstance = false;
+    for (Method meth : cls.getDeclaredMethods()) {
+      if (isRegistered(meth) && !Modifier.isStatic(meth.getModifiers())) needsInstance = true;
+    }
+    if (!needsInstance) return cls;
+    
+    try {
+      return cls.getConstructor().newInstance();
+    } catch (ReflectiveOperationException ex) {
+      throw new PluginLoadException(
+          "The command class " + cls.getName() + " needs a public constructor with no parameters.", ex);
+    }
+  }
+  
+  /**
+   * Closes the replaced plugins that have been waiting for longer than the
+   * unload delay, and whose commands have all finished.
+   */
+  private void closeRetired() {
+    long now = System.currentTimeMillis();
+    for (Iterator<Plugin> it = retired.iterator(); it.hasNext();) {
+      Plugin plugin = it.next();
+      if (now - plugin.retiredAt >= unloadDelay && plugin.isIdle()) {
+        plugin.close();
+        it.remove();
+      }
+    }
+  }
+  
+  /**
+   * Get the names of the plugin jars in use.
+   * 
+   * @return The file names.
+   */
+  public synchronized Set<String> getPlugins() {
+    return new TreeSet<>(plugins.keySet());
+  }
+  
+  /**
+   * Get how long replaced plugins are kept open.
+   * 
+   * @return The delay, in milliseconds.
+   */
+  public synchronized long getUnloadDelay() {
+    return unloadDelay;
+  }
+  
+  /**
+   * Set how long replaced plugins are kept open at least. They're also kept
+   * open for as long as any of their commands are still running, and are only
+   * closed during a later {@link #reload()}, so they may be kept open for
+   * longer. This defaults to a minute.
+   * 
+   * @param millis
+   *          The new delay, in milliseconds.
+   */
+  public synchronized void setUnloadDelay(long millis) {
+    unloadDelay = millis;
+  }
+  
+  /**
+   * Removes every plugin's commands from the readers, and closes every
+   * plugin's class loader without waiting for the unload delay. Commands from
+   * plugins that are still running may stop working, so this should only be
+   * used when the bot is shutting down.
+   */
+  @Override
+  public synchronized void close() {
+    swap(new ArrayList<>(plugins.values()), new ArrayList<>());
+    plugins.clear();
+    for (Plugin plugin : retired)
+      plugin.close();
+    retired.clear();
+  }
+}
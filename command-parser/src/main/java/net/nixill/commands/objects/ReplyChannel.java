@@ -0,0 +1,60 @@
+package net.nixill.commands.objects;
+
+import java.util.function.Supplier;
+
+import sx.blah.discord.handle.obj.IChannel;
+
+/**
+ * The channel a command replies in, found only once something is actually
+ * sent there. Finding some reply channels can take a request to Discord (such
+ * as opening a direct message channel), which commands that are turned away
+ * without a reply shouldn't have to pay for.
+ * 
+ * @author Nixill
+ */
+final class ReplyChannel {
+  /** Finds the channel, or <code>null</code> once it's been found. */
+  private Supplier<IChannel> resolver;
+  /** The channel, or <code>null</code> if it hasn't been found yet. */
+  private volatile IChannel  channel;
+  
+  /**
+   * Creates a reply channel that's already known.
+   * 
+   * @param channel
+   *          The channel.
+   */
+  ReplyChannel(IChannel channel) {
+    this.channel = channel;
+  }
+  
+  /**
+   * Creates a reply channel that's found when it's first needed.
+   * 
+   * @param resolver
+   *          Finds the channel.
+   */
+  ReplyChannel(Supplier<IChannel> resolver) {
+    this.resolver = resolver;
+  }
+  
+  /**
+   * Gets the channel, finding it if it hasn't been found yet.
+   * 
+   * @return The channel.
+   */
+  IChannel get() {
+    IChannel out = channel;
+    if (out == null) {
+      synchronized (this) {
+        out = channel;
+        if (out == null) {
+          out = resolver.get();
+          channel = out;
+          resolver = null;
+        }
+      }
+    }
+    return out;
+  }
+}
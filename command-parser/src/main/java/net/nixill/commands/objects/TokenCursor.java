@@ -0,0 +1,246 @@
+package net.nixill.commands.objects;
+
+import java.util.ArrayList;
+
+import net.nixill.commands.exceptions.DeserializationException;
+
+/**
+ * Reads the single-word pieces of a command's input straight out of the
+ * original message text. Words are separated by single spaces, exactly as
+ * <code>String.split(" ")</code> would separate them (so two spaces in a row
+ * give an empty word, and trailing spaces are ignored), but nothing is copied
+ * until a word is actually asked for, and moving past a word doesn't shift
+ * any others.
+ * 
+ * @author Nixill
+ */
+public final class TokenCursor {
+  /** The text being read. */
+  private final CharSequence source;
+  /** The end of the readable part of the text. */
+  private final int          end;
+  /** The start of the next word. */
+  private int                pos;
+  /** The end of the last word taken. */
+  private int                lastEnd;
+  /** The position saved by {@link #mark()}. */
+  private int                markPos;
+  /** The last-word end saved by {@link #mark()}. */
+  private int                markLastEnd;
+  
+  /**
+   * Creates a cursor over all of a piece of text.
+   * 
+   * @param source
+   *          The text to read.
+   */
+  public TokenCursor(CharSequence source) {
+    this(source, 0, source.length());
+  }
+  
+  /**
+   * Creates a cursor over part of a piece of text.
+   * 
+   * @param source
+   *          The text to read.
+   * @param start
+   *          The index of the first character to read.
+   * @param end
+   *          The index after the last character to read.
+   */
+  public TokenCursor(CharSequence source, int start, int end) {
+    while (end > start && source.charAt(end - 1) == ' ')
+      end--;
+    this.source = source;
+    this.end = end;
+    this.pos = start;
+    this.lastEnd = start;
+    this.markPos = start;
+    this.markLastEnd = start;
+  }
+  
+  /**
+   * Finds the end of the word starting at a position.
+   * 
+   * @param from
+   *          The start of the word.
+   * @return The index after its last character.
+   */
+  private int wordEnd(int from) {
+    int i = from;
+    while (i < end && source.charAt(i) != ' ')
+      i++;
+    return i;
+  }
+  
+  /**
+   * Moves past a word.
+   * 
+   * @param wordEnd
+   *          The index after the word's last character.
+   */
+  private void advance(int wordEnd) {
+    lastEnd = wordEnd;
+    pos = (wordEnd < end) ? wordEnd + 1 : end;
+  }
+  
+  /**
+   * Returns whether there are any words left.
+   * 
+   * @return Whether there are any words left.
+   */
+  public boolean hasNext() {
+    return pos < end;
+  }
+  
+  /**
+   * Counts the remaining words. This has to look at the rest of the text, so
+   * it shouldn't be called once per word.
+   * 
+   * @return The number of words left.
+   */
+  public int remaining() {
+    if (pos >= end) return 0;
+    int count = 1;
+    for (int i = pos; i < end; i++) {
+      if (source.charAt(i) == ' ') count++;
+    }
+    return count;
+  }
+  
+  /**
+   * Takes the next word.
+   * 
+   * @return The word.
+   * @throws DeserializationException
+   *           If there are no words left.
+   */
+  public String next() {
+    if (pos >= end) throw new DeserializationException("Not enough parameters.");
+    int wordEnd = wordEnd(pos);
+    String word = source.subSequence(pos, wordEnd).toString();
+    advance(wordEnd);
+    return word;
+  }
+  
+  /**
+   * Returns the next word without taking it.
+   * 
+   * @return The word, or <code>null</code> if there are no words left.
+   */
+  public String peek() {
+    if (pos >= end) return null;
+    return source.subSequence(pos, wordEnd(pos)).toString();
+  }
+  
+  /**
+   * Takes up to <code>howMany</code> words without copying them.
+   * 
+   * @param howMany
+   *          How many words to skip.
+   * @return How many words were actually skipped.
+   */
+  public int skip(int howMany) {
+    int skipped = 0;
+    while (skipped < howMany && pos < end) {
+      advance(wordEnd(pos));
+      skipped++;
+    }
+    return skipped;
+  }
+  
+  /**
+   * Takes up to <code>howMany</code> words, and returns them exactly as they
+   * appeared in the text (with the spaces between them).
+   * 
+   * @param howMany
+   *          How many words to take.
+   * @return The words, or an empty string if there are no words left.
+   */
+  public String take(int howMany) {
+    int start = pos;
+    if (skip(howMany) == 0) return "";
+    return source.subSequence(start, lastEnd).toString();
+  }
+  
+  /**
+   * Saves the current position, so it can be returned to with
+   * {@link #reset()}.
+   */
+  public void mark() {
+    markPos = pos;
+    markLastEnd = lastEnd;
+  }
+  
+  /**
+   * Returns to the position saved by the last call to {@link #mark()}, or to
+   * the start if it hasn't been called.
+   */
+  public void reset() {
+    pos = markPos;
+    lastEnd = markLastEnd;
+  }
+  
+  /**
+   * Get the index in the text of the start of the next word.
+   * 
+   * @return The index.
+   */
+  public int position() {
+    return pos;
+  }
+  
+  /**
+   * Get the index in the text just after the next word.
+   * 
+   * @return The index, which is equal to {@link #position()} if there are no
+   *         words left.
+   */
+  public int nextEnd() {
+    return wordEnd(pos);
+  }
+  
+  /**
+   * Get the index in the text just after the last word taken.
+   * 
+   * @return The index.
+   */
+  public int lastEnd() {
+    return lastEnd;
+  }
+  
+  /**
+   * Get the index in the text after the last readable character.
+   * 
+   * @return The index.
+   */
+  public int end() {
+    return end;
+  }
+  
+  /**
+   * Get the text being read.
+   * 
+   * @return The text.
+   */
+  public CharSequence source() {
+    return source;
+  }
+  
+  /**
+   * Copies the remaining words into a list, for deserializers that still take
+   * an {@link ArrayList}. The words aren't taken from the cursor.
+   * 
+   * @return The remaining words.
+   */
+  ArrayList<String> toList() {
+    ArrayList<String> list = new ArrayList<>();
+    int i = pos;
+    while (i < end) {
+      int wordEnd = wordEnd(i);
+      list.add(source.subSequence(i, wordEnd).toString());
+      i = (wordEnd < end) ? wordEnd + 1 : end;
+    }
+    return list;
+  }
+}
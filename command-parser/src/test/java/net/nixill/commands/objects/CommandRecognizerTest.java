@@ -0,0 +1,128 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.annotations.BotCommand.CommandSource;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * Tests for {@link CommandRecognizer}.
+ * 
+ * @author Nixill
+ */
+public class CommandRecognizerTest {
+  /** Commands to recognize. */
+  public static class Commands {
+    @BotCommand(name = "add", names = "plus", usage = "add a b")
+    public String add(IMessage msg, int a, int b) {
+      return "" + (a + b);
+    }
+    
+    @BotCommand(name = "secret", usage = "secret", listen = CommandSource.DM)
+    public String secret(IMessage msg) {
+      return "secret";
+    }
+    
+    @BotCommand(name = "say-hi_2", usage = "say-hi_2", listen = CommandSource.GUILD)
+    public String sayHi(IMessage msg) {
+      return "hi";
+    }
+  }
+  
+  private static final CommandRegistry REGISTRY = CommandRegistry.builder().register(new Commands()).build();
+  
+  private static CommandRecognizer recognizer(BitSet guildStarts) {
+    return new CommandRecognizer("!", guildStarts, REGISTRY, "<@!42>", "<@42>");
+  }
+  
+  @Test
+  public void findsTheCommandAndItsParameters() {
+    CommandRecognizer.Match match = recognizer(null).recognize("!add 1 2", false, null);
+    assertEquals("add", match.plan.name);
+    assertFalse(match.preMention);
+    assertEquals(5, match.argsStart);
+    assertEquals(8, match.end);
+  }
+  
+  @Test
+  public void ignoresCaseSpacesAndAliases() {
+    CommandRecognizer rec = recognizer(null);
+    CommandRecognizer.Match match = rec.recognize("  !PLUS 1 2  ", false, null);
+    assertSame(rec.recognize("!add", false, null).plan, match.plan);
+    assertEquals(8, match.argsStart);
+    assertEquals(11, match.end);
+  }
+  
+  @Test
+  public void readsEitherMentionBeforeTheCommand() {
+    CommandRecognizer rec = recognizer(null);
+    CommandRecognizer.Match match = rec.recognize("<@!42>   !add 1", false, null);
+    assertTrue(match.preMention);
+    assertEquals(14, match.argsStart);
+    
+    match = rec.recognize("<@42>!add", false, null);
+    assertTrue(match.preMention);
+    assertEquals(match.end, match.argsStart);
+    
+    assertNull(rec.recognize("<@43> !add", false, null));
+  }
+  
+  @Test
+  public void rejectsUnknownNames() {
+    CommandRecognizer rec = recognizer(null);
+    assertNull(rec.recognize("!ad 1", false, null));
+    assertNull(rec.recognize("!addx 1", false, null));
+    assertNull(rec.recognize("!a.b", false, null));
+    assertNull(rec.recognize("!", false, null));
+    assertNull(rec.recognize("! add", false, null));
+    assertNull(rec.recognize("add 1 2", false, null));
+  }
+  
+  @Test
+  public void keepsGuildAndDirectMessageCommandsApart() {
+    CommandRecognizer rec = recognizer(null);
+    assertNull(rec.recognize("!secret", false, null));
+    assertEquals("secret", rec.recognize("!secret", true, null).plan.name);
+    assertEquals("say-hi_2", rec.recognize("!say-hi_2", false, null).plan.name);
+    assertNull(rec.recognize("!say-hi_2", true, null));
+  }
+  
+  @Test
+  public void usesTheGuildPrefixInstead() {
+    CommandRecognizer rec = recognizer(null);
+    assertEquals(6, rec.recognize("?>add 1", false, "?>").argsStart);
+    assertNull(rec.recognize("!add 1", false, "?>"));
+  }
+  
+  @Test
+  public void screensOutMessagesByTheirFirstCharacter() {
+    BitSet guildStarts = new BitSet();
+    guildStarts.set('?');
+    CommandRecognizer rec = recognizer(guildStarts);
+    assertTrue(rec.mayBeCommand("  !add"));
+    assertTrue(rec.mayBeCommand("<@42> !add"));
+    assertTrue(rec.mayBeCommand("?add"));
+    assertFalse(rec.mayBeCommand("hello there"));
+    assertFalse(rec.mayBeCommand("   "));
+    
+    assertTrue(recognizer(null).mayBeCommand("hello there"));
+  }
+  
+  @Test
+  public void checksNames() {
+    assertTrue(CommandRecognizer.isValidName("say-hi_2"));
+    assertTrue(CommandRecognizer.isValidName("ADD"));
+    assertFalse(CommandRecognizer.isValidName(""));
+    assertFalse(CommandRecognizer.isValidName("a b"));
+    assertFalse(CommandRecognizer.isValidName("na\u00efve"));
+  }
+}
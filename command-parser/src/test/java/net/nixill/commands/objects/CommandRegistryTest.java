@@ -0,0 +1,115 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import net.nixill.commands.annotations.BotCommand;
+import net.nixill.commands.annotations.Deserializer;
+import net.nixill.commands.exceptions.InvalidCommandMethodError;
+import sx.blah.discord.handle.obj.IMessage;
+
+/**
+ * Tests for {@link CommandRegistry}.
+ * 
+ * @author Nixill
+ */
+public class CommandRegistryTest {
+  /** A type owned by the bot, which a plugin can deserialize. */
+  public static class Thing {
+    final String name;
+    
+    public Thing(String name) {
+      this.name = name;
+    }
+  }
+  
+  /** A plugin's deserializer, loaded again by a class loader of its own. */
+  public static class PluginMethods {
+    @Deserializer
+    public static Thing deserializeThing(TokenCursor values, int howMany) {
+      return new Thing("plugin " + values.next());
+    }
+  }
+  
+  /** The bot's own command, which uses whichever deserializer it's given. */
+  public static class Commands {
+    @BotCommand(name = "thing", usage = "thing name")
+    public static String thing(IMessage msg, Thing thing) {
+      return thing.name;
+    }
+  }
+  
+  /** Loads {@link PluginMethods} itself, like a plugin's class loader. */
+  private static class PluginLoader extends ClassLoader {
+    PluginLoader() {
+      super(CommandRegistryTest.class.getClassLoader());
+    }
+    
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(PluginMethods.class.getName())) return super.loadClass(name, resolve);
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> cls = findLoadedClass(name);
+        if (cls != null) return cls;
+        String path = name.replace('.', '/') + ".class";
+        try (InputStream in = getParent().getResourceAsStream(path)) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          byte[] buf = new byte[4096];
+          for (int read; (read = in.read(buf)) != -1;)
+            bytes.write(buf, 0, read);
+          return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+        } catch (IOException ex) {
+          throw new ClassNotFoundException(name, ex);
+        }
+      }
+    }
+  }
+  
+  private static String run(CommandPlan plan, String param) {
+    return ((Thing) plan.slots[0].deserializer.deserialize(new TokenCursor(param), 1, null, null)).name;
+  }
+  
+  @Test
+  public void dropsAPluginsDeserializersWithIt() throws ClassNotFoundException {
+    PluginLoader loader = new PluginLoader();
+    Class<?> plugin = loader.loadClass(PluginMethods.class.getName());
+    CommandRegistry registry = CommandRegistry.builder().register(plugin).register(Commands.class).build();
+    CommandPlan before = registry.serverCommands.get("thing");
+    assertTrue(before.isLoadedBy(loader));
+    assertEquals("plugin x", run(before, "x"));
+    
+    registry = registry.toBuilder().unregister(loader)
+        .registerDeserializer(Thing.class, (values, howMany, msg, param) -> new Thing("bot " + values.next()))
+        .build();
+    CommandPlan after = registry.serverCommands.get("thing");
+    assertFalse(after.isLoadedBy(loader));
+    assertEquals("bot x", run(after, "x"));
+    for (ArgumentDeserializer<?> des : registry.deserializers.values())
+      assertFalse(Deserializers.isLoadedBy(des, loader));
+  }
+  
+  @Test
+  public void forgetsCommandsRemovedBeforeTheyreBuiltAgain() throws ClassNotFoundException {
+    PluginLoader loader = new PluginLoader();
+    Class<?> plugin = loader.loadClass(PluginMethods.class.getName());
+    CommandRegistry registry = CommandRegistry.builder().register(plugin).register(Commands.class).build();
+    registry = registry.toBuilder().unregister(loader).unregister(Commands.class).build();
+    assertNull(registry.serverCommands.get("thing"));
+  }
+  
+  @Test(expected = InvalidCommandMethodError.class)
+  public void needsADeserializerForCommandsBuiltAgain() throws ClassNotFoundException {
+    PluginLoader loader = new PluginLoader();
+    Class<?> plugin = loader.loadClass(PluginMethods.class.getName());
+    CommandRegistry.builder().register(plugin).register(Commands.class).build().toBuilder().unregister(loader)
+        .build();
+  }
+}
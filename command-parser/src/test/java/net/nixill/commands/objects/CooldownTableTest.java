@@ -0,0 +1,103 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CooldownTable}.
+ * 
+ * @author Nixill
+ */
+public class CooldownTableTest {
+  /** One second, in nanoseconds. */
+  private static final long SECOND = 1000000000L;
+  
+  @Test
+  public void startsACooldownAndReportsWhatsLeft() {
+    CooldownTable table = new CooldownTable(1000);
+    assertEquals(0, table.tryAcquire(7, 10));
+    assertEquals(SECOND - 5, table.tryAcquire(7, 15));
+    assertEquals(1, table.tryAcquire(7, 10 + SECOND - 1));
+    assertEquals(0, table.tryAcquire(7, 10 + SECOND));
+    assertEquals(SECOND, table.tryAcquire(7, 10 + SECOND));
+  }
+  
+  @Test
+  public void keepsIdsApart() {
+    CooldownTable table = new CooldownTable(1000);
+    assertEquals(0, table.tryAcquire(0, 10));
+    assertEquals(0, table.tryAcquire(-1, 10));
+    assertEquals(0, table.tryAcquire(1, 10));
+    assertEquals(SECOND, table.tryAcquire(0, 10));
+    assertEquals(SECOND, table.tryAcquire(-1, 10));
+  }
+  
+  @Test
+  public void cancelTakesBackOnlyThatCooldown() {
+    CooldownTable table = new CooldownTable(1000);
+    table.tryAcquire(7, 10);
+    table.cancel(7, 10);
+    assertEquals(0, table.tryAcquire(7, 20));
+    
+    // A cooldown started later is left alone.
+    table.cancel(7, 10);
+    assertEquals(SECOND - 10, table.tryAcquire(7, 30));
+    
+    // So are ids that were never seen.
+    table.cancel(8, 10);
+    assertEquals(0, table.tryAcquire(8, 10));
+  }
+  
+  @Test
+  public void keepsCooldownsWhileGrowing() {
+    CooldownTable table = new CooldownTable(1000);
+    int ids = 10000;
+    for (int id = 1; id <= ids; id++) {
+      assertEquals(0, table.tryAcquire(id, 10));
+    }
+    for (int id = 1; id <= ids; id++) {
+      assertEquals(SECOND - 10, table.tryAcquire(id, 20));
+    }
+  }
+  
+  @Test
+  public void forgetsExpiredCooldowns() {
+    CooldownTable table = new CooldownTable(1000);
+    for (int round = 0; round < 20; round++) {
+      long now = 10 + round * SECOND;
+      for (int id = 1; id <= 1000; id++) {
+        assertEquals(0, table.tryAcquire(round * 1000L + id, now));
+      }
+      assertEquals(SECOND, table.tryAcquire(round * 1000L + 1, now));
+    }
+  }
+  
+  @Test
+  public void letsOnlyOneRacingUseThrough() throws InterruptedException {
+    final CooldownTable table = new CooldownTable(1000);
+    for (int round = 0; round < 100; round++) {
+      final long id = round;
+      final AtomicInteger through = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new Thread(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {}
+          if (table.tryAcquire(id, 10) == 0) through.incrementAndGet();
+        });
+        threads[i].start();
+      }
+      start.countDown();
+      for (Thread th : threads) {
+        th.join();
+      }
+      assertEquals(1, through.get());
+    }
+  }
+}
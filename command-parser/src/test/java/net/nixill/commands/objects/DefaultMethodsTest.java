@@ -0,0 +1,68 @@
+package net.nixill.commands.objects;
+
+import static net.nixill.commands.objects.NumericConditionTest.restrict;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+import net.nixill.commands.exceptions.DeserializationException;
+import net.nixill.commands.exceptions.InvalidRestrictionError;
+
+/**
+ * Tests for the regex restrictions in {@link DefaultMethods}.
+ * 
+ * @author Nixill
+ */
+public class DefaultMethodsTest {
+  @Test
+  public void takesWordsUntilTheStringMatches() {
+    TokenCursor cursor = new TokenCursor("abc def xyz rest");
+    assertEquals("abc def xyz", DefaultMethods.deserializeString(cursor, 1, restrict("a.*z")));
+    assertEquals("rest", cursor.next());
+  }
+  
+  @Test
+  public void leavesUnrestrictedStringsAlone() {
+    TokenCursor cursor = new TokenCursor("abc def");
+    assertEquals("abc", DefaultMethods.deserializeString(cursor, 1, null));
+    assertEquals("def", cursor.next());
+  }
+  
+  @Test
+  public void stopsTakingWordsOnceTheRegexCantMatch() {
+    TokenCursor cursor = new TokenCursor("abc 123 456");
+    try {
+      DefaultMethods.deserializeString(cursor, 1, restrict("\\d+"));
+      fail("Matched abc");
+    } catch (DeserializationException ex) {}
+    assertEquals("123", cursor.peek());
+  }
+  
+  @Test
+  public void givesUpAtTheEndOfTheMessage() {
+    TokenCursor cursor = new TokenCursor("abc def");
+    try {
+      DefaultMethods.deserializeString(cursor, 1, restrict("a.*z"));
+      fail("Matched abc def");
+    } catch (DeserializationException ex) {}
+    assertFalse(cursor.hasNext());
+  }
+  
+  @Test
+  public void returnsTheMatcher() {
+    TokenCursor cursor = new TokenCursor("555-1234 x more");
+    Matcher mtc = DefaultMethods.deserializeMatcher(cursor, 1, restrict("(\\d+)-\\d+ x"));
+    assertEquals("555-1234 x", mtc.group());
+    assertEquals("555", mtc.group(1));
+    assertEquals("more", cursor.next());
+  }
+  
+  @Test(expected = InvalidRestrictionError.class)
+  public void needsARegexForMatchers() {
+    DefaultMethods.deserializeMatcher(new TokenCursor("abc"), 1, null);
+  }
+}
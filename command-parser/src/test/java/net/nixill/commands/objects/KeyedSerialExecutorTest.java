@@ -0,0 +1,135 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link KeyedSerialExecutor}.
+ * 
+ * @author Nixill
+ */
+public class KeyedSerialExecutorTest {
+  private final ExecutorService pool = Executors.newFixedThreadPool(4);
+  
+  @After
+  public void shutDown() {
+    pool.shutdownNow();
+  }
+  
+  @Test
+  public void runsEachKeyInOrderAndAlone() throws InterruptedException {
+    KeyedSerialExecutor exec = new KeyedSerialExecutor(pool);
+    int keys = 8;
+    int perKey = 500;
+    final List<List<Integer>> seen = new ArrayList<>();
+    final AtomicInteger[] running = new AtomicInteger[keys];
+    final AtomicInteger overlaps = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(keys * perKey);
+    for (int k = 0; k < keys; k++) {
+      seen.add(Collections.synchronizedList(new ArrayList<Integer>()));
+      running[k] = new AtomicInteger();
+    }
+    
+    for (int i = 0; i < perKey; i++) {
+      for (int k = 0; k < keys; k++) {
+        final int key = k;
+        final int index = i;
+        exec.execute(key, () -> {
+          if (running[key].incrementAndGet() != 1) overlaps.incrementAndGet();
+          seen.get(key).add(index);
+          running[key].decrementAndGet();
+          done.countDown();
+        });
+      }
+    }
+    
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(0, overlaps.get());
+    for (List<Integer> list : seen) {
+      assertEquals(perKey, list.size());
+      for (int i = 0; i < perKey; i++) {
+        assertEquals(i, (int) list.get(i));
+      }
+    }
+  }
+  
+  @Test
+  public void runsDifferentKeysAtOnce() throws InterruptedException {
+    KeyedSerialExecutor exec = new KeyedSerialExecutor(pool);
+    final CountDownLatch other = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    exec.execute(1, () -> {
+      try {
+        if (other.await(10, TimeUnit.SECONDS)) done.countDown();
+      } catch (InterruptedException ex) {}
+    });
+    exec.execute(2, other::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+  
+  @Test
+  public void rejectsTasksInOrderWhenTheExecutorIsFull() {
+    KeyedSerialExecutor exec = new KeyedSerialExecutor(task -> {
+      throw new RejectedExecutionException();
+    });
+    final List<String> events = new ArrayList<>();
+    for (final String name : new String[] { "a", "b" }) {
+      exec.execute(1, new FairExecutor.Task() {
+        @Override
+        public void run() {
+          events.add("run " + name);
+        }
+        
+        @Override
+        public long group() {
+          return 5;
+        }
+        
+        @Override
+        public void reject() {
+          events.add("reject " + name);
+        }
+      });
+    }
+    assertEquals(Arrays.asList("reject a", "reject b"), events);
+  }
+  
+  @Test
+  public void waitsForAGatedTaskWithoutBlockingItsThread() {
+    KeyedSerialExecutor exec = new KeyedSerialExecutor(Runnable::run);
+    final List<String> events = new ArrayList<>();
+    final Runnable[] resume = new Runnable[1];
+    exec.execute(1, new KeyedSerialExecutor.Gated() {
+      @Override
+      public boolean tryStart(Runnable onReady) {
+        resume[0] = onReady;
+        return false;
+      }
+      
+      @Override
+      public void run() {
+        events.add("gated");
+      }
+    });
+    exec.execute(1, () -> events.add("after"));
+    exec.execute(2, () -> events.add("other lane"));
+    assertEquals(Arrays.asList("other lane"), events);
+    
+    resume[0].run();
+    assertEquals(Arrays.asList("other lane", "gated", "after"), events);
+  }
+}
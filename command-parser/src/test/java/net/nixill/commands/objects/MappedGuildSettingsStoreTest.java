@@ -0,0 +1,140 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.nixill.commands.enums.MentionSetting;
+
+/**
+ * Tests for {@link MappedGuildSettingsStore}.
+ * 
+ * @author Nixill
+ */
+public class MappedGuildSettingsStoreTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  private File file() {
+    return new File(folder.getRoot(), "guilds.dat");
+  }
+  
+  @Test
+  public void keepsSettingsAcrossReopening() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    assertTrue(store.isEmpty());
+    GuildSettings first = new GuildSettings("?", MentionSetting.PREFIX);
+    GuildSettings second = GuildSettings.DEFAULT.withCommandEnabled("roll", false);
+    store.put(1L, first);
+    store.put(2L, second);
+    
+    store = new MappedGuildSettingsStore(file());
+    assertFalse(store.isEmpty());
+    assertEquals(first, store.get(1L));
+    assertEquals(second, store.get(2L));
+    assertFalse(store.get(2L).isCommandEnabled("roll"));
+    assertNull(store.get(3L));
+  }
+  
+  @Test
+  public void forgetsGuildsSetBackToTheDefaults() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    store.put(1L, new GuildSettings("?", MentionSetting.DEFAULT));
+    store.put(1L, GuildSettings.DEFAULT);
+    assertNull(store.get(1L));
+    assertTrue(store.isEmpty());
+    
+    store = new MappedGuildSettingsStore(file());
+    assertNull(store.get(1L));
+    assertTrue(store.isEmpty());
+  }
+  
+  @Test
+  public void keepsEveryGuildWhileGrowing() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    int guilds = 2000;
+    for (long id = 1; id <= guilds; id++) {
+      store.put(id, new GuildSettings("p" + id, MentionSetting.DEFAULT));
+    }
+    
+    store = new MappedGuildSettingsStore(file());
+    for (long id = 1; id <= guilds; id++) {
+      assertEquals("p" + id, store.get(id).getPrefix());
+    }
+    assertEquals(1, folder.getRoot().list().length);
+  }
+  
+  @Test
+  public void doesNotGrowFromChangingTheSameGuilds() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    for (long id = 1; id <= 50; id++) {
+      store.put(id, new GuildSettings("?", MentionSetting.DEFAULT));
+    }
+    long size = file().length();
+    for (int round = 0; round < 20; round++) {
+      for (long id = 1; id <= 50; id++) {
+        store.put(id, new GuildSettings("!" + round, MentionSetting.DEFAULT));
+      }
+    }
+    assertEquals(size, file().length());
+  }
+  
+  @Test
+  public void fallsBackToTheOtherCopyOfABrokenRecord() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    store.put(1L, new GuildSettings("old", MentionSetting.DEFAULT));
+    store.put(1L, new GuildSettings("new", MentionSetting.DEFAULT));
+    
+    // Damage the newer copy, as if the bot had stopped part way through
+    // writing it.
+    byte[] bytes = Files.readAllBytes(file().toPath());
+    int at = indexOf(bytes, "new".getBytes(StandardCharsets.UTF_8));
+    try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+      raf.seek(at);
+      raf.write('N');
+    }
+    
+    store = new MappedGuildSettingsStore(file());
+    assertEquals("old", store.get(1L).getPrefix());
+  }
+  
+  @Test
+  public void remembersPrefixStarts() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    store.put(1L, new GuildSettings("?", MentionSetting.DEFAULT));
+    store.put(2L, new GuildSettings("$$", MentionSetting.DEFAULT));
+    
+    BitSet starts = new MappedGuildSettingsStore(file()).getPrefixStarts();
+    assertTrue(starts.get('?'));
+    assertTrue(starts.get('$'));
+    assertFalse(starts.get('!'));
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLongPrefixes() throws IOException {
+    MappedGuildSettingsStore store = new MappedGuildSettingsStore(file());
+    store.put(1L, new GuildSettings("this prefix is too long", MentionSetting.DEFAULT));
+  }
+  
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    outer: for (int i = 0; i + needle.length <= haystack.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) continue outer;
+      }
+      return i;
+    }
+    throw new AssertionError("Not found.");
+  }
+}
@@ -0,0 +1,53 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.nixill.commands.enums.MentionSetting;
+
+/**
+ * Tests for {@link MemoryGuildSettingsStore}.
+ * 
+ * @author Nixill
+ */
+public class MemoryGuildSettingsStoreTest {
+  @Test
+  public void putsManyGuildsAtOnce() {
+    MemoryGuildSettingsStore store = new MemoryGuildSettingsStore();
+    store.put(1L, new GuildSettings("?", MentionSetting.DEFAULT));
+    store.put(2L, new GuildSettings("$", MentionSetting.DEFAULT));
+    store.put(3L, new GuildSettings("%", MentionSetting.DEFAULT));
+    
+    Map<Long, GuildSettings> loaded = new HashMap<>();
+    for (long id = 2; id <= 50000; id++) {
+      loaded.put(id, new GuildSettings("p" + id, MentionSetting.DEFAULT));
+    }
+    loaded.put(3L, null);
+    loaded.put(4L, GuildSettings.DEFAULT);
+    store.putAll(loaded);
+    
+    assertEquals("?", store.get(1L).getPrefix());
+    assertEquals("p2", store.get(2L).getPrefix());
+    assertNull(store.get(3L));
+    assertNull(store.get(4L));
+    assertEquals("p50000", store.get(50000L).getPrefix());
+    assertNull(store.get(50001L));
+  }
+  
+  @Test
+  public void emptiesWhenEveryGuildIsRemoved() {
+    MemoryGuildSettingsStore store = new MemoryGuildSettingsStore();
+    store.put(1L, new GuildSettings("?", MentionSetting.DEFAULT));
+    Map<Long, GuildSettings> removed = new HashMap<>();
+    removed.put(1L, null);
+    removed.put(2L, null);
+    store.putAll(removed);
+    assertTrue(store.isEmpty());
+  }
+}
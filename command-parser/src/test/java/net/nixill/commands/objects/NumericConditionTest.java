@@ -0,0 +1,151 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Annotation;
+
+import org.junit.Test;
+
+import net.nixill.commands.annotations.Restrict;
+import net.nixill.commands.exceptions.InvalidRestrictionError;
+
+/**
+ * Tests for {@link NumericCondition}.
+ * 
+ * @author Nixill
+ */
+public class NumericConditionTest {
+  static Restrict restrict(final String value) {
+    return new Restrict() {
+      @Override
+      public String value() {
+        return value;
+      }
+      
+      @Override
+      public String error() {
+        return "";
+      }
+      
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return Restrict.class;
+      }
+    };
+  }
+  
+  private static NumericCondition whole(String condition) {
+    return NumericCondition.forLong(restrict(condition));
+  }
+  
+  private static NumericCondition decimal(String condition) {
+    return NumericCondition.forDouble(restrict(condition));
+  }
+  
+  @Test
+  public void foldsComparisonsIntoARange() {
+    NumericCondition cond = whole("> 0 & <10 & >= -5 & <= 20");
+    assertFalse(cond.test(0L));
+    assertTrue(cond.test(1L));
+    assertTrue(cond.test(9L));
+    assertFalse(cond.test(10L));
+  }
+  
+  @Test
+  public void foldsInvertedComparisons() {
+    NumericCondition cond = whole("!>5 & !<-5");
+    assertTrue(cond.test(5L));
+    assertFalse(cond.test(6L));
+    assertTrue(cond.test(-5L));
+    assertFalse(cond.test(-6L));
+    
+    cond = decimal("!>=1.5");
+    assertTrue(cond.test(Math.nextDown(1.5)));
+    assertFalse(cond.test(1.5));
+  }
+  
+  @Test
+  public void findsNothingPastTheEndsOfLong() {
+    NumericCondition above = whole(">" + Long.MAX_VALUE);
+    assertFalse(above.test(Long.MAX_VALUE));
+    assertFalse(above.test(0L));
+    
+    NumericCondition below = whole("<" + Long.MIN_VALUE);
+    assertFalse(below.test(Long.MIN_VALUE));
+    assertFalse(below.test(0L));
+  }
+  
+  @Test
+  public void keepsStrictDecimalComparisonsStrict() {
+    NumericCondition cond = decimal(">1.5 & <2.5");
+    assertFalse(cond.test(1.5));
+    assertTrue(cond.test(Math.nextUp(1.5)));
+    assertTrue(cond.test(Math.nextDown(2.5)));
+    assertFalse(cond.test(2.5));
+    assertFalse(cond.test(Double.NaN));
+  }
+  
+  @Test
+  public void needsOneClauseOfEachAlternative() {
+    NumericCondition cond = whole(">10 | <-10 | =0");
+    assertTrue(cond.test(11L));
+    assertTrue(cond.test(-11L));
+    assertTrue(cond.test(0L));
+    assertFalse(cond.test(5L));
+    
+    cond = whole("even | %3 & positive");
+    assertTrue(cond.test(4L));
+    assertTrue(cond.test(9L));
+    assertFalse(cond.test(5L));
+    assertFalse(cond.test(-4L));
+  }
+  
+  @Test
+  public void invertsOtherClauses() {
+    NumericCondition odd = whole("odd");
+    assertTrue(odd.test(3L));
+    assertFalse(odd.test(4L));
+    
+    NumericCondition notPower = whole("!^2 & >0");
+    assertTrue(notPower.test(6L));
+    assertFalse(notPower.test(8L));
+  }
+  
+  @Test
+  public void findsPowers() {
+    NumericCondition cond = whole("^3");
+    assertTrue(cond.test(1L));
+    assertTrue(cond.test(81L));
+    assertFalse(cond.test(18L));
+    assertFalse(cond.test(0L));
+    
+    assertTrue(decimal("^2").test(8.0));
+    assertFalse(decimal("^2").test(6.0));
+  }
+  
+  @Test
+  public void rejectsBadConditions() {
+    String[] wholeBad = { "", ">", ">abc", "%0", "^1", ">1.5", "?3", ">1 &" };
+    for (String bad : wholeBad) {
+      try {
+        whole(bad);
+        fail("Accepted " + bad);
+      } catch (InvalidRestrictionError ex) {}
+    }
+    try {
+      decimal("^-2");
+      fail("Accepted ^-2");
+    } catch (InvalidRestrictionError ex) {}
+  }
+  
+  @Test
+  public void readsEachConditionOnce() {
+    assertSame(whole(">1 & <5"), whole(">1 & <5"));
+    assertSame(decimal(">1 & <5"), decimal(">1 & <5"));
+    assertNull(NumericCondition.forLong(null));
+  }
+}
@@ -0,0 +1,95 @@
+package net.nixill.commands.objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.nixill.commands.exceptions.DeserializationException;
+
+/**
+ * Tests for {@link TokenCursor}.
+ * 
+ * @author Nixill
+ */
+public class TokenCursorTest {
+  @Test
+  public void readsWordsInOrder() {
+    TokenCursor cursor = new TokenCursor("one two three");
+    assertEquals(3, cursor.remaining());
+    assertEquals("one", cursor.peek());
+    assertEquals("one", cursor.next());
+    assertEquals("two", cursor.next());
+    assertEquals(1, cursor.remaining());
+    assertEquals("three", cursor.next());
+    assertFalse(cursor.hasNext());
+    assertEquals(0, cursor.remaining());
+    assertNull(cursor.peek());
+  }
+  
+  @Test(expected = DeserializationException.class)
+  public void nextPastTheEndThrows() {
+    TokenCursor cursor = new TokenCursor("one");
+    cursor.next();
+    cursor.next();
+  }
+  
+  @Test
+  public void ignoresTrailingSpaces() {
+    TokenCursor cursor = new TokenCursor("one two  ");
+    assertEquals(2, cursor.remaining());
+    assertEquals(7, cursor.end());
+    assertEquals(Arrays.asList("one", "two"), cursor.toList());
+  }
+  
+  @Test
+  public void readsOnlyItsRange() {
+    TokenCursor cursor = new TokenCursor("!cmd one two", 5, 12);
+    assertEquals("one", cursor.next());
+    assertEquals("two", cursor.next());
+    assertFalse(cursor.hasNext());
+  }
+  
+  @Test
+  public void takeKeepsTheSpacesBetweenWords() {
+    TokenCursor cursor = new TokenCursor("one two three four");
+    assertEquals("one two three", cursor.take(3));
+    assertEquals(13, cursor.lastEnd());
+    assertEquals("four", cursor.take(5));
+    assertEquals("", cursor.take(1));
+  }
+  
+  @Test
+  public void skipStopsAtTheEnd() {
+    TokenCursor cursor = new TokenCursor("one two three");
+    assertEquals(2, cursor.skip(2));
+    assertEquals("three", cursor.peek());
+    assertEquals(1, cursor.skip(4));
+    assertFalse(cursor.hasNext());
+  }
+  
+  @Test
+  public void resetReturnsToTheMark() {
+    TokenCursor cursor = new TokenCursor("one two three");
+    cursor.next();
+    cursor.mark();
+    int lastEnd = cursor.lastEnd();
+    assertEquals("two three", cursor.take(2));
+    cursor.reset();
+    assertEquals(lastEnd, cursor.lastEnd());
+    assertEquals(Arrays.asList("two", "three"), cursor.toList());
+    assertEquals("two", cursor.next());
+  }
+  
+  @Test
+  public void emptyTextHasNoWords() {
+    TokenCursor cursor = new TokenCursor("   ");
+    assertFalse(cursor.hasNext());
+    assertEquals(0, cursor.remaining());
+    assertTrue(cursor.toList().isEmpty());
+  }
+}